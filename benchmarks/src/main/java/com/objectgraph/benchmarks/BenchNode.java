@@ -0,0 +1,34 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.benchmarks;
+
+import com.objectgraph.core.ListNode;
+import com.objectgraph.core.ObjectNode;
+
+public class BenchNode extends ObjectNode {
+    @Property BenchNode child;
+    @Property ListNode<BenchNode> children = new ListNode<>(BenchNode.class);
+    @Property int value;
+    @Property String name = "node";
+
+    public BenchNode() {
+        initialiseNode();
+    }
+}
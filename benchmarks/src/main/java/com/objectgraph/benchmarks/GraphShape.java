@@ -0,0 +1,99 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.benchmarks;
+
+import java.util.List;
+
+/**
+ * The shapes of the graphs used to measure path access.
+ * <p/>
+ * Every shape has a path of the given depth from the root to a leaf BenchNode, but the path and the number of
+ * parents of each Node change.
+ */
+public enum GraphShape {
+    /**
+     * Each Node is the "child" of the previous one.
+     */
+    CHAIN {
+        @Override
+        protected void link(BenchNode parent, BenchNode child, BenchNode root) {
+            parent.set("child", child);
+        }
+
+        @Override
+        protected String step() {
+            return "child";
+        }
+    },
+    /**
+     * Each Node is the only element of the "children" list of the previous one.
+     */
+    LIST {
+        @Override
+        protected void link(BenchNode parent, BenchNode child, BenchNode root) {
+            parent.<List<BenchNode>>get("children").add(child);
+        }
+
+        @Override
+        protected String step() {
+            return "children.0";
+        }
+    },
+    /**
+     * Each Node is the "child" of the previous one, and an element of the "children" list of the root, so that every
+     * Event is dispatched through more than one parent.
+     */
+    SHARED {
+        @Override
+        protected void link(BenchNode parent, BenchNode child, BenchNode root) {
+            parent.set("child", child);
+            root.<List<BenchNode>>get("children").add(child);
+        }
+
+        @Override
+        protected String step() {
+            return "child";
+        }
+    };
+
+    protected abstract void link(BenchNode parent, BenchNode child, BenchNode root);
+
+    protected abstract String step();
+
+    public BenchNode build(int depth) {
+        BenchNode root = new BenchNode();
+        BenchNode current = root;
+        for (int i = 0; i < depth; i++) {
+            BenchNode child = new BenchNode();
+            link(current, child, root);
+            current = child;
+        }
+        return root;
+    }
+
+    public String path(int depth, String property) {
+        StringBuilder ret = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            ret.append(step()).append('.');
+        }
+        return ret.append(property).toString();
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the access to the local properties of an {@link com.objectgraph.core.ObjectNode}, against the plain field
+ * access it replaces.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LocalAccessBenchmark {
+
+    private BenchNode node;
+    private int counter;
+
+    @Setup
+    public void setUp() {
+        node = new BenchNode();
+    }
+
+    @Benchmark
+    public int fieldGet() {
+        return node.value;
+    }
+
+    @Benchmark
+    public Object get() {
+        return node.get("value");
+    }
+
+    @Benchmark
+    public void set() {
+        node.set("value", counter++);
+    }
+
+    @Benchmark
+    public boolean hasProperty() {
+        return node.hasProperty("name");
+    }
+
+    @Benchmark
+    public boolean hasMissingProperty() {
+        return node.hasProperty("missing");
+    }
+
+    @Benchmark
+    public Object getProperties() {
+        return node.getProperties();
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link com.objectgraph.core.Node#get(String)} and {@link com.objectgraph.core.Node#set(String, Object)}
+ * on paths of different depths, through graphs of different shapes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NodePathBenchmark {
+
+    @Param({"1", "4", "16"})
+    public int depth;
+
+    @Param({"CHAIN", "LIST", "SHARED"})
+    public GraphShape shape;
+
+    private BenchNode root;
+    private String valuePath;
+    private String namePath;
+    private int counter;
+
+    @Setup
+    public void setUp() {
+        root = shape.build(depth);
+        valuePath = shape.path(depth, "value");
+        namePath = shape.path(depth, "name");
+    }
+
+    @Benchmark
+    public Object get() {
+        return root.get(valuePath);
+    }
+
+    @Benchmark
+    public Object getReference() {
+        return root.get(namePath);
+    }
+
+    @Benchmark
+    public void set() {
+        // Every value is different, so that every set fires an Event
+        root.set(valuePath, counter++);
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.benchmarks;
+
+import com.objectgraph.utils.PathUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the path comparisons of {@link PathUtils}, used to route every Event, on paths of different lengths.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PathUtilsBenchmark {
+
+    @Param({"1", "4", "16"})
+    public int length;
+
+    private String path;
+    private String prefix;
+    private String parent;
+    private String wildcard;
+    private String[] pathTokens;
+    private String[] prefixTokens;
+
+    @Setup
+    public void setUp() {
+        // The prefix holds the first half of the tokens, at least one
+        StringBuilder builder = new StringBuilder("p0");
+        prefix = builder.toString();
+        for (int i = 1; i < length; i++) {
+            if (i <= length / 2) {
+                prefix = builder.toString();
+            }
+            builder.append(".p").append(i);
+        }
+        path = builder.toString();
+        int lastSplit = path.lastIndexOf('.');
+        parent = lastSplit < 0 ? "" : path.substring(0, lastSplit);
+        wildcard = path.replaceFirst("p0", "*");
+        pathTokens = PathUtils.split(path);
+        prefixTokens = PathUtils.split(prefix);
+    }
+
+    @Benchmark
+    public boolean isPrefix() {
+        return PathUtils.isPrefix(prefix, path);
+    }
+
+    @Benchmark
+    public boolean isPrefixTokens() {
+        return PathUtils.isPrefix(prefixTokens, pathTokens);
+    }
+
+    @Benchmark
+    public boolean isParent() {
+        return PathUtils.isParent(parent, path);
+    }
+
+    @Benchmark
+    public boolean samePath() {
+        return PathUtils.samePath(wildcard, path);
+    }
+
+    @Benchmark
+    public boolean samePrefix() {
+        return PathUtils.samePrefix(prefix, path);
+    }
+
+    @Benchmark
+    public String appendPath() {
+        return PathUtils.appendPath(parent, "value");
+    }
+
+    @Benchmark
+    public String toLocalProperty() {
+        return PathUtils.toLocalProperty(path);
+    }
+
+    @Benchmark
+    public String[] split() {
+        return PathUtils.split(path);
+    }
+
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import org.pcollections.PSet;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Delivers {@link Event}s to another {@link EventRecipient} asynchronously, so that a slow recipient does not stall
+ * the thread that changes the graph.
+ * <p/>
+ * Events are queued in a mailbox and delivered by tasks run on an {@link Executor}, one at a time and in the order in
+ * which they were received. The mailbox has a capacity: when it is full, the {@link OverflowPolicy} decides what
+ * happens to a new Event. Register it as a parent in place of the wrapped recipient, and keep a reference to it, as
+ * parents are only weakly referenced by Nodes:
+ * <pre>
+ *     AsyncEventRecipient async = new AsyncEventRecipient(recipient, executor, 1000, OverflowPolicy.COALESCE);
+ *     node.addParentPath(async, "");
+ * </pre>
+ */
+public class AsyncEventRecipient implements EventRecipient {
+
+    /**
+     * What to do with an Event that arrives when the mailbox is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * The thread that fires the Event waits until there is room in the mailbox.
+         */
+        BLOCK,
+        /**
+         * The Event replaces the pending Event with the same path, if any, keeping its place in the mailbox; otherwise
+         * the thread waits as for {@link #BLOCK}.
+         */
+        COALESCE,
+        /**
+         * The Event is discarded.
+         */
+        DROP
+    }
+
+    // Events delivered by a single task before it yields the executor thread
+    private static final int BATCH = 64;
+
+    private final EventRecipient target;
+    private final Executor executor;
+    private final int capacity;
+    private final OverflowPolicy policy;
+
+    private final Deque<Pending> mailbox = new ArrayDeque<>();
+    private final Map<String, Pending> pendingByPath = new HashMap<>();
+    private boolean scheduled;
+    private Thread deliveringThread;
+    private long dropped;
+
+    private final Runnable delivery = new Runnable() {
+        @Override
+        public void run() {
+            deliver();
+        }
+    };
+
+    /**
+     * @param target the recipient to which Events are delivered
+     * @param executor the executor that runs the deliveries
+     * @param capacity the maximum number of pending Events, at least 1
+     * @param policy what to do when the mailbox is full
+     */
+    public AsyncEventRecipient(EventRecipient target, Executor executor, int capacity, OverflowPolicy policy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be at least 1: " + capacity);
+        }
+        this.target = target;
+        this.executor = executor;
+        this.capacity = capacity;
+        this.policy = policy;
+    }
+
+    public EventRecipient getTarget() {
+        return target;
+    }
+
+    /**
+     * @return the number of Events discarded because of the {@link OverflowPolicy#DROP} policy
+     */
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    /**
+     * @return the number of Events waiting to be delivered
+     */
+    public synchronized int getPendingCount() {
+        return mailbox.size();
+    }
+
+    @Override
+    public void handleEvent(Event e, PSet<EventRecipient> visited) {
+        boolean schedule;
+        synchronized (this) {
+            // The delivering thread never waits for itself: Events fired by the target go over capacity
+            while (mailbox.size() >= capacity && Thread.currentThread() != deliveringThread) {
+                if (policy == OverflowPolicy.DROP) {
+                    dropped++;
+                    return;
+                }
+                if (policy == OverflowPolicy.COALESCE) {
+                    Pending pending = pendingByPath.get(e.getPath());
+                    if (pending != null) {
+                        pending.event = e;
+                        pending.visited = visited;
+                        return;
+                    }
+                }
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            Pending pending = new Pending(e, visited);
+            mailbox.add(pending);
+            pendingByPath.put(e.getPath(), pending);
+            schedule = !scheduled;
+            scheduled = true;
+        }
+        if (schedule) {
+            executor.execute(delivery);
+        }
+    }
+
+    private void deliver() {
+        synchronized (this) {
+            deliveringThread = Thread.currentThread();
+        }
+        try {
+            for (int i = 0; i < BATCH; i++) {
+                Pending pending;
+                synchronized (this) {
+                    pending = mailbox.poll();
+                    if (pending == null) {
+                        scheduled = false;
+                        return;
+                    }
+                    if (pendingByPath.get(pending.event.getPath()) == pending) {
+                        pendingByPath.remove(pending.event.getPath());
+                    }
+                    notifyAll();
+                }
+                target.handleEvent(pending.event, pending.visited);
+            }
+        } finally {
+            boolean reschedule;
+            synchronized (this) {
+                deliveringThread = null;
+                reschedule = scheduled && !mailbox.isEmpty();
+                if (!reschedule) {
+                    scheduled = false;
+                }
+            }
+            if (reschedule) {
+                // Let other recipients use the thread; the order is kept, as only one delivery task is scheduled
+                executor.execute(delivery);
+            }
+        }
+    }
+
+    private static class Pending {
+
+        private Event event;
+        private PSet<EventRecipient> visited;
+
+        Pending(Event event, PSet<EventRecipient> visited) {
+            this.event = event;
+            this.visited = visited;
+        }
+
+    }
+
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@link Trigger}s and {@link ErrorCheck}s registered on a class, shared by all its instances.
+ * <p/>
+ * Helpers registered with {@link Node#addClassTrigger(Class, Trigger)} and
+ * {@link Node#addClassErrorCheck(Class, ErrorCheck)} are stored once, and apply to every instance of the class and of
+ * its subclasses. They are bound to an instance only while they are used on it: their {@link NodeHelper#getNode()}
+ * returns that instance on the current thread.
+ */
+final class ClassHelpers {
+
+    private static final ClassHelpers NONE =
+            new ClassHelpers(Collections.<Trigger<?>>emptyList(), Collections.<ErrorCheck<?, ?>>emptyList());
+
+    private static final Map<Class<?>, List<Trigger<?>>> declaredTriggers = new HashMap<>();
+    private static final Map<Class<?>, List<ErrorCheck<?, ?>>> declaredErrorChecks = new HashMap<>();
+
+    // Replaced as a whole when a helper is added, so that a lookup running meanwhile cannot store outdated helpers
+    private static volatile Map<Class<?>, ClassHelpers> instances = new ConcurrentHashMap<>();
+
+    private final List<Trigger<?>> triggers;
+    private final TriggerGraph triggerGraph;
+    private final Map<String, List<ErrorCheck<?, ?>>> errorChecks = new LinkedHashMap<>();
+
+    private ClassHelpers(List<Trigger<?>> triggers, List<ErrorCheck<?, ?>> errorChecks) {
+        this.triggers = Collections.unmodifiableList(triggers);
+        this.triggerGraph = TriggerGraph.of(null, triggers);
+        for (ErrorCheck<?, ?> check : errorChecks) {
+            if (!this.errorChecks.containsKey(check.getPath())) {
+                this.errorChecks.put(check.getPath(), new ArrayList<ErrorCheck<?, ?>>());
+            }
+            this.errorChecks.get(check.getPath()).add(check);
+        }
+    }
+
+    static synchronized void addTrigger(Class<?> type, Trigger<?> trigger) {
+        trigger.share();
+        if (!declaredTriggers.containsKey(type)) {
+            declaredTriggers.put(type, new ArrayList<Trigger<?>>());
+        }
+        declaredTriggers.get(type).add(trigger);
+        instances = new ConcurrentHashMap<>();
+        Node.classHelpersChanged();
+    }
+
+    static synchronized void addErrorCheck(Class<?> type, ErrorCheck<?, ?> check) {
+        check.share();
+        if (!declaredErrorChecks.containsKey(type)) {
+            declaredErrorChecks.put(type, new ArrayList<ErrorCheck<?, ?>>());
+        }
+        declaredErrorChecks.get(type).add(check);
+        instances = new ConcurrentHashMap<>();
+        Node.classHelpersChanged();
+    }
+
+    static ClassHelpers get(Class<?> type) {
+        Map<Class<?>, ClassHelpers> current = instances;
+        ClassHelpers ret = current.get(type);
+        if (ret == null) {
+            ret = collect(type);
+            current.put(type, ret);
+        }
+        return ret;
+    }
+
+    private static synchronized ClassHelpers collect(Class<?> type) {
+        List<Trigger<?>> triggers = new ArrayList<>();
+        List<ErrorCheck<?, ?>> errorChecks = new ArrayList<>();
+        collect(type, triggers, errorChecks);
+        if (triggers.isEmpty() && errorChecks.isEmpty()) {
+            return NONE;
+        }
+        return new ClassHelpers(triggers, errorChecks);
+    }
+
+    private static void collect(Class<?> type, List<Trigger<?>> triggers, List<ErrorCheck<?, ?>> errorChecks) {
+        if (type == null) {
+            return;
+        }
+        // Superclass helpers come first, as they would if registered by the superclass constructor
+        collect(type.getSuperclass(), triggers, errorChecks);
+        if (declaredTriggers.containsKey(type)) {
+            triggers.addAll(declaredTriggers.get(type));
+        }
+        if (declaredErrorChecks.containsKey(type)) {
+            errorChecks.addAll(declaredErrorChecks.get(type));
+        }
+    }
+
+    List<Trigger<?>> getTriggers() {
+        return triggers;
+    }
+
+    TriggerGraph getTriggerGraph() {
+        return triggerGraph;
+    }
+
+    Map<String, List<ErrorCheck<?, ?>>> getErrorChecks() {
+        return errorChecks;
+    }
+
+    /**
+     * Checks a Trigger registered on a class against an Event that reached one of its instances; the Trigger is only
+     * bound to the instance for a longer time if the Event activates it.
+     */
+    static void check(Trigger<?> trigger, Node node, Event event) {
+        boolean triggered;
+        trigger.bind(node);
+        try {
+            triggered = trigger.isTriggeredBy(event);
+        } finally {
+            trigger.unbind();
+        }
+        if (triggered) {
+            new BoundTrigger(trigger, node).activate(event);
+        }
+    }
+
+    static Error getError(ErrorCheck<?, ?> check, Node node) {
+        check.bind(node);
+        try {
+            return check.getError();
+        } finally {
+            check.unbind();
+        }
+    }
+
+    /**
+     * A Trigger registered on a class, applied to one of its instances.
+     * <p/>
+     * Bindings are created when they are needed, and are not kept by the Nodes. They compare equal when they apply the
+     * same Trigger to the same Node, so they are scheduled as a single Trigger. The re-entrancy guard works per binding
+     * and per thread; the {@link Trigger.ConcurrencyPolicy} of shared Triggers is not applied.
+     */
+    static final class BoundTrigger extends Trigger<Node> {
+
+        private static final ThreadLocal<Set<BoundTrigger>> running = new ThreadLocal<Set<BoundTrigger>>() {
+            @Override
+            protected Set<BoundTrigger> initialValue() {
+                return new HashSet<>();
+            }
+        };
+
+        private final Trigger<?> trigger;
+        private final Node node;
+
+        BoundTrigger(Trigger<?> trigger, Node node) {
+            this.trigger = trigger;
+            this.node = node;
+            setNode(node);
+        }
+
+        @Override
+        public List<String> getControlledPaths() {
+            return trigger.getControlledPaths();
+        }
+
+        @Override
+        protected List<String> getSourcePaths() {
+            return trigger.getSourcePaths();
+        }
+
+        @Override
+        protected boolean isDeferred() {
+            return trigger.isDeferred();
+        }
+
+        @Override
+        public boolean isEquivalent(Trigger<?> other) {
+            return trigger.isEquivalent(other instanceof BoundTrigger ? ((BoundTrigger) other).trigger : other);
+        }
+
+        @Override
+        protected boolean isTriggeredBy(Event event) {
+            trigger.bind(node);
+            try {
+                return trigger.isTriggeredBy(event);
+            } finally {
+                trigger.unbind();
+            }
+        }
+
+        @Override
+        protected void action(Event event) {
+            trigger.bind(node);
+            try {
+                trigger.action(event);
+            } finally {
+                trigger.unbind();
+            }
+        }
+
+        @Override
+        protected void refresh() {
+            trigger.bind(node);
+            try {
+                trigger.refresh();
+            } finally {
+                trigger.unbind();
+            }
+        }
+
+        @Override
+        void check(Event event) {
+            if (isTriggeredBy(event)) {
+                activate(event);
+            }
+        }
+
+        void activate(Event event) {
+            if (!running.get().contains(this)) {
+                if (isDeferred() && Propagation.defer(this, event)) {
+                    return;
+                }
+                run(event);
+            }
+        }
+
+        @Override
+        void run(Event event) {
+            if (running.get().add(this)) {
+                try {
+                    action(event);
+                } finally {
+                    running.get().remove(this);
+                }
+            }
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof BoundTrigger && ((BoundTrigger) other).trigger == trigger
+                    && ((BoundTrigger) other).node == node;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(trigger) + System.identityHashCode(node);
+        }
+
+    }
+
+    /**
+     * An ErrorCheck registered on a class, applied to one of its instances.
+     */
+    static final class BoundErrorCheck extends ErrorCheck<Node, Object> {
+
+        private final ErrorCheck<?, Object> check;
+        private final Node node;
+
+        @SuppressWarnings("unchecked")
+        BoundErrorCheck(ErrorCheck<?, ?> check, Node node) {
+            super(check.getLevel(), check.getPath());
+            this.check = (ErrorCheck<?, Object>) check;
+            this.node = node;
+            setNode(node);
+        }
+
+        @Override
+        public Error getError() {
+            return ClassHelpers.getError(check, node);
+        }
+
+        @Override
+        public Error getError(Object value) {
+            check.bind(node);
+            try {
+                return check.getError(value);
+            } finally {
+                check.unbind();
+            }
+        }
+
+        @Override
+        protected String getMessage(Object value) {
+            check.bind(node);
+            try {
+                return check.getMessage(value);
+            } finally {
+                check.unbind();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Guards a graph of Nodes, so that it can be read and changed from more than one thread.
+ * <p/>
+ * Nodes are not thread-safe by themselves. When a graph is shared between threads (for example, a GUI editing a
+ * graph used by a background job), every access should go through the ConcurrentGraph of its root:
+ * <ul>
+ *     <li>reads ({@link #get(String)}, {@link #read(Action)}) run in parallel with each other;</li>
+ *     <li>writes ({@link #set(String, Object)}, {@link #write(Action)}, {@link #submit(Action)}) run one at a time,
+ *     while no read is in progress, and the Events they fire are dispatched before the write ends, so readers see
+ *     either none or all of the effects of a write, including the ones of the Triggers.</li>
+ * </ul>
+ * In {@link Mode#LOCKED} mode, writes run on the calling thread, which waits for the running reads to end. In
+ * {@link Mode#SINGLE_WRITER} mode, writes are queued and run in order by a dedicated thread: {@link #submit(Action)}
+ * returns without waiting, and the writing thread never contends with other writers.
+ * <p/>
+ * Reads cannot start a write, as the write would wait for the read itself to end. Reading a stale property (see
+ * {@link com.objectgraph.core.triggers.LazyDependency}) would change the graph, so it is never done under the read
+ * lock: the read is abandoned, the stale properties of the graph are refreshed by a write, and the read is run again.
+ * Read operations should therefore have no side effects besides their result.
+ */
+public final class ConcurrentGraph {
+
+    /**
+     * How writes are run.
+     */
+    public enum Mode {
+        /**
+         * Writes run on the calling thread, under the write lock.
+         */
+        LOCKED,
+        /**
+         * Writes are queued and run by a single thread, under the write lock.
+         */
+        SINGLE_WRITER
+    }
+
+    /**
+     * An operation on the graph.
+     *
+     * @param <T> the type of the result
+     */
+    public interface Action<T> {
+        T run(Node root);
+    }
+
+    /**
+     * Thrown when a stale property is read under the read lock of a ConcurrentGraph.
+     */
+    static final class RefreshNeeded extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        RefreshNeeded() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final ThreadLocal<int[]> READS = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    private final Node root;
+    private final Mode mode;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ExecutorService writer;
+    private volatile Thread writerThread;
+
+    public ConcurrentGraph(Node root, Mode mode) {
+        this.root = root;
+        this.mode = mode;
+        if (mode == Mode.SINGLE_WRITER) {
+            writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread ret = new Thread(runnable, "object-graph writer");
+                    ret.setDaemon(true);
+                    writerThread = ret;
+                    return ret;
+                }
+            });
+        } else {
+            writer = null;
+        }
+    }
+
+    public Node getRoot() {
+        return root;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Reads the property at the given path.
+     *
+     * @param path the path, relative to the root
+     * @return the value of the property
+     */
+    public <T> T get(final String path) {
+        return read(new Action<T>() {
+            @Override
+            public T run(Node root) {
+                return root.get(path);
+            }
+        });
+    }
+
+    /**
+     * Sets the property at the given path, and waits for the write to be done.
+     *
+     * @param path the path, relative to the root
+     * @param value the new value
+     */
+    public void set(final String path, final Object value) {
+        write(new Action<Void>() {
+            @Override
+            public Void run(Node root) {
+                root.set(path, value);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Runs an operation that only reads the graph, in parallel with other reads.
+     *
+     * @param action the operation
+     * @return the result of the operation
+     */
+    public <T> T read(Action<T> action) {
+        while (true) {
+            lock.readLock().lock();
+            // A thread that holds the write lock can refresh in place
+            boolean readOnly = !lock.isWriteLockedByCurrentThread();
+            if (readOnly) {
+                READS.get()[0]++;
+            }
+            try {
+                return action.run(root);
+            } catch (RefreshNeeded ex) {
+                if (lock.getReadHoldCount() > 1) {
+                    // Only the outermost read can release the lock
+                    throw ex;
+                }
+            } finally {
+                if (readOnly) {
+                    READS.get()[0]--;
+                }
+                lock.readLock().unlock();
+            }
+            write(new Action<Void>() {
+                @Override
+                public Void run(Node root) {
+                    Node.refreshStaleProperties(root, Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>()));
+                    return null;
+                }
+            });
+        }
+    }
+
+    /**
+     * Runs an operation that changes the graph, and waits for it to be done.
+     *
+     * @param action the operation
+     * @return the result of the operation
+     */
+    public <T> T write(Action<T> action) {
+        checkNotReading();
+        if (writer == null || Thread.currentThread() == writerThread) {
+            return runWrite(action);
+        }
+        Future<T> future = submit(action);
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a write", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            if (ex.getCause() instanceof java.lang.Error) {
+                throw (java.lang.Error) ex.getCause();
+            }
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+    /**
+     * Queues an operation that changes the graph.
+     * <p/>
+     * In {@link Mode#LOCKED} mode, the operation runs before this method returns.
+     *
+     * @param action the operation
+     * @return the future result of the operation
+     */
+    public <T> Future<T> submit(final Action<T> action) {
+        checkNotReading();
+        FutureTask<T> ret = new FutureTask<>(new Callable<T>() {
+            @Override
+            public T call() {
+                return runWrite(action);
+            }
+        });
+        if (writer == null) {
+            ret.run();
+        } else {
+            writer.execute(ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Stops the writing thread once the queued writes are done; further writes are rejected.
+     */
+    public void shutdown() {
+        if (writer != null) {
+            writer.shutdown();
+        }
+    }
+
+    private <T> T runWrite(Action<T> action) {
+        lock.writeLock().lock();
+        // The thread may still be reading other graphs, but it can refresh the Nodes of this one
+        int[] reads = READS.get();
+        int outerReads = reads[0];
+        reads[0] = 0;
+        try {
+            return action.run(root);
+        } finally {
+            reads[0] = outerReads;
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Called before a stale property is recomputed.
+     *
+     * @throws RefreshNeeded if the current thread is reading a ConcurrentGraph
+     */
+    static void checkCanRefresh() {
+        if (READS.get()[0] > 0) {
+            throw new RefreshNeeded();
+        }
+    }
+
+    private void checkNotReading() {
+        if (lock.getReadHoldCount() > 0) {
+            throw new IllegalStateException("Cannot write to the graph of " + root + " while reading it");
+        }
+    }
+
+}
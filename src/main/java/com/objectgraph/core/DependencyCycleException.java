@@ -0,0 +1,51 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import java.util.Collections;
+import java.util.List;
+
+public class DependencyCycleException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<Trigger<?>> triggers;
+
+    public DependencyCycleException(List<Trigger<?>> triggers) {
+        super("Cyclic dependency between the triggers controlling " + controlledPaths(triggers));
+        this.triggers = Collections.unmodifiableList(triggers);
+    }
+
+    public List<Trigger<?>> getTriggers() {
+        return triggers;
+    }
+
+    private static String controlledPaths(List<Trigger<?>> triggers) {
+        StringBuilder ret = new StringBuilder();
+        for (Trigger<?> trigger : triggers) {
+            if (ret.length() > 0) {
+                ret.append(", ");
+            }
+            ret.append(trigger.getControlledPaths()).append(" of ").append(trigger.getNode());
+        }
+        return ret.toString();
+    }
+
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import com.esotericsoftware.reflectasm.MethodAccess;
+import com.objectgraph.utils.PathUtils;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A property computed by a handler method annotated with {@link ObjectNode.DerivedFrom}.
+ * <p/>
+ * It works as a {@link com.objectgraph.core.triggers.Dependency}, but it is compiled once per class and shared by all
+ * its instances: paths are split and the handler is resolved to a {@link MethodAccess} index when the class is first
+ * used, and Events are checked by the shared instance, with the Node as an argument. Instances only get a lightweight
+ * binding when the update is deferred to the {@link Propagation}, or when the Triggers of a Node are listed.
+ * <p/>
+ * As for Triggers, a derived property is not recomputed because of the Events fired by its own update on the same
+ * thread. It is updated as a deferred Trigger (see {@link Trigger#isDeferred()}): the {@link Propagation} of the Event
+ * schedules it together with the deferred Triggers of the graph, after the properties it is derived from, and computes
+ * it once per change.
+ */
+final class DerivedProperty {
+
+    private final String controlledPath;
+    private final String[] controlledTokens;
+    private final String[] parameterPaths;
+    private final String[][] parameterTokens;
+    private final MethodAccess access;
+    private final int methodIndex;
+
+    // The Nodes whose derived property is being updated on the current thread
+    private final ThreadLocal<Set<Node>> running = new ThreadLocal<Set<Node>>() {
+        @Override
+        protected Set<Node> initialValue() {
+            return Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+        }
+    };
+
+    DerivedProperty(Class<?> type, List<String> properties, Method method, ObjectNode.DerivedFrom annotation) {
+        String property = annotation.property();
+        if (!properties.contains(property)) {
+            throw new InvalidDerivedPropertyException(method, property + " is not a property of " + type.getName());
+        }
+        if (Modifier.isPrivate(method.getModifiers()) || Modifier.isStatic(method.getModifiers())) {
+            throw new InvalidDerivedPropertyException(method, "the handler cannot be private or static");
+        }
+        if (method.getParameterTypes().length != annotation.value().length) {
+            throw new InvalidDerivedPropertyException(method, "the handler takes " + method.getParameterTypes().length
+                    + " parameters, but " + annotation.value().length + " paths are given");
+        }
+
+        this.controlledPath = property;
+        this.controlledTokens = PathUtils.split(property);
+        this.parameterPaths = annotation.value();
+        this.parameterTokens = new String[parameterPaths.length][];
+        for (int i = 0; i < parameterPaths.length; i++) {
+            String[] tokens = PathUtils.split(parameterPaths[i]);
+            if (!properties.contains(tokens[0])) {
+                throw new InvalidDerivedPropertyException(method, tokens[0] + " is not a property of " + type.getName());
+            }
+            parameterTokens[i] = tokens;
+        }
+        this.access = MethodAccess.get(type);
+        this.methodIndex = access.getIndex(method.getName(), method.getParameterTypes());
+    }
+
+    String getControlledPath() {
+        return controlledPath;
+    }
+
+    /**
+     * Applies this derived property to a Node, as a deferred Trigger.
+     */
+    Trigger<Node> bind(Node node) {
+        return new Binding(node);
+    }
+
+    /**
+     * Checks an Event that reached the given Node, and updates the property of the Node if the Event activates it.
+     */
+    void check(Node node, Event event) {
+        if (isTriggeredBy(event) && !running.get().contains(node)) {
+            if (Propagation.isActive()) {
+                Propagation.defer(new Binding(node), event);
+            } else {
+                update(node);
+            }
+        }
+    }
+
+    private void update(Node node) {
+        if (running.get().add(node)) {
+            try {
+                node.set(controlledPath, access.invoke(node, methodIndex, getParameterValues(node)));
+            } finally {
+                running.get().remove(node);
+            }
+        }
+    }
+
+    private boolean isTriggeredBy(Event event) {
+        if (event.getType() instanceof Change) {
+            String[] eventTokens = PathUtils.split(event.getPath());
+            if (PathUtils.isPrefix(eventTokens, controlledTokens)) {
+                return true;
+            }
+            for (String[] tokens : parameterTokens) {
+                if (PathUtils.samePrefix(eventTokens, tokens)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private Object[] getParameterValues(Node node) {
+        Object[] ret = new Object[parameterTokens.length];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = get(node, i);
+        }
+        return ret;
+    }
+
+    private Object get(Node node, int parameter) {
+        Object ret = node;
+        for (String token : parameterTokens[parameter]) {
+            if (ret == null) {
+                return null;
+            }
+            if (token.equals("*")) {
+                // Wildcards depend on the Nodes involved
+                return node.get(parameterPaths[parameter]);
+            }
+            ret = ((Node) ret).get(token);
+        }
+        return ret;
+    }
+
+    /**
+     * A derived property applied to one Node. Bindings compare equal when they apply the same property to the same
+     * Node, so they are scheduled as a single Trigger.
+     */
+    private final class Binding extends Trigger<Node> {
+
+        private final Node node;
+
+        Binding(Node node) {
+            this.node = node;
+            setNode(node);
+        }
+
+        @Override
+        public List<String> getControlledPaths() {
+            return Collections.singletonList(controlledPath);
+        }
+
+        @Override
+        protected List<String> getSourcePaths() {
+            return Arrays.asList(parameterPaths);
+        }
+
+        @Override
+        protected boolean isDeferred() {
+            return true;
+        }
+
+        @Override
+        protected boolean isTriggeredBy(Event event) {
+            return DerivedProperty.this.isTriggeredBy(event);
+        }
+
+        @Override
+        protected void action(Event event) {
+            update(node);
+        }
+
+        @Override
+        void check(Event event) {
+            DerivedProperty.this.check(node, event);
+        }
+
+        @Override
+        void run(Event event) {
+            update(node);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Binding && ((Binding) other).property() == DerivedProperty.this
+                    && ((Binding) other).node == node;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(DerivedProperty.this) + System.identityHashCode(node);
+        }
+
+        private DerivedProperty property() {
+            return DerivedProperty.this;
+        }
+
+    }
+
+}
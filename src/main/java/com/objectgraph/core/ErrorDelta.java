@@ -0,0 +1,66 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * The change of the {@link Error}s of a path, as reported by an {@link IncrementalValidator}.
+ */
+public final class ErrorDelta {
+
+    private final String path;
+    private final Set<Error> added;
+    private final Set<Error> removed;
+
+    public ErrorDelta(String path, Set<Error> added, Set<Error> removed) {
+        this.path = path;
+        this.added = Collections.unmodifiableSet(added);
+        this.removed = Collections.unmodifiableSet(removed);
+    }
+
+    /**
+     * @return the path of the property, relative to the root of the validated graph
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the Errors that are new on the path
+     */
+    public Set<Error> getAdded() {
+        return added;
+    }
+
+    /**
+     * @return the Errors that no longer apply to the path
+     */
+    public Set<Error> getRemoved() {
+        return removed;
+    }
+
+    @Override
+    public String toString() {
+        return path + ": +" + added + " -" + removed;
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import com.objectgraph.utils.PathUtils;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A subscription to the errors of a graph, created by {@link Node#subscribeErrors(Error.Level, String,
+ * IncrementalValidator.Listener)}.
+ * <p/>
+ * Only the errors of the given level or more severe, on paths matching the given pattern, are delivered. The pattern
+ * is a path prefix, in which "*" matches any property: "list.*.value" matches the values of the elements of a list,
+ * "child" matches every path below "child", and the empty pattern matches every path.
+ */
+public final class ErrorSubscription implements IncrementalValidator.Listener {
+
+    private final Node root;
+    private final Error.Level minLevel;
+    private final String[] pattern;
+    private final IncrementalValidator.Listener listener;
+    private volatile boolean cancelled;
+
+    ErrorSubscription(Node root, Error.Level minLevel, String pattern, IncrementalValidator.Listener listener) {
+        this.root = root;
+        this.minLevel = minLevel;
+        this.pattern = PathUtils.split(pattern);
+        this.listener = listener;
+    }
+
+    /**
+     * Stops the delivery of errors to the listener.
+     */
+    public void cancel() {
+        if (!cancelled) {
+            cancelled = true;
+            root.unsubscribeErrors(this);
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public void errorsChanged(ErrorDelta delta) {
+        if (cancelled || !PathUtils.isPrefix(pattern, PathUtils.split(delta.getPath()))) {
+            return;
+        }
+        Set<Error> added = filter(delta.getAdded());
+        Set<Error> removed = filter(delta.getRemoved());
+        if (!added.isEmpty() || !removed.isEmpty()) {
+            listener.errorsChanged(new ErrorDelta(delta.getPath(), added, removed));
+        }
+    }
+
+    /**
+     * Delivers the current errors of the validator as added errors.
+     */
+    void start(IncrementalValidator validator) {
+        for (Map.Entry<String, Set<Error>> entry : validator.getErrors().entrySet()) {
+            errorsChanged(new ErrorDelta(entry.getKey(), entry.getValue(), Collections.<Error>emptySet()));
+        }
+    }
+
+    private Set<Error> filter(Set<Error> errors) {
+        Set<Error> ret = new LinkedHashSet<>();
+        for (Error error : errors) {
+            if (error.getLevel().ordinal() >= minLevel.ordinal()) {
+                ret.add(error);
+            }
+        }
+        return ret;
+    }
+
+}
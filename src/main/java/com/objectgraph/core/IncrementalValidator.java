@@ -0,0 +1,541 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import com.objectgraph.utils.PathUtils;
+import org.pcollections.PSet;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Keeps the {@link Error}s of a graph up to date, re-evaluating only the {@link ErrorCheck}s affected by each change.
+ * <p/>
+ * The validator registers itself as a parent of the root, so it receives every {@link Change} that happens in the
+ * graph. The result of each ErrorCheck is cached and indexed by path: when a property changes, only the checks whose
+ * path overlaps the path of the change are evaluated again. When a Node is added to or removed from the graph, only
+ * the subtree under the changed path is collected again. If that subtree shares Nodes with the rest of the graph, the
+ * checks of the whole graph are collected again, but only the new checks and the ones overlapping the change are
+ * evaluated.
+ * <p/>
+ * The errors are kept in a map with the same content as {@link Node#getErrors()}, that can be read at no cost with
+ * {@link #getErrors()}, and every change of that map is reported to the {@link Listener}s as an {@link ErrorDelta}.
+ * <p/>
+ * An ErrorCheck is assumed to depend only on the values below its path. Registering Triggers or ErrorChecks does not
+ * fire Events: call {@link #refresh()} after doing so. The validator is not thread-safe; changes should be made from
+ * one thread at a time.
+ */
+public class IncrementalValidator implements EventRecipient {
+
+    /**
+     * Receives the changes of the errors of a graph.
+     */
+    public interface Listener {
+        void errorsChanged(ErrorDelta delta);
+    }
+
+    private final Node root;
+    private Index index = new Index();
+    private Map<Node, String[]> located = new IdentityHashMap<>();
+    private final Map<String, Set<Error>> errors = new LinkedHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // Events received while the checks are evaluated, as evaluating them can fire Events (for example, by refreshing
+    // stale properties)
+    private boolean updating;
+    private final Deque<Event> queued = new ArrayDeque<>();
+
+    public IncrementalValidator(Node root) {
+        this.root = root;
+        collectAll(null, null);
+        root.addParentPath(this, "");
+    }
+
+    /**
+     * Stops listening to the changes of the graph.
+     */
+    public void dispose() {
+        root.removeParentPath(this, "");
+    }
+
+    public Node getRoot() {
+        return root;
+    }
+
+    /**
+     * The current errors of the graph.
+     *
+     * @return an unmodifiable view of the errors, by path relative to the root
+     */
+    public Map<String, Set<Error>> getErrors() {
+        return Collections.unmodifiableMap(errors);
+    }
+
+    /**
+     * The current errors of a path.
+     *
+     * @param path the path, relative to the root
+     * @return the errors of the path, or an empty set
+     */
+    public Set<Error> getErrors(String path) {
+        Set<Error> ret = errors.get(path);
+        return ret == null ? Collections.<Error>emptySet() : Collections.unmodifiableSet(ret);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    boolean hasListeners() {
+        return !listeners.isEmpty();
+    }
+
+    /**
+     * Collects and evaluates every check of the graph again.
+     */
+    public void refresh() {
+        Map<String, Deltas> deltas = new LinkedHashMap<>();
+        collectAll(null, deltas);
+        notify(deltas);
+    }
+
+    @Override
+    public void handleEvent(Event e, PSet<EventRecipient> visited) {
+        if (!(e.getType() instanceof Change)) {
+            return;
+        }
+        queued.add(e);
+        if (updating) {
+            return;
+        }
+        updating = true;
+        Map<String, Deltas> deltas = new LinkedHashMap<>();
+        try {
+            while (!queued.isEmpty()) {
+                Event event = queued.poll();
+                String[] tokens = PathUtils.split(event.getPath());
+                if (!isStructural(event.getType())) {
+                    for (Entry entry : index.overlapping(tokens)) {
+                        setError(entry, entry.evaluate(), deltas);
+                    }
+                } else if (!collectSubtree(event.getPath(), tokens, deltas)) {
+                    collectAll(tokens, deltas);
+                }
+            }
+        } finally {
+            updating = false;
+            queued.clear();
+        }
+        notify(deltas);
+    }
+
+    private static boolean isStructural(EventType type) {
+        if (type instanceof SetProperty) {
+            SetProperty set = (SetProperty) type;
+            return set.getOldValue() instanceof Node || set.getNewValue() instanceof Node;
+        }
+        return type instanceof ListChange || type instanceof MapChange;
+    }
+
+    /**
+     * Collects the checks of the whole graph, reusing the cached result of the ones that do not overlap the changed
+     * path.
+     *
+     * @param changed the tokens of the changed path, or {@code null} to evaluate every check
+     */
+    private void collectAll(String[] changed, Map<String, Deltas> deltas) {
+        List<Entry> previous = index.overlapping(new String[0]);
+        Map<Node, String[]> nodes = new IdentityHashMap<>();
+        List<Entry> collected = new ArrayList<>();
+        collect(root, "", Collections.<Node, String[]>emptyMap(), nodes, collected);
+
+        Map<Entry, Entry> cached = new HashMap<>();
+        for (Entry entry : previous) {
+            cached.put(entry, entry);
+        }
+        for (Entry entry : collected) {
+            Entry old = cached.get(entry);
+            if (old != null && changed != null && !PathUtils.samePrefix(changed, entry.tokens)) {
+                entry.error = old.error;
+            } else {
+                entry.error = entry.evaluate();
+            }
+        }
+
+        index = new Index();
+        located = nodes;
+        for (Map.Entry<Node, String[]> node : nodes.entrySet()) {
+            index.add(node.getKey(), node.getValue());
+        }
+        replace(previous, collected, deltas);
+    }
+
+    /**
+     * Collects again the checks of the subtree under the changed path, and evaluates the checks overlapping it.
+     *
+     * @return false if the subtree shares Nodes with the rest of the graph, so that the whole graph has to be
+     * collected again
+     */
+    private boolean collectSubtree(String path, String[] changed, Map<String, Deltas> deltas) {
+        Object content = root.get(path);
+        List<Node> detached = new ArrayList<>();
+        Index subtree = index.get(changed);
+        if (subtree != null) {
+            subtree.nodes(detached);
+        }
+        for (Node node : detached) {
+            // The Node that has just been removed from the changed path has no parent left in the subtree
+            int parents = node != content && Arrays.equals(located.get(node), changed) ? 0 : 1;
+            if (countNodeParents(node) > parents) {
+                return false;
+            }
+        }
+
+        List<Entry> removed = new ArrayList<>();
+        List<Entry> overlapping = new ArrayList<>();
+        for (Entry entry : index.overlapping(changed)) {
+            if (PathUtils.isPrefix(changed, entry.nodeTokens)) {
+                removed.add(entry);
+            } else {
+                overlapping.add(entry);
+            }
+        }
+
+        // If the subtree cannot be collected alone, collectAll rebuilds the index from scratch
+        for (Node node : detached) {
+            index.remove(node, located.remove(node));
+        }
+        Map<Node, String[]> nodes = new IdentityHashMap<>();
+        List<Entry> collected = new ArrayList<>();
+        if (content instanceof Node && !collect((Node) content, path, located, nodes, collected)) {
+            return false;
+        }
+
+        located.putAll(nodes);
+        for (Map.Entry<Node, String[]> node : nodes.entrySet()) {
+            index.add(node.getKey(), node.getValue());
+        }
+        for (Entry entry : collected) {
+            entry.error = entry.evaluate();
+        }
+        replace(removed, collected, deltas);
+        for (Entry entry : overlapping) {
+            setError(entry, entry.evaluate(), deltas);
+        }
+        return true;
+    }
+
+    private static int countNodeParents(Node node) {
+        int ret = 0;
+        for (Map.Entry<EventRecipient, Set<String>> entry : node.getParentPaths().entrySet()) {
+            if (entry.getKey() instanceof Node) {
+                ret += entry.getValue().size();
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Collects the checks of a Node and of the Nodes below it.
+     *
+     * @param outside Nodes that should not be reached
+     * @param seen    the Nodes collected so far, with their paths
+     * @return false if one of the outside Nodes has been reached
+     */
+    private boolean collect(Node node, String path, Map<Node, String[]> outside, Map<Node, String[]> seen,
+                            List<Entry> ret) {
+        if (outside.containsKey(node)) {
+            return false;
+        }
+        if (seen.containsKey(node)) {
+            return true;
+        }
+        String[] tokens = PathUtils.split(path);
+        seen.put(node, tokens);
+        ClassHelpers shared = ClassHelpers.get(node.getClass());
+        // Same order as Node.getErrors
+        for (List<ErrorCheck<?, ?>> checks : shared.getErrorChecks().values()) {
+            for (ErrorCheck<?, ?> check : checks) {
+                ret.add(new Entry(check, node, true, tokens, PathUtils.appendPath(path, check.getPath())));
+            }
+        }
+        for (Set<ErrorCheck<?, ?>> checks : node.getLocalErrorChecks().values()) {
+            for (ErrorCheck<?, ?> check : checks) {
+                ret.add(new Entry(check, node, false, tokens, PathUtils.appendPath(path, check.getPath())));
+            }
+        }
+        for (String property : node.getProperties()) {
+            Object content = node.get(property);
+            if (content instanceof Node
+                    && !collect((Node) content, PathUtils.appendPath(path, property), outside, seen, ret)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replaces some of the current checks with the given ones, updating the errors.
+     */
+    private void replace(List<Entry> removed, List<Entry> collected, Map<String, Deltas> deltas) {
+        Set<Entry> kept = new HashSet<>(collected);
+        Map<Entry, Entry> previous = new HashMap<>();
+        for (Entry entry : removed) {
+            index.remove(entry);
+            if (kept.contains(entry)) {
+                previous.put(entry, entry);
+            } else if (entry.error != null) {
+                removeError(entry.path, entry.error, deltas);
+            }
+        }
+        for (Entry entry : collected) {
+            index.add(entry);
+            Entry old = previous.get(entry);
+            Error error = entry.error;
+            if (old == null) {
+                if (error != null) {
+                    addError(entry.path, error, deltas);
+                }
+            } else {
+                entry.error = old.error;
+                setError(entry, error, deltas);
+            }
+        }
+    }
+
+    private void setError(Entry entry, Error error, Map<String, Deltas> deltas) {
+        Error old = entry.error;
+        if (old == error || (old != null && error != null && old.getLevel() == error.getLevel()
+                && Objects.equals(old.getMessage(), error.getMessage()))) {
+            return;
+        }
+        entry.error = error;
+        if (old != null) {
+            removeError(entry.path, old, deltas);
+        }
+        if (error != null) {
+            addError(entry.path, error, deltas);
+        }
+    }
+
+    private void addError(String path, Error error, Map<String, Deltas> deltas) {
+        if (!errors.containsKey(path)) {
+            errors.put(path, new HashSet<Error>());
+        }
+        errors.get(path).add(error);
+        if (deltas != null) {
+            getDeltas(deltas, path).added.add(error);
+        }
+    }
+
+    private void removeError(String path, Error error, Map<String, Deltas> deltas) {
+        Set<Error> set = errors.get(path);
+        set.remove(error);
+        if (set.isEmpty()) {
+            errors.remove(path);
+        }
+        if (deltas != null) {
+            Deltas d = getDeltas(deltas, path);
+            if (!d.added.remove(error)) {
+                d.removed.add(error);
+            }
+        }
+    }
+
+    private static Deltas getDeltas(Map<String, Deltas> deltas, String path) {
+        Deltas ret = deltas.get(path);
+        if (ret == null) {
+            ret = new Deltas();
+            deltas.put(path, ret);
+        }
+        return ret;
+    }
+
+    private void notify(Map<String, Deltas> deltas) {
+        for (Map.Entry<String, Deltas> entry : deltas.entrySet()) {
+            Deltas d = entry.getValue();
+            if (d.added.isEmpty() && d.removed.isEmpty()) {
+                continue;
+            }
+            ErrorDelta delta = new ErrorDelta(entry.getKey(), d.added, d.removed);
+            for (Listener listener : listeners) {
+                listener.errorsChanged(delta);
+            }
+        }
+    }
+
+    private static class Deltas {
+        private final Set<Error> added = Collections.newSetFromMap(new IdentityHashMap<Error, Boolean>());
+        private final Set<Error> removed = Collections.newSetFromMap(new IdentityHashMap<Error, Boolean>());
+    }
+
+    /**
+     * An ErrorCheck applied to a Node of the graph, with its last result.
+     */
+    private static class Entry {
+
+        private final ErrorCheck<?, ?> check;
+        private final Node node;
+        private final boolean shared;
+        private final String[] nodeTokens;
+        private final String path;
+        private final String[] tokens;
+        private Error error;
+
+        Entry(ErrorCheck<?, ?> check, Node node, boolean shared, String[] nodeTokens, String path) {
+            this.check = check;
+            this.node = node;
+            this.shared = shared;
+            this.nodeTokens = nodeTokens;
+            this.path = path;
+            this.tokens = PathUtils.split(path);
+        }
+
+        Error evaluate() {
+            return shared ? ClassHelpers.getError(check, node) : check.getError();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry other = (Entry) o;
+            return other.check == check && other.node == node && other.path.equals(path);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * System.identityHashCode(check) + System.identityHashCode(node)) + path.hashCode();
+        }
+
+    }
+
+    /**
+     * A tree of the checks and of the Nodes of the graph, following the tokens of their paths.
+     */
+    private static class Index {
+
+        private final Map<String, Index> children = new HashMap<>();
+        private final Set<Entry> entries = new LinkedHashSet<>();
+        private final Set<Node> nodes = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+
+        void add(Entry entry) {
+            get(entry.tokens, true).entries.add(entry);
+        }
+
+        void add(Node node, String[] tokens) {
+            get(tokens, true).nodes.add(node);
+        }
+
+        void remove(Entry entry) {
+            remove(entry.tokens, 0, entry, null);
+        }
+
+        void remove(Node node, String[] tokens) {
+            remove(tokens, 0, null, node);
+        }
+
+        Index get(String[] tokens) {
+            return get(tokens, false);
+        }
+
+        private Index get(String[] tokens, boolean create) {
+            Index ret = this;
+            for (String token : tokens) {
+                Index child = ret.children.get(token);
+                if (child == null) {
+                    if (!create) {
+                        return null;
+                    }
+                    child = new Index();
+                    ret.children.put(token, child);
+                }
+                ret = child;
+            }
+            return ret;
+        }
+
+        // Returns true if this Index is left empty, so that the parent can drop it
+        private boolean remove(String[] tokens, int depth, Entry entry, Node node) {
+            if (depth == tokens.length) {
+                entries.remove(entry);
+                nodes.remove(node);
+            } else {
+                Index child = children.get(tokens[depth]);
+                if (child != null && child.remove(tokens, depth + 1, entry, node)) {
+                    children.remove(tokens[depth]);
+                }
+            }
+            return entries.isEmpty() && nodes.isEmpty() && children.isEmpty();
+        }
+
+        /**
+         * The checks whose path overlaps the given one: the ones on a prefix of the path and the ones below it.
+         */
+        List<Entry> overlapping(String[] tokens) {
+            List<Entry> ret = new ArrayList<>();
+            overlapping(tokens, 0, ret);
+            return ret;
+        }
+
+        private void overlapping(String[] tokens, int depth, List<Entry> ret) {
+            if (depth == tokens.length) {
+                all(ret);
+                return;
+            }
+            ret.addAll(entries);
+            if (tokens[depth].equals(PathUtils.ANY)) {
+                for (Index child : children.values()) {
+                    child.overlapping(tokens, depth + 1, ret);
+                }
+                return;
+            }
+            Index child = children.get(tokens[depth]);
+            if (child != null) {
+                child.overlapping(tokens, depth + 1, ret);
+            }
+            Index any = children.get(PathUtils.ANY);
+            if (any != null) {
+                any.overlapping(tokens, depth + 1, ret);
+            }
+        }
+
+        private void all(List<Entry> ret) {
+            ret.addAll(entries);
+            for (Index child : children.values()) {
+                child.all(ret);
+            }
+        }
+
+        void nodes(List<Node> ret) {
+            ret.addAll(nodes);
+            for (Index child : children.values()) {
+                child.nodes(ret);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+/**
+ * The value of a property is outdated and will be recomputed the next time it is read.
+ * <p/>
+ * Fired by lazy Triggers, such as {@link com.objectgraph.core.triggers.LazyDependency}, that do not compute the new
+ * value when their sources change. Being a {@link Change}, it activates the Triggers that depend on the property. If it
+ * is not notifying, it only reaches the Nodes of the graph, and not the other {@link EventRecipient}s, such as editors.
+ */
+public class Invalidation extends Change {
+
+    private final RootedProperty property;
+
+    private final boolean notifying;
+
+    public Invalidation(RootedProperty property) {
+        this(property, true);
+    }
+
+    public Invalidation(RootedProperty property, boolean notifying) {
+        this.property = property;
+        this.notifying = notifying;
+    }
+
+    public RootedProperty getProperty() {
+        return property;
+    }
+
+    public boolean isNotifying() {
+        return notifying;
+    }
+
+}
@@ -75,6 +75,7 @@ public class ListNode<E> extends Node implements List<E> {
             return false;
         }
 
+        VersionedGraph.beforeWrite(this, String.valueOf(index));
         List<E> elements = new ArrayList<>(c);
         List<Integer> indices = new ArrayList<>(c.size());
 
@@ -91,8 +92,9 @@ public class ListNode<E> extends Node implements List<E> {
             if (current instanceof Node) {
                 String oldPath = String.valueOf(index - indices.size());
                 String newPath = String.valueOf(index);
-                ((Node) current).removeParentPath(this, oldPath);
+                // Added first, so that the Node is never left without parents and its structure is not split
                 ((Node) current).addParentPath(this, newPath);
+                ((Node) current).removeParentPath(this, oldPath);
             }
         }
 
@@ -166,6 +168,7 @@ public class ListNode<E> extends Node implements List<E> {
 
     @Override
     public E remove(int index) {
+        VersionedGraph.beforeWrite(this, String.valueOf(index));
         E element = list.remove(index);
 
         if (element instanceof Node) {
@@ -177,8 +180,9 @@ public class ListNode<E> extends Node implements List<E> {
             if (current instanceof Node) {
                 String oldPath = String.valueOf(i + 1);
                 String newPath = String.valueOf(i);
-                ((Node) current).removeParentPath(this, oldPath);
+                // Added first, so that the Node is never left without parents and its structure is not split
                 ((Node) current).addParentPath(this, newPath);
+                ((Node) current).removeParentPath(this, oldPath);
             }
         }
 
@@ -213,6 +217,7 @@ public class ListNode<E> extends Node implements List<E> {
    }
 
     public void removeIndices(List<Integer> indices) {
+        VersionedGraph.beforeWrite(this, "");
         Collections.sort(indices);
         List<E> elements = new ArrayList<>();
 
@@ -37,6 +37,7 @@ public class ListNodeIterator<E> implements ListIterator<E> {
     @Override
     public void add(E element) {
         int index = iterator.nextIndex();
+        VersionedGraph.beforeWrite(list, String.valueOf(index));
         iterator.add(element);
         if (element instanceof Node) {
             ((Node) element).addParentPath(list, String.valueOf(index));
@@ -47,8 +48,9 @@ public class ListNodeIterator<E> implements ListIterator<E> {
             if (current instanceof Node) {
                 String oldPath = String.valueOf(index - 1);
                 String newPath = String.valueOf(index);
-                ((Node) current).removeParentPath(list, oldPath);
+                // Added first, so that the Node is never left without parents and its structure is not split
                 ((Node) current).addParentPath(list, newPath);
+                ((Node) current).removeParentPath(list, oldPath);
             }
         }
 
@@ -90,6 +92,7 @@ public class ListNodeIterator<E> implements ListIterator<E> {
     @Override
     public void remove() {
         int index = iterator.nextIndex() - 1;
+        VersionedGraph.beforeWrite(list, String.valueOf(index));
         E element = list.get(index);
         iterator.remove();
         if (element instanceof Node) {
@@ -101,8 +104,9 @@ public class ListNodeIterator<E> implements ListIterator<E> {
             if (current instanceof Node) {
                 String oldPath = String.valueOf(i + 1);
                 String newPath = String.valueOf(i);
-                ((Node) current).removeParentPath(list, oldPath);
+                // Added first, so that the Node is never left without parents and its structure is not split
                 ((Node) current).addParentPath(list, newPath);
+                ((Node) current).removeParentPath(list, oldPath);
             }
         }
 
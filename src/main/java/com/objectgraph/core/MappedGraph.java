@@ -0,0 +1,405 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A read-only view of a Node graph stored in a memory-mapped file.
+ * <p/>
+ * Use {@link #export(Node, java.io.File)} to write a graph to a file, and {@link #open(java.io.File)} to map it. The
+ * Nodes returned by the view are {@link MappedNode}s, that read their properties from the mapped buffer when they are
+ * accessed: the graph itself is not loaded on the heap, so many processes on the same host can share a single
+ * page-cached copy of a large graph. Only what has been accessed ends up on the heap: the MappedNodes themselves and
+ * the decoded strings, which are kept once decoded, and the values stored with Kryo (the ones that are neither
+ * primitives, strings nor Nodes), which are deserialized again at each access. MappedNodes and strings are kept in
+ * tables whose slots are allocated in chunks of 1024, when one of them is first accessed.
+ * <p/>
+ * The file layout is made of a header, a table with the offset of each Node record, the Node records, a string table
+ * and an area of Kryo-serialized values. Each Node record contains the name of its class and one fixed-size entry per
+ * property, with the property name, its declared type and either the value itself (primitives), the index of a string
+ * or Node, or the position of a serialized value. Files are limited to 2GB.
+ */
+public final class MappedGraph {
+
+    private static final int MAGIC = 0x4F474D56;
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 24;
+    private static final int ENTRY_SIZE = 17;
+
+    static final byte TAG_NULL = 0;
+    static final byte TAG_BOOLEAN = 1;
+    static final byte TAG_BYTE = 2;
+    static final byte TAG_SHORT = 3;
+    static final byte TAG_CHAR = 4;
+    static final byte TAG_INT = 5;
+    static final byte TAG_LONG = 6;
+    static final byte TAG_FLOAT = 7;
+    static final byte TAG_DOUBLE = 8;
+    static final byte TAG_STRING = 9;
+    static final byte TAG_NODE = 10;
+    static final byte TAG_OBJECT = 11;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer buffer;
+    private final int nodeCount;
+    private final int nodeTable;
+    private final int stringTable;
+    private final Table<String> strings;
+    private final Table<MappedNode> nodes;
+
+    private final ThreadLocal<Kryo> kryo = new ThreadLocal<Kryo>() {
+        @Override
+        protected Kryo initialValue() {
+            return Node.newNodeKryo();
+        }
+    };
+
+    private MappedGraph(ByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC) {
+            throw new InvalidArchiveException("Not a mapped Node graph");
+        }
+        if (buffer.getInt(4) > VERSION) {
+            throw new InvalidArchiveException("Unsupported mapped graph version: " + buffer.getInt(4));
+        }
+        this.nodeCount = buffer.getInt(8);
+        this.nodeTable = buffer.getInt(12);
+        this.stringTable = buffer.getInt(16);
+        this.strings = new Table<>(buffer.getInt(stringTable));
+        this.nodes = new Table<>(nodeCount);
+    }
+
+    /**
+     * Maps a file written by {@link #export(Node, java.io.File)}.
+     *
+     * @param file the file to map
+     * @return a read-only view of the graph
+     * @throws IOException if the file cannot be mapped
+     */
+    public static MappedGraph open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            return new MappedGraph(buffer);
+        }
+    }
+
+    /**
+     * The root of the mapped graph.
+     *
+     * @return the Node that was given to {@link #export(Node, java.io.File)}
+     */
+    public MappedNode getRoot() {
+        return getNode(0);
+    }
+
+    /**
+     * The number of Nodes in the mapped graph.
+     *
+     * @return the number of Nodes reachable from the root when the graph was exported
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    MappedNode getNode(int index) {
+        MappedNode ret = nodes.get(index);
+        if (ret == null) {
+            ret = nodes.putIfAbsent(index, new MappedNode(this, buffer.getInt(nodeTable + 4 * index)));
+        }
+        return ret;
+    }
+
+    String getString(int index) {
+        String ret = strings.get(index);
+        if (ret == null) {
+            int offset = buffer.getInt(stringTable + 4 + 4 * index);
+            byte[] bytes = new byte[buffer.getInt(offset)];
+            ByteBuffer view = buffer.duplicate();
+            view.position(offset + 4);
+            view.get(bytes);
+            // Concurrent decoding of the same string is harmless
+            ret = strings.putIfAbsent(index, new String(bytes, UTF8));
+        }
+        return ret;
+    }
+
+    int getPropertyCount(int record) {
+        return buffer.getInt(record + 4);
+    }
+
+    String getClassName(int record) {
+        return getString(buffer.getInt(record));
+    }
+
+    String getPropertyName(int record, int slot) {
+        return getString(buffer.getInt(entry(record, slot)));
+    }
+
+    Class<?> getDeclaredType(int record, int slot) {
+        return NodeArchive.forName(kryo.get(), getString(buffer.getInt(entry(record, slot) + 4)));
+    }
+
+    Object getValue(int record, int slot) {
+        int entry = entry(record, slot);
+        long payload = buffer.getLong(entry + 9);
+        switch (buffer.get(entry + 8)) {
+            case TAG_BOOLEAN: return payload != 0;
+            case TAG_BYTE: return (byte) payload;
+            case TAG_SHORT: return (short) payload;
+            case TAG_CHAR: return (char) payload;
+            case TAG_INT: return (int) payload;
+            case TAG_LONG: return payload;
+            case TAG_FLOAT: return Float.intBitsToFloat((int) payload);
+            case TAG_DOUBLE: return Double.longBitsToDouble(payload);
+            case TAG_STRING: return getString((int) payload);
+            case TAG_NODE: return getNode((int) payload);
+            case TAG_OBJECT:
+                byte[] bytes = new byte[(int) payload];
+                ByteBuffer view = buffer.duplicate();
+                view.position((int) (payload >>> 32));
+                view.get(bytes);
+                return kryo.get().readClassAndObject(new Input(bytes));
+            default: return null;
+        }
+    }
+
+    private static int entry(int record, int slot) {
+        return record + 8 + ENTRY_SIZE * slot;
+    }
+
+    /**
+     * Writes a Node graph to a file that can be mapped with {@link #open(java.io.File)}.
+     * <p/>
+     * Every Node reachable from the root through properties is written once, so shared references and cycles are
+     * preserved. Property values that are neither primitives, Strings nor Nodes are serialized with Kryo.
+     *
+     * @param root the root of the graph
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void export(Node root, File file) throws IOException {
+        new Exporter(root).writeTo(file);
+    }
+
+    private static final class Table<T> {
+
+        private static final int CHUNK_BITS = 10;
+        private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+        private final AtomicReferenceArray<AtomicReferenceArray<T>> chunks;
+
+        private Table(int size) {
+            chunks = new AtomicReferenceArray<>((size + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+        }
+
+        private T get(int index) {
+            AtomicReferenceArray<T> chunk = chunks.get(index >>> CHUNK_BITS);
+            return chunk == null ? null : chunk.get(index & (CHUNK_SIZE - 1));
+        }
+
+        // Returns the value already in the slot, if any
+        private T putIfAbsent(int index, T value) {
+            int chunkIndex = index >>> CHUNK_BITS;
+            AtomicReferenceArray<T> chunk = chunks.get(chunkIndex);
+            if (chunk == null) {
+                chunks.compareAndSet(chunkIndex, null, new AtomicReferenceArray<T>(CHUNK_SIZE));
+                chunk = chunks.get(chunkIndex);
+            }
+            int slot = index & (CHUNK_SIZE - 1);
+            if (chunk.compareAndSet(slot, null, value)) {
+                return value;
+            }
+            return chunk.get(slot);
+        }
+
+    }
+
+    private static class Exporter {
+
+        private final List<Node> nodes = new ArrayList<>();
+        private final Map<Node, Integer> nodeIndices = new IdentityHashMap<>();
+        private final List<byte[]> strings = new ArrayList<>();
+        private final Map<String, Integer> stringIndices = new HashMap<>();
+        private final List<byte[]> blobs = new ArrayList<>();
+        private final Kryo kryo = Node.newNodeKryo();
+
+        private Exporter(Node root) {
+            indexOf(root);
+            // nodes grows while it is visited, so that every reachable Node gets an index
+            for (int i = 0; i < nodes.size(); i++) {
+                Node node = nodes.get(i);
+                indexOf(node.getClass().getName());
+                for (String property : node.getProperties()) {
+                    indexOf(property);
+                    indexOf(node.getPropertyType(property, false).getName());
+                    Object value = node.get(property);
+                    if (value instanceof Node) {
+                        indexOf((Node) value);
+                    } else if (value instanceof String) {
+                        indexOf((String) value);
+                    }
+                }
+            }
+        }
+
+        private int indexOf(Node node) {
+            Integer ret = nodeIndices.get(node);
+            if (ret == null) {
+                ret = nodes.size();
+                nodes.add(node);
+                nodeIndices.put(node, ret);
+            }
+            return ret;
+        }
+
+        private int indexOf(String string) {
+            Integer ret = stringIndices.get(string);
+            if (ret == null) {
+                ret = strings.size();
+                strings.add(string.getBytes(UTF8));
+                stringIndices.put(string, ret);
+            }
+            return ret;
+        }
+
+        private void writeTo(File file) throws IOException {
+            long position = HEADER_SIZE + 4L * nodes.size();
+            int[] records = new int[nodes.size()];
+            for (int i = 0; i < nodes.size(); i++) {
+                records[i] = (int) position;
+                position += 8 + ENTRY_SIZE * nodes.get(i).getProperties().size();
+            }
+            long stringTable = position;
+            position += 4 + 4 * strings.size();
+            int[] stringOffsets = new int[strings.size()];
+            for (int i = 0; i < strings.size(); i++) {
+                stringOffsets[i] = (int) position;
+                position += 4 + strings.get(i).length;
+            }
+            long blobArea = position;
+            if (blobArea > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Graph too large to be mapped");
+            }
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(nodes.size());
+                out.writeInt(HEADER_SIZE);
+                out.writeInt((int) stringTable);
+                out.writeInt(0);
+                for (int record : records) {
+                    out.writeInt(record);
+                }
+
+                long blobPosition = blobArea;
+                for (Node node : nodes) {
+                    out.writeInt(stringIndices.get(node.getClass().getName()));
+                    out.writeInt(node.getProperties().size());
+                    for (String property : node.getProperties()) {
+                        out.writeInt(stringIndices.get(property));
+                        out.writeInt(stringIndices.get(node.getPropertyType(property, false).getName()));
+                        Object value = node.get(property);
+                        byte tag = tagOf(value);
+                        out.writeByte(tag);
+                        if (tag == TAG_OBJECT) {
+                            byte[] blob = serialize(value);
+                            blobs.add(blob);
+                            out.writeLong((blobPosition << 32) | blob.length);
+                            blobPosition += blob.length;
+                            if (blobPosition > Integer.MAX_VALUE) {
+                                throw new IllegalArgumentException("Graph too large to be mapped");
+                            }
+                        } else {
+                            out.writeLong(payloadOf(tag, value));
+                        }
+                    }
+                }
+
+                out.writeInt(strings.size());
+                for (int offset : stringOffsets) {
+                    out.writeInt(offset);
+                }
+                for (byte[] string : strings) {
+                    out.writeInt(string.length);
+                    out.write(string);
+                }
+
+                for (byte[] blob : blobs) {
+                    out.write(blob);
+                }
+            }
+        }
+
+        private byte[] serialize(Object value) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            Output output = new Output(bytes);
+            kryo.writeClassAndObject(output, value);
+            output.close();
+            return bytes.toByteArray();
+        }
+
+        private static byte tagOf(Object value) {
+            if (value == null) return TAG_NULL;
+            if (value instanceof Boolean) return TAG_BOOLEAN;
+            if (value instanceof Byte) return TAG_BYTE;
+            if (value instanceof Short) return TAG_SHORT;
+            if (value instanceof Character) return TAG_CHAR;
+            if (value instanceof Integer) return TAG_INT;
+            if (value instanceof Long) return TAG_LONG;
+            if (value instanceof Float) return TAG_FLOAT;
+            if (value instanceof Double) return TAG_DOUBLE;
+            if (value instanceof String) return TAG_STRING;
+            if (value instanceof Node) return TAG_NODE;
+            return TAG_OBJECT;
+        }
+
+        private long payloadOf(byte tag, Object value) {
+            switch (tag) {
+                case TAG_BOOLEAN: return (Boolean) value ? 1 : 0;
+                case TAG_BYTE: return (Byte) value;
+                case TAG_SHORT: return (Short) value;
+                case TAG_CHAR: return (Character) value;
+                case TAG_INT: return (Integer) value;
+                case TAG_LONG: return (Long) value;
+                case TAG_FLOAT: return Float.floatToRawIntBits((Float) value);
+                case TAG_DOUBLE: return Double.doubleToRawLongBits((Double) value);
+                case TAG_STRING: return stringIndices.get(value);
+                case TAG_NODE: return nodeIndices.get(value);
+                default: return 0;
+            }
+        }
+
+    }
+
+}
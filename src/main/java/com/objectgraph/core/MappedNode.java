@@ -0,0 +1,148 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import java.util.*;
+
+/**
+ * A read-only Node backed by a {@link MappedGraph}.
+ * <p/>
+ * A MappedNode exposes the same properties as the Node from which it was exported (for a {@link ListNode}, the
+ * properties are the indices of its elements), but its values are read from the mapped file when they are accessed
+ * (see {@link MappedGraph} for what is kept on the heap). Nested Nodes are MappedNodes themselves, and the same instance
+ * is returned for the same exported Node.
+ * <p/>
+ * Any attempt to modify a MappedNode throws an {@link UnsupportedOperationException}.
+ */
+public final class MappedNode extends Node {
+
+    private final MappedGraph graph;
+    private final int record;
+
+    private volatile Map<String, Integer> slots;
+    private volatile List<String> properties;
+
+    MappedNode(MappedGraph graph, int record) {
+        this.graph = graph;
+        this.record = record;
+    }
+
+    /**
+     * The name of the class of the Node from which this MappedNode was exported.
+     *
+     * @return the fully qualified class name of the original Node
+     */
+    public String getOriginalClassName() {
+        return graph.getClassName(record);
+    }
+
+    @Override
+    public void set(String path, Object value) {
+        throw new UnsupportedOperationException("MappedNodes are read-only");
+    }
+
+    @Override
+    protected void setLocal(String property, Object value) {
+        throw new UnsupportedOperationException("MappedNodes are read-only");
+    }
+
+    @Override
+    public void addParentPath(EventRecipient parent, String property) {
+        // Mapped graphs are immutable: there are no events to propagate
+    }
+
+    @Override
+    public void removeParentPath(EventRecipient parent, String property) {
+        // See addParentPath
+    }
+
+    @Override
+    public <N extends Node> void addTrigger(Trigger<N> t) {
+        throw new UnsupportedOperationException("MappedNodes are read-only");
+    }
+
+    @Override
+    public <N extends Node> void removeTrigger(Trigger<N> t) {
+        throw new UnsupportedOperationException("MappedNodes are read-only");
+    }
+
+    @Override
+    public <N extends Node> void addErrorCheck(ErrorCheck<N, ?> e) {
+        throw new UnsupportedOperationException("MappedNodes are read-only");
+    }
+
+    @Override
+    public void removeErrorCheck(ErrorCheck<?, ?> e) {
+        throw new UnsupportedOperationException("MappedNodes are read-only");
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected <T> T getLocal(String property) {
+        return (T) graph.getValue(record, slotOf(property));
+    }
+
+    @Override
+    public boolean hasProperty(String property) {
+        return getSlots().containsKey(property);
+    }
+
+    @Override
+    public List<String> getProperties() {
+        List<String> ret = properties;
+        if (ret == null) {
+            int count = graph.getPropertyCount(record);
+            String[] names = new String[count];
+            for (int i = 0; i < count; i++) {
+                names[i] = graph.getPropertyName(record, i);
+            }
+            ret = Collections.unmodifiableList(Arrays.asList(names));
+            properties = ret;
+        }
+        return ret;
+    }
+
+    @Override
+    protected Class<?> getDeclaredPropertyType(String property) {
+        return graph.getDeclaredType(record, slotOf(property));
+    }
+
+    private int slotOf(String property) {
+        Integer ret = getSlots().get(property);
+        if (ret == null) {
+            throw new PropertyNotExistsException(this, property);
+        }
+        return ret;
+    }
+
+    private Map<String, Integer> getSlots() {
+        Map<String, Integer> ret = slots;
+        if (ret == null) {
+            ret = new HashMap<>();
+            List<String> names = getProperties();
+            for (int i = 0; i < names.size(); i++) {
+                ret.put(names.get(i), i);
+            }
+            slots = ret;
+        }
+        return ret;
+    }
+
+}
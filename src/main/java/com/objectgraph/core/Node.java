@@ -29,6 +29,8 @@ import org.pcollections.HashTreePSet;
 import org.pcollections.PSet;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Main class of the Object-Graph Framework, provides event handling, error checking and more.
@@ -79,14 +81,45 @@ import java.util.*;
  */
 public abstract class Node implements EventRecipient {
 
-    private final Set<Trigger<?>> triggers = new HashSet<>();
+    // Allocated when the first Trigger is added to this instance; most Nodes only use the ones of their class
+    private Set<Trigger<?>> triggers;
 
-    private final Map<String, Set<ErrorCheck<?, ?>>> errorChecks = new HashMap<>();
+    // Analysis of the registered Triggers, recomputed when they change
+    private transient TriggerGraph triggerGraph;
+
+    // Allocated when the first ErrorCheck is added to this instance
+    private Map<String, Set<ErrorCheck<?, ?>>> errorChecks;
+
+    // Properties whose value has to be recomputed by a Trigger before being read; allocated on first use
+    private transient Map<String, Trigger<?>> stale;
+
+    // Bumped when the Triggers or ErrorChecks registered on a class change, which can affect any Node
+    private static final AtomicLong classHelpersVersion = new AtomicLong();
+
+    // The Nodes this one has been linked with; created on first use
+    private transient volatile Structure structure;
+
+    // Results of getControlledProperties and getErrorChecks, valid while the structure of this Node does not change
+    private transient LookupIndex lookupIndex;
+
+    // Shared by the error subscriptions of this Node; only exists while there are some
+    private transient IncrementalValidator errorValidator;
 
     private final static Kryo kryo;
 
     static {
-        kryo = new Kryo() {
+        kryo = newNodeKryo();
+    }
+
+    static Kryo newNodeKryo() {
+        Kryo ret = newKryo();
+        ret.addDefaultSerializer(Node.class, NodeSerializer.class);
+        ret.addDefaultSerializer(ListNode.class, NodeSerializer.class);
+        return ret;
+    }
+
+    static Kryo newKryo() {
+        Kryo ret = new Kryo() {
             private InstantiatorStrategy s = new StdInstantiatorStrategy();
             @Override protected ObjectInstantiator newInstantiator(final Class type) {
                 if (Node.class.isAssignableFrom(type)) {
@@ -97,9 +130,9 @@ public abstract class Node implements EventRecipient {
                 }
             }
         };
-        kryo.addDefaultSerializer(Node.class, NodeSerializer.class);
-        kryo.addDefaultSerializer(ListNode.class, NodeSerializer.class);
-        kryo.setInstantiatorStrategy(new StdInstantiatorStrategy());
+        ret.setInstantiatorStrategy(new StdInstantiatorStrategy());
+        ret.setClassLoader(PluginManager.getClassLoader());
+        return ret;
     }
 
     /**
@@ -221,6 +254,7 @@ public abstract class Node implements EventRecipient {
                     ((Node) oldValue).removeParentPath(this, path);
                 }
 
+                VersionedGraph.beforeWrite(this, path);
                 setLocal(path, value);
 
                 if (value instanceof Node) {
@@ -287,10 +321,12 @@ public abstract class Node implements EventRecipient {
                 throw new PropertyNotExistsException(this, path);
             }
 
+            refresh(path);
             return getLocal(path);
         } else {
             String localProperty = path.substring(0, firstSplit);
             String remainingPath = path.substring(firstSplit + 1);
+            refresh(localProperty);
             Node local = getLocal(localProperty);
             if (local != null) {
                 return local.get(remainingPath);
@@ -312,6 +348,73 @@ public abstract class Node implements EventRecipient {
      */
     protected abstract <T> T getLocal(String property);
 
+    /**
+     * Checks if the value of a property is waiting to be recomputed.
+     * <p/>
+     * Properties controlled by lazy Triggers (for example {@link com.objectgraph.core.triggers.LazyDependency}) become
+     * stale when their sources change, and are recomputed the next time they are read with {@link #get(String)}.
+     *
+     * @param property the name of the local property
+     * @return {@code true} if the current value of the property is outdated
+     */
+    public synchronized boolean isStale(String property) {
+        return stale != null && stale.containsKey(property);
+    }
+
+    synchronized void markStale(String property, Trigger<?> trigger) {
+        if (stale == null) {
+            stale = new HashMap<>();
+        }
+        stale.put(property, trigger);
+    }
+
+    private void refresh(String property) {
+        if (stale != null) {
+            synchronized (this) {
+                if (stale.containsKey(property)) {
+                    // Refreshing sets the property, which a ConcurrentGraph only allows under its write lock
+                    ConcurrentGraph.checkCanRefresh();
+                    stale.remove(property).refreshStale();
+                }
+            }
+        }
+    }
+
+    /**
+     * Recomputes the stale properties of every Node in the graph, so that copies and archives contain current values.
+     *
+     * @param root the root of the graph
+     * @param refreshed the Nodes already refreshed, which are skipped together with their descendants; the Nodes
+     *                  refreshed by this call are added to it
+     */
+    static void refreshStaleProperties(Node root, Set<Node> refreshed) {
+        // Nodes are collected first, since refreshing a property can replace the Nodes it points to
+        List<Node> nodes = new ArrayList<>();
+        Deque<Node> stack = new ArrayDeque<>();
+        if (refreshed.add(root)) {
+            stack.push(root);
+        }
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            nodes.add(node);
+            for (String property : node.getProperties()) {
+                Object value = node.getLocal(property);
+                if (value instanceof Node && refreshed.add((Node) value)) {
+                    stack.push((Node) value);
+                }
+            }
+        }
+        for (Node node : nodes) {
+            if (node.stale != null) {
+                synchronized (node) {
+                    while (!node.stale.isEmpty()) {
+                        node.refresh(node.stale.keySet().iterator().next());
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Checks if the given property is present in the current object
      * <p/>
@@ -354,14 +457,19 @@ public abstract class Node implements EventRecipient {
      * @return a list of properties controlled by at least one Trigger
      */
     public List<String> getControlledProperties() {
-        List<String> ret = new ArrayList<>();
-        getControlledProperties("", ret, HashTreePSet.<Node>singleton(this));
-        Collections.sort(ret);
-        return ret;
+        LookupIndex index = getLookupIndex();
+        List<String> ret = index.controlledProperties;
+        if (ret == null) {
+            ret = new ArrayList<>();
+            getControlledProperties("", ret, HashTreePSet.<Node>singleton(this));
+            Collections.sort(ret);
+            index.controlledProperties = ret;
+        }
+        return new ArrayList<>(ret);
     }
 
     private void getControlledProperties(String prefixPath, List<String> controlled, PSet<Node> seen) {
-        for (Trigger<?> t : triggers) {
+        for (Trigger<?> t : getTriggers()) {
             for (String path : t.getControlledPaths()) {
                 if (PathUtils.isParent(prefixPath, path)) {
                     controlled.add(PathUtils.toLocalProperty(path));
@@ -405,14 +513,31 @@ public abstract class Node implements EventRecipient {
      * @param e the Event to fire
      */
     public void fireEvent(Event e) {
-        handleEvent(e, HashTreePSet.<EventRecipient>singleton(this));
+        if (!reachesDeferredTrigger()) {
+            // Nothing to schedule: the Triggers reached by the Event run immediately anyway
+            handleEvent(e, HashTreePSet.<EventRecipient>singleton(this));
+            return;
+        }
+        // Only the outermost Event of the thread schedules the deferred Triggers
+        Propagation propagation = Propagation.begin();
+        try {
+            handleEvent(e, HashTreePSet.<EventRecipient>singleton(this));
+            if (propagation != null) {
+                propagation.drain();
+            }
+        } finally {
+            if (propagation != null) {
+                propagation.end();
+            }
+        }
     }
 
     /**
      * Implements Event handling for Nodes: checks local {@link Trigger}s and propagates the received Event to parents
      *
      * Once an {@link Event} reachs this Node, every {@link Trigger} registered using {@link #addTrigger(Trigger)} is checked
-     * against the event, and triggered if necessary.
+     * against the event, and triggered if necessary. The same holds for the properties derived by the handler methods
+     * of the class (see {@link ObjectNode.DerivedFrom}).
      * <p/>
      * After that, the event is propagated to every parent through the relative path. The second parameters is used to
      * assure that the method doesn't loop if cycles are found.
@@ -422,12 +547,25 @@ public abstract class Node implements EventRecipient {
      */
     @Override
     public void handleEvent(Event e, PSet<EventRecipient> visited) {
-        for (Trigger<?> t : triggers) {
-            t.check(e);
+        TriggerGraph classGraph = ClassHelpers.get(getClass()).getTriggerGraph();
+        for (Trigger<?> t : classGraph.getEvaluationOrder()) {
+            if (!classGraph.isRedundant(t)) {
+                ClassHelpers.check(t, this, e);
+            }
+        }
+        TriggerGraph graph = getTriggerGraph();
+        for (Trigger<?> t : graph.getEvaluationOrder()) {
+            if (!graph.isRedundant(t)) {
+                t.check(e);
+            }
+        }
+        for (DerivedProperty d : getDerivedProperties()) {
+            d.check(this, e);
         }
 
+        boolean nodesOnly = e.getType() instanceof Invalidation && !((Invalidation) e.getType()).isNotifying();
         for (EventRecipient parent : getParentPaths().keySet()) {
-            if (visited.contains(parent)) {
+            if (visited.contains(parent) || (nodesOnly && !(parent instanceof Node))) {
                 continue;
             }
             try {
@@ -451,7 +589,61 @@ public abstract class Node implements EventRecipient {
     @SuppressWarnings("unchecked")
     public <N extends Node> void addTrigger(Trigger<N> t) {
         t.setNode((N)this);
-        triggers.add(t);
+        TriggerGraph graph = getTriggerGraph();
+        if (triggers == null) {
+            triggers = new LinkedHashSet<>();
+        }
+        if (triggers.add(t)) {
+            triggerGraph = graph.plus(t, this);
+        }
+        structureChanged();
+    }
+
+    /**
+     * Registers a {@link Trigger} on every instance of the given class and of its subclasses.
+     * <p/>
+     * The Trigger is stored once, instead of being created and registered in the constructor of each instance, and
+     * it is bound to an instance only while it is checked or activated by an Event that reaches it. Call this method
+     * in a static initializer of the class:
+     * <pre>
+     *     public class MyNode extends ObjectNode {
+     *         static {
+     *             addClassTrigger(MyNode.class, new Dependency("text", "toText", "value"));
+     *         }
+     *          :
+     *     }
+     * </pre>
+     * Shared Triggers must only use {@link NodeHelper#getNode()} inside {@link Trigger#isTriggeredBy(Event)},
+     * {@link Trigger#action(Event)} and {@link Trigger#refresh()}, so asynchronous Triggers cannot be shared.
+     *
+     * @param type the class whose instances use the Trigger
+     * @param t the Trigger, not registered elsewhere
+     */
+    protected static <N extends Node> void addClassTrigger(Class<N> type, Trigger<? super N> t) {
+        ClassHelpers.addTrigger(type, t);
+    }
+
+    /**
+     * The Triggers that apply to this Node, including the ones registered on its class and its derived properties.
+     */
+    Set<Trigger<?>> getTriggers() {
+        List<Trigger<?>> classTriggers = ClassHelpers.get(getClass()).getTriggers();
+        List<DerivedProperty> derived = getDerivedProperties();
+        if (classTriggers.isEmpty() && derived.isEmpty()) {
+            return triggers == null ? Collections.<Trigger<?>>emptySet() : Collections.unmodifiableSet(triggers);
+        }
+        // Class helpers and derived properties are bound only for the caller
+        Set<Trigger<?>> ret = new LinkedHashSet<>();
+        for (Trigger<?> t : classTriggers) {
+            ret.add(new ClassHelpers.BoundTrigger(t, this));
+        }
+        for (DerivedProperty d : derived) {
+            ret.add(d.bind(this));
+        }
+        if (triggers != null) {
+            ret.addAll(triggers);
+        }
+        return Collections.unmodifiableSet(ret);
     }
 
     /**
@@ -464,8 +656,36 @@ public abstract class Node implements EventRecipient {
         if (t.getNode() != this) {
             throw new NodeHelperUsedByOtherException(t, this);
         }
+        TriggerGraph graph = getTriggerGraph();
         triggers.remove(t);
+        if (triggers.isEmpty()) {
+            triggers = null;
+            triggerGraph = null;
+        } else {
+            triggerGraph = graph.minus(t);
+        }
         t.setNode(null);
+        structureChanged();
+    }
+
+    /**
+     * The properties computed by handler methods of this Node's class; see {@link ObjectNode.DerivedFrom}.
+     */
+    List<DerivedProperty> getDerivedProperties() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * The analysis of the Triggers registered on this instance.
+     */
+    TriggerGraph getTriggerGraph() {
+        if (triggers == null) {
+            return TriggerGraph.EMPTY;
+        }
+        if (triggerGraph == null) {
+            triggerGraph = TriggerGraph.of(this, triggers);
+        }
+        return triggerGraph;
     }
 
     /**
@@ -495,6 +715,10 @@ public abstract class Node implements EventRecipient {
      */
     protected abstract Class<?> getDeclaredPropertyType(String property);
 
+    Map<String, Set<ErrorCheck<?, ?>>> getLocalErrorChecks() {
+        return errorChecks == null ? Collections.<String, Set<ErrorCheck<?, ?>>>emptyMap() : errorChecks;
+    }
+
     /**
      * Register an {@link ErrorCheck}
      *
@@ -503,10 +727,27 @@ public abstract class Node implements EventRecipient {
     @SuppressWarnings("unchecked")
     public <N extends Node> void addErrorCheck(ErrorCheck<N, ?> e) {
         e.setNode((N) this);
+        if (errorChecks == null) {
+            errorChecks = new HashMap<>();
+        }
         if (!errorChecks.containsKey(e.getPath())) {
             errorChecks.put(e.getPath(), new HashSet<ErrorCheck<?, ?>>());
         }
         errorChecks.get(e.getPath()).add(e);
+        structureChanged();
+    }
+
+    /**
+     * Registers an {@link ErrorCheck} on every instance of the given class and of its subclasses.
+     * <p/>
+     * As for {@link #addClassTrigger(Class, Trigger)}, the ErrorCheck is stored once and bound to an instance only
+     * while it is evaluated.
+     *
+     * @param type the class whose instances use the ErrorCheck
+     * @param e the ErrorCheck, not registered elsewhere
+     */
+    protected static <N extends Node> void addClassErrorCheck(Class<N> type, ErrorCheck<? super N, ?> e) {
+        ClassHelpers.addErrorCheck(type, e);
     }
 
     /**
@@ -522,8 +763,12 @@ public abstract class Node implements EventRecipient {
         errorChecks.get(e.getPath()).remove(e);
         if (errorChecks.get(e.getPath()).isEmpty()) {
             errorChecks.remove(e.getPath());
+            if (errorChecks.isEmpty()) {
+                errorChecks = null;
+            }
         }
         e.setNode(null);
+        structureChanged();
     }
 
     /**
@@ -542,23 +787,114 @@ public abstract class Node implements EventRecipient {
             return;
         }
         seen.add(this);
-        for (Set<ErrorCheck<?, ?>> checks : errorChecks.values()) {
-            for (ErrorCheck<?, ?> check: checks) {
-                Error error = check.getError();
-                if (error != null) {
-                    String completePath = PathUtils.appendPath(path, check.getPath());
-                    if (!errors.containsKey(completePath)) {
-                        errors.put(completePath, new HashSet<Error>());
-                    }
-                    errors.get(completePath).add(error);
-                }
+        getLocalErrors(errors, path);
+        for (String property : getProperties()) {
+            Object content = get(property);
+            if (content instanceof Node) {
+                ((Node) content).getErrors(errors, PathUtils.appendPath(path, property), seen);
             }
         }
+    }
+
+    /**
+     * Reports the cycles and the redundant Triggers of each Node below this one, as warnings.
+     * <p/>
+     * The Triggers of each Node, and the ones registered on its class, are analyzed separately when they change (see
+     * {@link TriggerGraph}); use {@link TriggerGraph#analyze(Node)} to find the cycles across Nodes.
+     *
+     * @return a map with the controlled paths of the involved Triggers as keys and the warnings as values
+     */
+    public Map<String, Set<Error>> getTriggerWarnings() {
+        Map<String, Set<Error>> ret = new LinkedHashMap<>();
+        getTriggerWarnings(ret, "", Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>()));
+        return ret;
+    }
+
+    private void getTriggerWarnings(Map<String, Set<Error>> warnings, String path, Set<Node> seen) {
+        if (!seen.add(this)) {
+            return;
+        }
+        addErrors(warnings, path, ClassHelpers.get(getClass()).getTriggerGraph().getWarnings());
+        addErrors(warnings, path, getTriggerGraph().getWarnings());
         for (String property : getProperties()) {
             Object content = get(property);
             if (content instanceof Node) {
-                ((Node) content).getErrors(errors, PathUtils.appendPath(path, property), seen);
+                ((Node) content).getTriggerWarnings(warnings, PathUtils.appendPath(path, property), seen);
+            }
+        }
+    }
+
+    /**
+     * Evaluates the checks of this Node, without visiting its children.
+     *
+     * @param errors the map to which the errors are added
+     * @param path the path of this Node, used as prefix of the paths of the errors
+     */
+    void getLocalErrors(Map<String, Set<Error>> errors, String path) {
+        ClassHelpers shared = ClassHelpers.get(getClass());
+        for (List<ErrorCheck<?, ?>> checks : shared.getErrorChecks().values()) {
+            for (ErrorCheck<?, ?> check : checks) {
+                addError(errors, PathUtils.appendPath(path, check.getPath()), ClassHelpers.getError(check, this));
+            }
+        }
+        if (errorChecks != null) {
+            for (Set<ErrorCheck<?, ?>> checks : errorChecks.values()) {
+                for (ErrorCheck<?, ?> check: checks) {
+                    addError(errors, PathUtils.appendPath(path, check.getPath()), check.getError());
+                }
+            }
+        }
+    }
+
+    /**
+     * Subscribes to the changes of the errors of this Node and of the Nodes below it.
+     * <p/>
+     * The listener first receives the current errors, as added errors, then an {@link ErrorDelta} each time the
+     * errors of a path change, without polling {@link #getErrors()}. Only the errors of the given level or more
+     * severe, on paths that match the given pattern, are delivered; see {@link ErrorSubscription} for the pattern
+     * syntax. The errors are kept up to date by an {@link IncrementalValidator} shared by the subscriptions of this
+     * Node, which exists until the last subscription is cancelled.
+     *
+     * @param minLevel the minimum level of the delivered errors
+     * @param pathPattern the pattern of the delivered paths, relative to this Node
+     * @param listener the listener that receives the errors
+     * @return the subscription, to be cancelled when no longer needed
+     */
+    public ErrorSubscription subscribeErrors(Error.Level minLevel, String pathPattern,
+                                             IncrementalValidator.Listener listener) {
+        ErrorSubscription ret = new ErrorSubscription(this, minLevel, pathPattern, listener);
+        if (errorValidator == null) {
+            errorValidator = new IncrementalValidator(this);
+        }
+        ret.start(errorValidator);
+        errorValidator.addListener(ret);
+        return ret;
+    }
+
+    void unsubscribeErrors(ErrorSubscription subscription) {
+        if (errorValidator != null) {
+            errorValidator.removeListener(subscription);
+            if (!errorValidator.hasListeners()) {
+                errorValidator.dispose();
+                errorValidator = null;
+            }
+        }
+    }
+
+    private static void addErrors(Map<String, Set<Error>> errors, String path, Map<String, Set<Error>> found) {
+        for (Map.Entry<String, Set<Error>> entry : found.entrySet()) {
+            for (Error error : entry.getValue()) {
+                addError(errors, PathUtils.appendPath(path, entry.getKey()), error);
+            }
+        }
+    }
+
+    private static void addError(Map<String, Set<Error>> errors, String completePath, Error error) {
+        if (error != null) {
+            if (!errors.containsKey(completePath)) {
+                errors.put(completePath, new HashSet<Error>());
             }
+            errors.get(completePath).add(error);
         }
     }
 
@@ -576,16 +912,31 @@ public abstract class Node implements EventRecipient {
             throw new PropertyNotExistsException(this, property);
         }
 
-        List<ErrorCheck<?, ?>> list = new ArrayList<>();
-        getErrorChecks(property, list, HashTreePSet.<Node>empty());
+        LookupIndex index = getLookupIndex();
+        List<ErrorCheck<?, ?>> list = index.errorChecks.get(property);
+        if (list == null) {
+            list = new ArrayList<>();
+            getErrorChecks(property, list, HashTreePSet.<Node>empty());
+            index.errorChecks.put(property, list);
+        }
 
-        return list;
+        return new ArrayList<>(list);
     }
 
     private void getErrorChecks(String path, List<ErrorCheck<?, ?>> list, PSet<Node> seen) {
-        for(String constrainedPath: errorChecks.keySet()) {
+        Map<String, List<ErrorCheck<?, ?>>> shared = ClassHelpers.get(getClass()).getErrorChecks();
+        for (String constrainedPath : shared.keySet()) {
             if (PathUtils.samePath(constrainedPath, path)) {
-                list.addAll(errorChecks.get(constrainedPath));
+                for (ErrorCheck<?, ?> check : shared.get(constrainedPath)) {
+                    list.add(new ClassHelpers.BoundErrorCheck(check, this));
+                }
+            }
+        }
+        if (errorChecks != null) {
+            for(String constrainedPath: errorChecks.keySet()) {
+                if (PathUtils.samePath(constrainedPath, path)) {
+                    list.addAll(errorChecks.get(constrainedPath));
+                }
             }
         }
 
@@ -599,6 +950,187 @@ public abstract class Node implements EventRecipient {
         }
     }
 
+    /**
+     * Checks if an Event fired by this Node can reach a deferred Trigger, registered on this Node or on an ancestor.
+     */
+    private boolean reachesDeferredTrigger() {
+        LookupIndex index = getLookupIndex();
+        Boolean ret = index.reachesDeferredTrigger;
+        if (ret == null) {
+            ret = false;
+            Set<Node> seen = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+            Deque<Node> stack = new ArrayDeque<>();
+            seen.add(this);
+            stack.push(this);
+            while (!ret && !stack.isEmpty()) {
+                Node node = stack.pop();
+                for (Trigger<?> t : node.getTriggers()) {
+                    if (t.isDeferred()) {
+                        ret = true;
+                        break;
+                    }
+                }
+                for (EventRecipient parent : node.getParentPaths().keySet()) {
+                    if (parent instanceof Node && seen.add((Node) parent)) {
+                        stack.push((Node) parent);
+                    }
+                }
+            }
+            index.reachesDeferredTrigger = ret;
+        }
+        return ret;
+    }
+
+    /**
+     * Invalidates the results of {@link #getControlledProperties()} and {@link #getErrorChecks(String)} of the Nodes
+     * linked with this one.
+     * <p/>
+     * These results depend on the Triggers and ErrorChecks of the Node and of its ancestors, so they are cached until
+     * a parent link, Trigger or ErrorCheck of a Node in the same graph changes; changes in unrelated graphs do not
+     * affect them.
+     */
+    void structureChanged() {
+        getStructure().version.incrementAndGet();
+    }
+
+    /**
+     * Records a new link from a parent to a child: from now on they share their structure version.
+     */
+    static void linked(Node parent, Node child) {
+        synchronized (Structure.class) {
+            Structure a = parent.getStructure();
+            Structure b = child.getStructure();
+            if (a != b) {
+                if (a.size < b.size) {
+                    Structure swap = a;
+                    a = b;
+                    b = swap;
+                }
+                b.merged = a;
+                a.size += b.size;
+            }
+            a.version.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records that a child has lost its last Node parent: unless a Node below it is still linked with the rest of the
+     * graph, the child and the Nodes below it get a structure of their own, and both sides are invalidated.
+     */
+    static void unlinked(Node child) {
+        Set<Node> detached = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+        Deque<Node> stack = new ArrayDeque<>();
+        detached.add(child);
+        stack.push(child);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            for (String property : node.getProperties()) {
+                Object value = node.getLocal(property);
+                if (value instanceof Node && detached.add((Node) value)) {
+                    stack.push((Node) value);
+                }
+            }
+        }
+        for (Node node : detached) {
+            for (EventRecipient parent : node.getParentPaths().keySet()) {
+                if (parent instanceof Node && !detached.contains(parent)) {
+                    return;
+                }
+            }
+        }
+        synchronized (Structure.class) {
+            Structure previous = child.getStructure();
+            Structure split = new Structure();
+            split.size = detached.size();
+            previous.size = Math.max(1, previous.size - detached.size());
+            for (Node node : detached) {
+                node.structure = split;
+            }
+            previous.version.incrementAndGet();
+        }
+    }
+
+    /**
+     * Invalidates the results cached by every Node, after the helpers registered on a class changed.
+     */
+    static void classHelpersChanged() {
+        classHelpersVersion.incrementAndGet();
+    }
+
+    private Structure getStructure() {
+        Structure ret = structure;
+        if (ret == null) {
+            synchronized (Structure.class) {
+                ret = structure;
+                if (ret == null) {
+                    ret = new Structure();
+                    structure = ret;
+                }
+            }
+        }
+        Structure root = ret.find();
+        if (root != ret) {
+            synchronized (Structure.class) {
+                // Unless the Node has been moved to a split structure meanwhile
+                if (structure == ret) {
+                    structure = root;
+                }
+            }
+        }
+        return root;
+    }
+
+    private LookupIndex getLookupIndex() {
+        Structure current = getStructure();
+        long version = current.version.get();
+        long classVersion = classHelpersVersion.get();
+        LookupIndex ret = lookupIndex;
+        if (ret == null || ret.structure != current || ret.version != version || ret.classVersion != classVersion) {
+            ret = new LookupIndex(current, version, classVersion);
+            lookupIndex = ret;
+        }
+        return ret;
+    }
+
+    /**
+     * The Nodes that have been linked with each other, directly or through other Nodes, as a union-find set: only
+     * the root of each set is current, and its version is bumped by every change of parent links, Triggers or
+     * ErrorChecks of its Nodes. Sets are merged when Nodes are linked; when a Node loses its last parent, it and the
+     * Nodes below it are split into a new set, unless they are still linked with the rest of the graph.
+     */
+    private static final class Structure {
+
+        private volatile Structure merged;
+        private int size = 1;
+        private final AtomicLong version = new AtomicLong();
+
+        Structure find() {
+            Structure ret = this;
+            while (ret.merged != null) {
+                ret = ret.merged;
+            }
+            return ret;
+        }
+
+    }
+
+    private static class LookupIndex {
+
+        private final Structure structure;
+        private final long version;
+        private final long classVersion;
+        private volatile List<String> controlledProperties;
+        private volatile Boolean reachesDeferredTrigger;
+        private final Map<String, List<ErrorCheck<?, ?>>> errorChecks = new ConcurrentHashMap<>();
+
+        LookupIndex(Structure structure, long version, long classVersion) {
+            this.structure = structure;
+            this.version = version;
+            this.classVersion = classVersion;
+        }
+
+    }
+
     /**
      * Return a {@link RootedProperty} relative to the given property.
      *
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.*;
+
+/**
+ * Reads and writes Node graphs in a compact, schema-aware binary format.
+ * <p/>
+ * The format is made of a header and a body. The header contains a format version and, for each class of the
+ * {@link NodeSchema} that appears in the graph, its compact ID, its name and its property slot layout. The body is
+ * written by Kryo, using the compact IDs instead of class names and writing the properties of each Node in slots,
+ * without their names. As the header is self-describing, an archive written with an older layout of a class can
+ * still be read: slots of properties that no longer exist are dropped, and new properties are left null (or zero), as
+ * Nodes are read without running their constructors. Values whose type no longer fits their property are left out
+ * too, and reported by {@link #read(InputStream, List)}.
+ * <p/>
+ * Fields that are not properties (for example the registered Triggers) are written as they are by Kryo, so their
+ * layout must not change between writing and reading.
+ * <p/>
+ * Each call uses its own Kryo instance, so a NodeArchive can be shared between threads.
+ */
+public class NodeArchive {
+
+    /**
+     * The version of the format written by this class; archives with a greater version cannot be read.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int MAGIC = 0x4F474152;
+
+    private static final Map<String, Class<?>> primitives = new HashMap<>();
+
+    static {
+        for (Class<?> type : Arrays.asList(boolean.class, byte.class, char.class, short.class, int.class, long.class,
+                float.class, double.class)) {
+            primitives.put(type.getName(), type);
+        }
+    }
+
+    private final NodeSchema schema;
+
+    /**
+     * @param schema the schema that assigns class IDs and layouts when writing
+     */
+    public NodeArchive(NodeSchema schema) {
+        this.schema = schema;
+    }
+
+    /**
+     * Writes a Node graph to the given stream.
+     * <p/>
+     * The stream is flushed but not closed.
+     *
+     * @param root the root of the graph
+     * @param stream the stream to write to
+     */
+    @SuppressWarnings("unchecked")
+    public void write(Node root, OutputStream stream) {
+        // Stale marks are not archived
+        Node.refreshStaleProperties(root, Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>()));
+
+        Map<Class<?>, List<SchemaSerializer.Slot>> slots = new HashMap<>();
+        SchemaSerializer serializer = new SchemaSerializer(slots, null);
+        Kryo kryo = newKryo(serializer);
+
+        Map<Class<?>, Integer> ids = new HashMap<>();
+        int nextId = kryo.getNextRegistrationId();
+        for (Class<? extends Node> type : schema.getTypes()) {
+            List<SchemaSerializer.Slot> layout = new ArrayList<>();
+            for (String property : schema.getLayout(type)) {
+                Class<?> declared = ObjectNode.getDeclaredPropertyType((Class<? extends ObjectNode>) type, property);
+                layout.add(new SchemaSerializer.Slot(property, kryo.isFinal(declared) ? declared : null));
+            }
+            slots.put(type, layout);
+            kryo.register(type, serializer, nextId);
+            ids.put(type, nextId++);
+        }
+
+        // The body is written first, so that only the classes that are actually used end up in the header
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        Output bodyOutput = new Output(body);
+        kryo.writeClassAndObject(bodyOutput, root);
+        bodyOutput.close();
+
+        Output output = new Output(stream);
+        output.writeInt(MAGIC);
+        output.writeInt(FORMAT_VERSION, true);
+        List<Class<? extends Node>> used = new ArrayList<>();
+        for (Class<? extends Node> type : schema.getTypes()) {
+            if (serializer.getWrittenTypes().contains(type)) {
+                used.add(type);
+            }
+        }
+        output.writeInt(used.size(), true);
+        for (Class<? extends Node> type : used) {
+            output.writeInt(ids.get(type), true);
+            output.writeString(type.getName());
+            List<SchemaSerializer.Slot> layout = slots.get(type);
+            output.writeInt(layout.size(), true);
+            for (SchemaSerializer.Slot slot : layout) {
+                output.writeString(slot.property);
+                output.writeString(slot.type == null ? "" : slot.type.getName());
+            }
+        }
+        output.writeBytes(body.toByteArray());
+        output.flush();
+    }
+
+    /**
+     * Reads a Node graph written by {@link #write(Node, java.io.OutputStream)}.
+     * <p/>
+     * Parent paths are registered while the graph is read, as with {@link Node#getKryo()}. Properties whose type has
+     * changed since the archive was written keep their default value: use {@link #read(InputStream, List)} to know
+     * which ones.
+     *
+     * @param stream the stream to read from
+     * @return the root of the graph
+     * @throws InvalidArchiveException if the stream does not contain a valid archive, or it refers to unknown classes
+     */
+    public <N extends Node> N read(InputStream stream) {
+        return read(stream, null);
+    }
+
+    /**
+     * Reads a Node graph written by {@link #write(Node, java.io.OutputStream)}, reporting the archived property values
+     * that could not be read back because the type of the property has changed.
+     *
+     * @param stream the stream to read from
+     * @param problems the list that receives a warning for each value that has been left out
+     * @return the root of the graph
+     * @throws InvalidArchiveException if the stream does not contain a valid archive, or it refers to unknown classes
+     */
+    @SuppressWarnings("unchecked")
+    public <N extends Node> N read(InputStream stream, List<Error> problems) {
+        Input input = new Input(stream);
+        try {
+            if (input.readInt() != MAGIC) {
+                throw new InvalidArchiveException("Not a Node archive");
+            }
+            int version = input.readInt(true);
+            if (version > FORMAT_VERSION) {
+                throw new InvalidArchiveException("Unsupported archive version: " + version);
+            }
+
+            Map<Class<?>, List<SchemaSerializer.Slot>> slots = new HashMap<>();
+            SchemaSerializer serializer = new SchemaSerializer(slots, problems);
+            Kryo kryo = newKryo(serializer);
+
+            int count = input.readInt(true);
+            for (int i = 0; i < count; i++) {
+                int id = input.readInt(true);
+                Class<?> type = forName(kryo, input.readString());
+                int size = input.readInt(true);
+                List<SchemaSerializer.Slot> layout = new ArrayList<>(size);
+                for (int j = 0; j < size; j++) {
+                    String property = input.readString();
+                    String slotType = input.readString();
+                    layout.add(new SchemaSerializer.Slot(property, slotType.isEmpty() ? null : forName(kryo, slotType)));
+                }
+                slots.put(type, layout);
+                kryo.register(type, serializer, id);
+            }
+
+            return (N) kryo.readClassAndObject(input);
+        } catch (KryoException ex) {
+            throw new InvalidArchiveException("Corrupted Node archive", ex);
+        }
+    }
+
+    static Class<?> forName(Kryo kryo, String name) {
+        if (primitives.containsKey(name)) {
+            return primitives.get(name);
+        }
+        try {
+            return Class.forName(name, false, kryo.getClassLoader());
+        } catch (ClassNotFoundException ex) {
+            throw new InvalidArchiveException("Unknown class in archive: " + name, ex);
+        }
+    }
+
+    private static Kryo newKryo(SchemaSerializer serializer) {
+        Kryo kryo = Node.newKryo();
+        kryo.addDefaultSerializer(Node.class, serializer);
+        kryo.addDefaultSerializer(ListNode.class, serializer);
+        // Classes used by the fields of every Node: they get the same IDs both when writing and reading, as long as
+        // the format version does not change
+        kryo.register(ArrayList.class);
+        kryo.register(HashMap.class);
+        kryo.register(HashSet.class);
+        return kryo;
+    }
+
+}
@@ -20,12 +20,20 @@
 package com.objectgraph.core;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
 public abstract class NodeHelper<N extends Node> {
 
     private WeakReference<N> node;
 
+    // Only for helpers registered on a class: the Nodes they are applied to, innermost first, on each thread
+    private transient ThreadLocal<Deque<N>> bound;
+
     void setNode(N node) {
+        if (bound != null)
+            throw new NodeHelperUsedByOtherException(this, node);
+
         if (node == null)
             this.node = null;
 
@@ -34,13 +42,43 @@ public abstract class NodeHelper<N extends Node> {
         this.node = new WeakReference<>(node);
     }
 
+    /**
+     * Makes this helper shared by all the instances of a class: it is applied to one of them at a time with
+     * {@link #bind(Node)}.
+     */
+    void share() {
+        if (node != null || bound != null)
+            throw new NodeHelperUsedByOtherException(this, null);
+        bound = new ThreadLocal<Deque<N>>() {
+            @Override
+            protected Deque<N> initialValue() {
+                return new ArrayDeque<>();
+            }
+        };
+    }
+
+    boolean isShared() {
+        return bound != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    void bind(Node node) {
+        bound.get().push((N) node);
+    }
+
+    void unbind() {
+        bound.get().pop();
+    }
+
     protected N getNode() {
+        if (bound != null)
+            return bound.get().peek();
         return node.get();
     }
 
     @SuppressWarnings("unchecked")
     protected <NN extends Node> NN getNode(Class<NN> type) {
-        return (NN) node.get();
+        return (NN) getNode();
     }
 
 }
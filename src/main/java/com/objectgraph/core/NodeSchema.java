@@ -0,0 +1,107 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import com.objectgraph.pluginsystem.PluginManager;
+import com.objectgraph.utils.ClassUtils;
+
+import java.util.*;
+
+/**
+ * Assigns compact class IDs and property slot layouts to {@link Node} classes.
+ * <p/>
+ * A NodeSchema is used by {@link NodeArchive} to write Nodes in a dense format: every known class is written as a
+ * small integer instead of its fully qualified name, and every {@link ObjectNode} property is written in a fixed slot,
+ * without its name. IDs are assigned by sorting the classes by name, so two schemas built from the same set of classes
+ * always agree. The layouts used to write an archive are stored in its header, so archives written with an older
+ * schema can still be read.
+ */
+public final class NodeSchema {
+
+    private final List<Class<? extends Node>> types = new ArrayList<>();
+
+    private final Map<Class<?>, List<String>> layouts = new HashMap<>();
+
+    /**
+     * Creates a schema for the given Node classes.
+     * <p/>
+     * Abstract classes are ignored, as they are never written; {@link ListNode} is always included.
+     *
+     * @param types the Node classes that should get a compact ID
+     */
+    public NodeSchema(Collection<? extends Class<? extends Node>> types) {
+        Set<Class<? extends Node>> concrete = new HashSet<>();
+        concrete.add(ListNode.class);
+        for (Class<? extends Node> type : types) {
+            if (ClassUtils.isConcrete(type)) {
+                concrete.add(type);
+            }
+        }
+        this.types.addAll(concrete);
+        Collections.sort(this.types, new Comparator<Class<?>>() {
+            @Override
+            public int compare(Class<?> c1, Class<?> c2) {
+                return c1.getName().compareTo(c2.getName());
+            }
+        });
+        for (Class<? extends Node> type : this.types) {
+            layouts.put(type, layoutOf(type));
+        }
+    }
+
+    /**
+     * Creates a schema with every Node class found by the {@link PluginManager} package scanning.
+     *
+     * @return a new NodeSchema
+     */
+    public static NodeSchema fromPlugins() {
+        return new NodeSchema(PluginManager.getSubTypes(Node.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<String> layoutOf(Class<?> type) {
+        if (ObjectNode.class.isAssignableFrom(type)) {
+            return ObjectNode.getProperties((Class<? extends ObjectNode>) type);
+        } else {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * The classes known by this schema, in ID order.
+     *
+     * @return an unmodifiable list of classes; the ID of each class is its index in the list
+     */
+    public List<Class<? extends Node>> getTypes() {
+        return Collections.unmodifiableList(types);
+    }
+
+    /**
+     * The property slots of the given class.
+     *
+     * @param type a class known by this schema
+     * @return the property names in slot order, an empty list for Nodes without fixed properties, or {@code null}
+     * if the class is not known by this schema
+     */
+    public List<String> getLayout(Class<?> type) {
+        return layouts.get(type);
+    }
+
+}
@@ -25,41 +25,55 @@ import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import com.esotericsoftware.kryo.serializers.FieldSerializer;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
 public class NodeSerializer extends Serializer<Node> {
 
+    // Key of the Nodes whose stale properties have been refreshed, in the graph context of the Kryo instance
+    private static final Object REFRESHED = new Object();
+
     @Override
     public void write(Kryo kryo, Output output, Node node) {
+        refreshStaleProperties(kryo, node);
         Serializer<Node> serializer = new FieldSerializer<>(kryo, node.getClass());
         serializer.write(kryo, output, node);
     }
 
     @Override
     public Node read(Kryo kryo, Input input, Class<Node> nodeClass) {
-        // TODO check if it is needed the same trick as in copy()
         Serializer<Node> serializer = new FieldSerializer<>(kryo, nodeClass);
         Node ret = serializer.read(kryo, input, nodeClass);
-        ParentRegistry.registerTree(ret);
+        // Children have already been read (and their own children registered), so registering the direct
+        // links is enough to cover the whole graph without walking it again
+        ParentRegistry.registerChildren(ret);
         return ret;
     }
 
     @Override
     public Node copy(Kryo kryo, Node original) {
-        try {
-            Object root = kryo.getContext().get("root");
-            if (root == null) {
-                // original is the root
-                kryo.getContext().put("root", original);
-                root = original;
-            }
-            Serializer<Node> serializer = new FieldSerializer<>(kryo, original.getClass());
-            Node ret = serializer.copy(kryo, original);
-            if (root == original) {
-                // Register tree only from the root (should save some work)
-                ParentRegistry.registerTree(ret);
-            }
-            return ret;
-        } finally {
-            kryo.getContext().remove("root");
+        refreshStaleProperties(kryo, original);
+        Serializer<Node> serializer = new FieldSerializer<>(kryo, original.getClass());
+        Node ret = serializer.copy(kryo, original);
+        // Same as in read(): nested Nodes have already been copied and registered
+        ParentRegistry.registerChildren(ret);
+        return ret;
+    }
+
+    /**
+     * Stale marks are not serialized, so stale properties are computed before the first Node of a graph is written or
+     * copied; the whole subgraph is refreshed at once, because refreshing a Node can change its ancestors.
+     */
+    @SuppressWarnings("unchecked")
+    private static void refreshStaleProperties(Kryo kryo, Node node) {
+        Set<Node> refreshed = (Set<Node>) kryo.getGraphContext().get(REFRESHED);
+        if (refreshed == null) {
+            refreshed = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+            kryo.getGraphContext().put(REFRESHED, refreshed);
+        }
+        if (!refreshed.contains(node)) {
+            Node.refreshStaleProperties(node, refreshed);
         }
     }
 }
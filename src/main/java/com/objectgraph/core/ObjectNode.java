@@ -26,7 +26,9 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A Node whose properties are its fields with the {@link Property} annotation.
@@ -72,6 +74,23 @@ import java.util.*;
  * will not be checked when registered, but only if a triggering {@link Event} reaches the Node <i>after</i> the Trigger
  * has been registered.
  * <p/>
+ * Properties that are computed from other properties can be declared on their handler method, with the
+ * {@link DerivedFrom} annotation:
+ * <pre>
+ *     public class MyNode extends ObjectNode {
+ *         {@literal @}Property int a;
+ *         {@literal @}Property MyChild b;
+ *         {@literal @}Property String x;
+ *
+ *         {@literal @}DerivedFrom(property = "x", value = {"a", "b.description"})
+ *         protected String computeX(int a, String description) {
+ *             return description + ": " + a;
+ *         }
+ *     }
+ * </pre>
+ * Annotated handlers are compiled once per class, and the instances do not need a Trigger for each of them. Paths
+ * and handlers are checked when the class is first used.
+ * <p/>
  * You can also define {@link ErrorCheck}s and {@link com.objectgraph.core.errorchecks.Constraint}s. These are particularly useful when coupled with a GUI
  * or if you have a complex batch execution or a separate configuration file.
  * <p/>
@@ -113,15 +132,40 @@ public abstract class ObjectNode extends Node {
     @Retention(RetentionPolicy.RUNTIME)
     protected @interface Property {}
 
+    /**
+     * The annotation to use on a method that computes a property from the values of the given paths.
+     * <p/>
+     * The method takes a parameter for each path, in order, and returns the new value of the property. It is called
+     * each time one of the paths changes, as with a {@link com.objectgraph.core.triggers.Dependency}.
+     */
+    @Target(ElementType.METHOD)
+    @Retention(RetentionPolicy.RUNTIME)
+    protected @interface DerivedFrom {
+        /**
+         * @return the paths of the parameters, relative to this Node
+         */
+        String[] value();
+
+        /**
+         * @return the name of the computed property
+         */
+        String property();
+    }
+
     private static class PropertyAccess {
 
-        private static final Map<Class<? extends ObjectNode>, PropertyAccess> instances = new HashMap<>();
+        // Read concurrently, for example by ParallelValidator
+        private static final Map<Class<? extends ObjectNode>, PropertyAccess> instances = new ConcurrentHashMap<>();
 
         private final List<String> properties = new ArrayList<>();
         private final Map<String, Class<?>> propertyTypes = new HashMap<>();
+        private final List<DerivedProperty> derivedProperties;
 
         private PropertyAccess(Class<? extends ObjectNode> type) {
             recursivelyFindProperties(type);
+            Map<String, DerivedProperty> derived = new LinkedHashMap<>();
+            recursivelyFindDerivedProperties(type, type, derived);
+            derivedProperties = new ArrayList<>(derived.values());
         }
 
         private void recursivelyFindProperties(Class<?> type) {
@@ -140,6 +184,21 @@ public abstract class ObjectNode extends Node {
             }
         }
 
+        private void recursivelyFindDerivedProperties(Class<?> type, Class<?> declaringType,
+                                                      Map<String, DerivedProperty> derived) {
+            if (declaringType.equals(ObjectNode.class))
+                return;
+            recursivelyFindDerivedProperties(type, declaringType.getSuperclass(), derived);
+            for (Method method : declaringType.getDeclaredMethods()) {
+                DerivedFrom annotation = method.getAnnotation(DerivedFrom.class);
+                if (annotation != null) {
+                    // An annotated override replaces the handler it overrides, as both would call the override
+                    String signature = method.getName() + Arrays.toString(method.getParameterTypes());
+                    derived.put(signature, new DerivedProperty(type, properties, method, annotation));
+                }
+            }
+        }
+
         public List<String> getProperties() {
             return Collections.unmodifiableList(properties);
         }
@@ -148,6 +207,10 @@ public abstract class ObjectNode extends Node {
             return propertyTypes.get(property);
         }
 
+        public List<DerivedProperty> getDerivedProperties() {
+            return Collections.unmodifiableList(derivedProperties);
+        }
+
         public static PropertyAccess get(Class<? extends ObjectNode> type) {
             if (!instances.containsKey(type)) {
                 instances.put(type, new PropertyAccess(type));
@@ -179,4 +242,17 @@ public abstract class ObjectNode extends Node {
         return PropertyAccess.get(getClass()).getDeclaredPropertyType(property);
     }
 
+    @Override
+    List<DerivedProperty> getDerivedProperties() {
+        return PropertyAccess.get(getClass()).getDerivedProperties();
+    }
+
+    static List<String> getProperties(Class<? extends ObjectNode> type) {
+        return PropertyAccess.get(type).getProperties();
+    }
+
+    static Class<?> getDeclaredPropertyType(Class<? extends ObjectNode> type, String property) {
+        return PropertyAccess.get(type).getDeclaredPropertyType(property);
+    }
+
 }
@@ -0,0 +1,456 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.FieldSerializer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Writes and reads Node graphs by splitting them in chunks that are encoded and decoded in parallel.
+ * <p/>
+ * The graph is cut at the root, at every Node whose distance from the root is equal to the split depth, and at every
+ * Node that is reachable from more than one chunk. Each cut Node starts a chunk, which contains every Node reachable
+ * from it without going through other cut Nodes. Chunks are serialized independently on a {@link ForkJoinPool}, each
+ * one with its own Kryo instance: references to the cut Nodes of other chunks are written as indices, and are resolved
+ * to the same instances when the graph is read, so shared references and cycles are preserved.
+ * <p/>
+ * The graph is split following Node properties: Nodes only referenced by fields that are not properties are written
+ * inline, and get duplicated if they are referenced from more than one chunk.
+ * <p/>
+ * The elements of a {@link ListNode} are at the same depth as the list, so that a list of children is split in one
+ * chunk per element. Parallelism pays off on wide graphs, for example a root with thousands of independent children;
+ * for deep, narrow graphs use {@link Node#getKryo()} or {@link NodeArchive}.
+ */
+public class ParallelNodeArchive {
+
+    private static final int MAGIC = 0x4F475041;
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte INLINE = 0;
+    private static final byte CUT = 1;
+
+    private final int splitDepth;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates an archive that splits the graph at the children of the root, using a ForkJoinPool shared with the other
+     * parallel operations of this package.
+     */
+    public ParallelNodeArchive() {
+        this(1, SharedPool.get());
+    }
+
+    /**
+     * @param splitDepth the distance from the root at which the graph is split in chunks, not counting ListNodes; must
+     *                   be at least 1
+     * @param pool the pool on which chunks are serialized
+     */
+    public ParallelNodeArchive(int splitDepth, ForkJoinPool pool) {
+        if (splitDepth < 1) {
+            throw new IllegalArgumentException("Split depth must be at least 1: " + splitDepth);
+        }
+        this.splitDepth = splitDepth;
+        this.pool = pool;
+    }
+
+    /**
+     * Writes a Node graph to the given stream.
+     * <p/>
+     * The stream is flushed but not closed.
+     *
+     * @param root the root of the graph
+     * @param stream the stream to write to
+     */
+    public void write(Node root, OutputStream stream) {
+        // Stale marks are not archived, and refreshing them from the chunk tasks could change other chunks
+        Node.refreshStaleProperties(root, Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>()));
+
+        final List<Node> cuts = findCuts(root);
+        final Map<Node, Integer> ids = new IdentityHashMap<>();
+        for (int i = 0; i < cuts.size(); i++) {
+            ids.put(cuts.get(i), i);
+        }
+
+        final byte[][] chunks = new byte[cuts.size()][];
+        runChunks(cuts.size(), new ChunkAction() {
+            @Override
+            public void run(int chunk) {
+                ChunkSerializer serializer = new ChunkSerializer(ids, null);
+                Kryo kryo = newKryo(serializer);
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                Output output = new Output(bytes);
+                serializer.chunkRoot = cuts.get(chunk);
+                kryo.writeObject(output, cuts.get(chunk));
+                output.close();
+                chunks[chunk] = bytes.toByteArray();
+            }
+        });
+
+        Output output = new Output(stream);
+        output.writeInt(MAGIC);
+        output.writeInt(FORMAT_VERSION, true);
+        output.writeInt(cuts.size(), true);
+        for (Node cut : cuts) {
+            output.writeString(cut.getClass().getName());
+        }
+        for (byte[] chunk : chunks) {
+            output.writeInt(chunk.length, true);
+            output.writeBytes(chunk);
+        }
+        output.flush();
+    }
+
+    /**
+     * Reads a Node graph written by {@link #write(Node, java.io.OutputStream)}.
+     * <p/>
+     * Parent paths are registered once every chunk has been read.
+     *
+     * @param stream the stream to read from
+     * @return the root of the graph
+     * @throws InvalidArchiveException if the stream does not contain a valid archive, or it refers to unknown classes
+     */
+    @SuppressWarnings("unchecked")
+    public <N extends Node> N read(InputStream stream) {
+        Input input = new Input(stream);
+        final Node[] cuts;
+        final byte[][] chunks;
+        try {
+            if (input.readInt() != MAGIC) {
+                throw new InvalidArchiveException("Not a parallel Node archive");
+            }
+            int version = input.readInt(true);
+            if (version > FORMAT_VERSION) {
+                throw new InvalidArchiveException("Unsupported archive version: " + version);
+            }
+
+            Kryo kryo = Node.newKryo();
+            cuts = new Node[input.readInt(true)];
+            for (int i = 0; i < cuts.length; i++) {
+                Class<?> type = NodeArchive.forName(kryo, input.readString());
+                if (!Node.class.isAssignableFrom(type)) {
+                    throw new InvalidArchiveException("Not a Node class: " + type.getName());
+                }
+                cuts[i] = (Node) kryo.newInstance(type);
+            }
+            chunks = new byte[cuts.length][];
+            for (int i = 0; i < chunks.length; i++) {
+                chunks[i] = input.readBytes(input.readInt(true));
+            }
+        } catch (KryoException ex) {
+            throw new InvalidArchiveException("Corrupted Node archive", ex);
+        }
+
+        final List<List<Node>> completed = new ArrayList<>(Collections.<List<Node>>nCopies(cuts.length, null));
+        runChunks(cuts.length, new ChunkAction() {
+            @Override
+            public void run(int chunk) {
+                ChunkSerializer serializer = new ChunkSerializer(null, cuts);
+                Kryo kryo = newKryo(serializer);
+                serializer.chunkRoot = cuts[chunk];
+                try {
+                    kryo.readObject(new Input(chunks[chunk]), cuts[chunk].getClass());
+                } catch (KryoException ex) {
+                    throw new InvalidArchiveException("Corrupted Node archive", ex);
+                }
+                completed.set(chunk, serializer.completed);
+            }
+        });
+
+        // ParentRegistry locks on every call, so links are registered here rather than making the chunk tasks contend.
+        // Each Node has been completed exactly once, in a single chunk, so registering its direct children covers the
+        // whole graph.
+        for (List<Node> nodes : completed) {
+            for (Node node : nodes) {
+                ParentRegistry.registerChildren(node);
+            }
+        }
+
+        return cuts.length == 0 ? null : (N) cuts[0];
+    }
+
+    /**
+     * Finds the Nodes that start a chunk: the root, the Nodes at the split depth, and the Nodes that can be reached
+     * from more than one of them.
+     * <p/>
+     * Each Node belongs to the chunk of the last cut found on any path that reaches it; it needs a chunk of its own
+     * exactly when no Node other than the root and the Nodes at the split depth is found on every such path, that is
+     * when its immediate dominator is the virtual source linked to them. Dominators are computed in a few linear
+     * passes, with the iterative algorithm of Cooper, Harvey and Kennedy.
+     */
+    List<Node> findCuts(Node root) {
+        // Breadth-first visit, to find the Nodes at the split depth
+        Set<Node> visited = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+        visited.add(root);
+        List<Node> level = Collections.singletonList(root);
+        for (int depth = 1; depth <= splitDepth && !level.isEmpty(); depth++) {
+            List<Node> next = new ArrayList<>();
+            Deque<Node> expanded = new ArrayDeque<>(level);
+            while (!expanded.isEmpty()) {
+                for (Node child : children(expanded.poll())) {
+                    if (!visited.add(child)) {
+                        continue;
+                    }
+                    if (child instanceof ListNode) {
+                        // Lists do not count as a level: their elements are at the depth of the list
+                        expanded.add(child);
+                    } else {
+                        next.add(child);
+                    }
+                }
+            }
+            level = next;
+        }
+        List<Node> initial = new ArrayList<>(level.size() + 1);
+        initial.add(root);
+        initial.addAll(level);
+
+        // Depth-first visit from the virtual source, numbering the Nodes in postorder; the source gets the last number
+        Map<Node, Integer> numbers = new IdentityHashMap<>();
+        List<Node> postorder = new ArrayList<>();
+        Deque<Node> path = new ArrayDeque<>();
+        Deque<Iterator<Node>> iterators = new ArrayDeque<>();
+        Set<Node> seen = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+        for (Node start : initial) {
+            if (!seen.add(start)) {
+                continue;
+            }
+            path.push(start);
+            iterators.push(children(start).iterator());
+            while (!path.isEmpty()) {
+                Iterator<Node> it = iterators.peek();
+                if (it.hasNext()) {
+                    Node child = it.next();
+                    if (seen.add(child)) {
+                        path.push(child);
+                        iterators.push(children(child).iterator());
+                    }
+                } else {
+                    Node done = path.pop();
+                    iterators.pop();
+                    numbers.put(done, postorder.size());
+                    postorder.add(done);
+                }
+            }
+        }
+        int source = postorder.size();
+
+        List<List<Integer>> predecessors = new ArrayList<>(source);
+        for (int i = 0; i < source; i++) {
+            predecessors.add(new ArrayList<Integer>(1));
+        }
+        for (Node node : postorder) {
+            for (Node child : children(node)) {
+                predecessors.get(numbers.get(child)).add(numbers.get(node));
+            }
+        }
+        for (Node node : initial) {
+            predecessors.get(numbers.get(node)).add(source);
+        }
+
+        int[] dominators = new int[source + 1];
+        Arrays.fill(dominators, -1);
+        dominators[source] = source;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            // Reverse postorder, so that most predecessors are processed before the Nodes they lead to
+            for (int node = source - 1; node >= 0; node--) {
+                int dominator = -1;
+                for (int predecessor : predecessors.get(node)) {
+                    if (dominators[predecessor] != -1) {
+                        dominator = dominator == -1 ? predecessor : intersect(dominators, predecessor, dominator);
+                    }
+                }
+                if (dominators[node] != dominator) {
+                    dominators[node] = dominator;
+                    changed = true;
+                }
+            }
+        }
+
+        List<Node> ret = new ArrayList<>();
+        ret.add(root);
+        for (int node = source - 1; node >= 0; node--) {
+            if (dominators[node] == source && postorder.get(node) != root) {
+                ret.add(postorder.get(node));
+            }
+        }
+        return ret;
+    }
+
+    private static int intersect(int[] dominators, int a, int b) {
+        while (a != b) {
+            while (a < b) {
+                a = dominators[a];
+            }
+            while (b < a) {
+                b = dominators[b];
+            }
+        }
+        return a;
+    }
+
+    private static List<Node> children(Node node) {
+        List<Node> ret = new ArrayList<>();
+        for (String property : node.getProperties()) {
+            Object value = node.getLocal(property);
+            if (value instanceof Node) {
+                ret.add((Node) value);
+            }
+        }
+        return ret;
+    }
+
+    private interface ChunkAction {
+        void run(int chunk);
+    }
+
+    private void runChunks(int count, ChunkAction action) {
+        List<ChunkTask> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tasks.add(new ChunkTask(action, i));
+        }
+        pool.invoke(new AllChunksTask(tasks));
+    }
+
+    private static class ChunkTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient ChunkAction action;
+        private final int chunk;
+
+        ChunkTask(ChunkAction action, int chunk) {
+            this.action = action;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected void compute() {
+            action.run(chunk);
+        }
+
+    }
+
+    private static class AllChunksTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<ChunkTask> tasks;
+
+        AllChunksTask(List<ChunkTask> tasks) {
+            this.tasks = tasks;
+        }
+
+        @Override
+        protected void compute() {
+            invokeAll(tasks);
+        }
+
+    }
+
+    private static Kryo newKryo(ChunkSerializer serializer) {
+        Kryo kryo = Node.newKryo();
+        kryo.addDefaultSerializer(Node.class, serializer);
+        kryo.addDefaultSerializer(ListNode.class, serializer);
+        return kryo;
+    }
+
+    /**
+     * Serializes the Nodes of a single chunk: the chunk root and the Nodes it owns are written field by field, while
+     * the other cut Nodes are written as their index.
+     */
+    private static class ChunkSerializer extends Serializer<Node> {
+
+        private final Map<Node, Integer> ids;
+        private final Node[] cuts;
+        private final Map<Class<?>, FieldSerializer<Node>> serializers = new HashMap<>();
+        private final List<Node> completed = new ArrayList<>();
+
+        private Node chunkRoot;
+
+        ChunkSerializer(Map<Node, Integer> ids, Node[] cuts) {
+            this.ids = ids;
+            this.cuts = cuts;
+        }
+
+        @SuppressWarnings("unchecked")
+        private FieldSerializer<Node> getFieldSerializer(Kryo kryo, Class<?> type) {
+            FieldSerializer<Node> ret = serializers.get(type);
+            if (ret == null) {
+                ret = new FieldSerializer<Node>(kryo, type) {
+                    @Override
+                    protected Node create(Kryo kryo, Input input, Class<Node> type) {
+                        // The chunk root has been instantiated before reading, so that other chunks can refer to it
+                        if (chunkRoot != null) {
+                            Node ret = chunkRoot;
+                            chunkRoot = null;
+                            return ret;
+                        }
+                        return super.create(kryo, input, type);
+                    }
+                };
+                serializers.put(type, ret);
+            }
+            return ret;
+        }
+
+        @Override
+        public void write(Kryo kryo, Output output, Node node) {
+            Integer id = ids.get(node);
+            if (id != null && node != chunkRoot) {
+                output.writeByte(CUT);
+                output.writeInt(id, true);
+            } else {
+                output.writeByte(INLINE);
+                getFieldSerializer(kryo, node.getClass()).write(kryo, output, node);
+            }
+        }
+
+        @Override
+        public Node read(Kryo kryo, Input input, Class<Node> type) {
+            if (input.readByte() == CUT) {
+                int id = input.readInt(true);
+                if (id < 0 || id >= cuts.length) {
+                    throw new InvalidArchiveException("Invalid chunk reference: " + id);
+                }
+                return cuts[id];
+            }
+            Node ret = getFieldSerializer(kryo, type).read(kryo, input, type);
+            completed.add(ret);
+            return ret;
+        }
+
+    }
+
+}
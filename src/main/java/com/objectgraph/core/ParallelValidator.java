@@ -0,0 +1,235 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import com.objectgraph.utils.PathUtils;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Evaluates the {@link ErrorCheck}s of a whole graph in parallel, on a {@link ForkJoinPool}.
+ * <p/>
+ * {@link #validate(Node)} returns the same map as {@link Node#getErrors()}: each Node is visited once. A task visits
+ * the Nodes it reaches itself, depth first, and hands part of them to a new task whenever it has more than
+ * {@link #CHUNK_SIZE} Nodes waiting, so that small Nodes are not validated one task each. A Node reachable through
+ * more than one path is reported under the path through which it was reached first, which can be a different one
+ * than {@link Node#getErrors()} would choose.
+ * <p/>
+ * Stale lazy properties are refreshed on the calling thread before the validation starts, so that the tasks only read
+ * the graph.
+ * <p/>
+ * The validation can stop early, once a given number of errors or an error of a given level has been found: in that
+ * case the returned map contains at least the errors that caused the stop, but not necessarily every other error.
+ * <p/>
+ * The graph should not be changed while it is validated.
+ */
+public class ParallelValidator {
+
+    /**
+     * How many of its waiting Nodes a task hands to a new task at a time.
+     */
+    static final int CHUNK_SIZE = 64;
+
+    private final ForkJoinPool pool;
+
+    private int maxErrors = Integer.MAX_VALUE;
+
+    private Error.Level stopLevel;
+
+    /**
+     * Creates a validator that uses a ForkJoinPool shared with the other parallel operations of this package.
+     */
+    public ParallelValidator() {
+        this(SharedPool.get());
+    }
+
+    /**
+     * @param pool the pool on which Nodes are validated
+     */
+    public ParallelValidator(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public int getMaxErrors() {
+        return maxErrors;
+    }
+
+    /**
+     * Stops the validation once the given number of errors has been found; by default every error is collected.
+     *
+     * @param maxErrors the number of errors, at least 1
+     */
+    public void setMaxErrors(int maxErrors) {
+        if (maxErrors < 1) {
+            throw new IllegalArgumentException("The maximum number of errors must be at least 1: " + maxErrors);
+        }
+        this.maxErrors = maxErrors;
+    }
+
+    public Error.Level getStopLevel() {
+        return stopLevel;
+    }
+
+    /**
+     * Stops the validation once an error of the given level, or a more severe one, has been found.
+     *
+     * @param stopLevel the level, or {@code null} to never stop because of the level (the default)
+     */
+    public void setStopLevel(Error.Level stopLevel) {
+        this.stopLevel = stopLevel;
+    }
+
+    /**
+     * Finds the errors of the graph.
+     *
+     * @param root the root of the graph
+     * @return a map with the paths, relative to the root, as keys and the errors as values
+     */
+    public Map<String, Set<Error>> validate(Node root) {
+        Node.refreshStaleProperties(root, Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>()));
+        Validation validation = new Validation();
+        validation.visited.add(new Identity(root));
+        Deque<Pending> start = new ArrayDeque<>();
+        start.push(new Pending(root, ""));
+        pool.invoke(validation.new ChunkTask(start));
+        return new LinkedHashMap<>(validation.errors);
+    }
+
+    /**
+     * The state of one call to {@link #validate(Node)}.
+     */
+    private class Validation {
+
+        private final Set<Identity> visited = Collections.newSetFromMap(new ConcurrentHashMap<Identity, Boolean>());
+        private final ConcurrentHashMap<String, Set<Error>> errors = new ConcurrentHashMap<>();
+        private final AtomicInteger count = new AtomicInteger();
+        private volatile boolean stopped;
+
+        private void add(Map<String, Set<Error>> found) {
+            for (Map.Entry<String, Set<Error>> entry : found.entrySet()) {
+                Set<Error> set = errors.get(entry.getKey());
+                if (set == null) {
+                    set = Collections.newSetFromMap(new ConcurrentHashMap<Error, Boolean>());
+                    Set<Error> existing = errors.putIfAbsent(entry.getKey(), set);
+                    if (existing != null) {
+                        set = existing;
+                    }
+                }
+                set.addAll(entry.getValue());
+                for (Error error : entry.getValue()) {
+                    if (count.incrementAndGet() >= maxErrors
+                            || (stopLevel != null && error.getLevel().ordinal() >= stopLevel.ordinal())) {
+                        stopped = true;
+                    }
+                }
+            }
+        }
+
+        private class ChunkTask extends RecursiveAction {
+
+            private static final long serialVersionUID = 1L;
+
+            private final transient Deque<Pending> pending;
+
+            ChunkTask(Deque<Pending> pending) {
+                this.pending = pending;
+            }
+
+            @Override
+            protected void compute() {
+                List<ChunkTask> forked = new ArrayList<>();
+                Map<String, Set<Error>> found = new LinkedHashMap<>();
+                while (!pending.isEmpty() && !stopped) {
+                    Pending current = pending.pop();
+                    current.node.getLocalErrors(found, current.path);
+                    if (!found.isEmpty()) {
+                        add(found);
+                        found.clear();
+                    }
+
+                    for (String property : current.node.getProperties()) {
+                        Object content = current.node.getLocal(property);
+                        if (content instanceof Node && visited.add(new Identity((Node) content))) {
+                            pending.push(new Pending((Node) content, PathUtils.appendPath(current.path, property)));
+                        }
+                    }
+                    while (pending.size() > 2 * CHUNK_SIZE) {
+                        // The oldest Nodes are the closest to the root, so they are likely to lead to more Nodes
+                        Deque<Pending> chunk = new ArrayDeque<>(CHUNK_SIZE);
+                        for (int i = 0; i < CHUNK_SIZE; i++) {
+                            chunk.push(pending.removeLast());
+                        }
+                        ChunkTask task = new ChunkTask(chunk);
+                        task.fork();
+                        forked.add(task);
+                    }
+                }
+                for (ChunkTask task : forked) {
+                    task.join();
+                }
+            }
+
+        }
+
+    }
+
+    /**
+     * A Node waiting to be validated, with its path.
+     */
+    private static final class Pending {
+
+        private final Node node;
+        private final String path;
+
+        Pending(Node node, String path) {
+            this.node = node;
+            this.path = path;
+        }
+
+    }
+
+    /**
+     * Compares Nodes by identity, whatever their equals method does.
+     */
+    private static final class Identity {
+
+        private final Node node;
+
+        Identity(Node node) {
+            this.node = node;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Identity && ((Identity) other).node == node;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(node);
+        }
+
+    }
+
+}
@@ -21,6 +21,10 @@ package com.objectgraph.core;
 
 import java.util.*;
 
+/**
+ * The parents of every Node. Its methods can be called from any thread; the registry is locked for the duration of
+ * each call.
+ */
 final class ParentRegistry {
 
     private ParentRegistry() {
@@ -28,17 +32,38 @@ final class ParentRegistry {
 
     private final static Map<Node, Map<EventRecipient, Set<String>>> registry = new WeakHashMap<>();
 
-    static void registerTree(Node root) {
-        for (String property : root.getProperties()) {
-            Object value = root.get(property);
-            if (value instanceof Node && !registered(root, property, (Node) value)) {
-                register(root, property, (Node) value);
-                registerTree((Node) value);
+    /**
+     * Registers the links from the given parent to its direct children in bulk, without checking for duplicates.
+     * <p/>
+     * Used during deserialization and copy, where every Node is completed exactly once and its children are already
+     * complete: registering only the direct children of each Node covers every link of the graph in a single pass,
+     * while the graph is built.
+     */
+    static synchronized void registerChildren(Node parent) {
+        for (String property : parent.getProperties()) {
+            Object value = parent.getLocal(property);
+            if (value instanceof Node) {
+                registerFresh(parent, property, (Node) value);
+                Node.linked(parent, (Node) value);
             }
         }
     }
 
-    static boolean registered(EventRecipient parent, String property, Node child) {
+    private static void registerFresh(EventRecipient parent, String property, Node child) {
+        Map<EventRecipient, Set<String>> parents = registry.get(child);
+        if (parents == null) {
+            parents = new WeakHashMap<>();
+            registry.put(child, parents);
+        }
+        Set<String> properties = parents.get(parent);
+        if (properties == null) {
+            properties = new HashSet<>();
+            parents.put(parent, properties);
+        }
+        properties.add(property);
+    }
+
+    static synchronized boolean registered(EventRecipient parent, String property, Node child) {
         if (!registry.containsKey(child)) {
             return false;
         }
@@ -48,7 +73,11 @@ final class ParentRegistry {
         return registry.get(child).get(parent).contains(property);
     }
 
-    static void register(EventRecipient parent, String property, Node child) {
+    static synchronized void register(EventRecipient parent, String property, Node child) {
+        // Only links between Nodes matter to the lookups cached by Nodes
+        if (parent instanceof Node) {
+            Node.linked((Node) parent, child);
+        }
         if (!registry.containsKey(child)) {
             registry.put(child, new WeakHashMap<EventRecipient, Set<String>>());
         }
@@ -58,7 +87,10 @@ final class ParentRegistry {
         registry.get(child).get(parent).add(property);
     }
 
-    static void unregister(EventRecipient parent, String property, Node child) {
+    static synchronized void unregister(EventRecipient parent, String property, Node child) {
+        if (parent instanceof Node) {
+            child.structureChanged();
+        }
         if (!registry.containsKey(child)) {
             return;
         }
@@ -72,9 +104,23 @@ final class ParentRegistry {
         if (registry.get(child).isEmpty()) {
             registry.remove(child);
         }
+        if (parent instanceof Node && !hasNodeParents(child)) {
+            Node.unlinked(child);
+        }
+    }
+
+    private static boolean hasNodeParents(Node child) {
+        if (registry.containsKey(child)) {
+            for (EventRecipient parent : registry.get(child).keySet()) {
+                if (parent instanceof Node) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
-    static Map<EventRecipient, Set<String>> getParentPaths(Node child) {
+    static synchronized Map<EventRecipient, Set<String>> getParentPaths(Node child) {
         if (!registry.containsKey(child)) {
             return Collections.emptyMap();
         }
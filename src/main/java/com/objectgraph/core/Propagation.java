@@ -0,0 +1,323 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import com.objectgraph.utils.PathUtils;
+
+import java.util.*;
+
+/**
+ * Schedules deferred {@link Trigger}s (see {@link Trigger#isDeferred()}) for the Events fired on the current thread.
+ * <p/>
+ * The outermost {@link Node#fireEvent(Event)} of a thread starts a propagation: while the Event is dispatched, deferred
+ * Triggers are only collected. Once the dispatch is over, the collected Triggers, together with every deferred Trigger
+ * that one of them could activate, are sorted so that a Trigger runs after all the Triggers that control one of its
+ * source paths. Then each of them runs once, if it has been activated by the time its turn comes. Events fired by the
+ * Triggers themselves are dispatched in the same propagation, so in a diamond-shaped chain of Dependencies the last
+ * one is evaluated once, with consistent parameters.
+ * <p/>
+ * Paths are resolved to (Node, property) cells at the time of scheduling, so Triggers on different Nodes of the graph
+ * are ordered correctly. A cycle between deferred Triggers throws a {@link DependencyCycleException}.
+ */
+final class Propagation {
+
+    /**
+     * How many times a deferred Trigger can run in a single propagation; a Trigger activated again after it has run
+     * can only be due to a feedback loop through Triggers that are not deferred.
+     */
+    static final int MAX_RUNS = 100;
+
+    private static final ThreadLocal<Propagation> current = new ThreadLocal<>();
+
+    private final Map<Trigger<?>, Event> pending = new LinkedHashMap<>();
+
+    private final Map<Trigger<?>, Integer> runs = new HashMap<>();
+
+    private Propagation() {
+    }
+
+    /**
+     * Starts a propagation on the current thread.
+     *
+     * @return the new propagation, or {@code null} if one is already in progress
+     */
+    static Propagation begin() {
+        if (current.get() != null) {
+            return null;
+        }
+        Propagation ret = new Propagation();
+        current.set(ret);
+        return ret;
+    }
+
+    void end() {
+        current.remove();
+    }
+
+    /**
+     * Checks if a propagation is in progress on the current thread, so that deferred Triggers would be collected.
+     */
+    static boolean isActive() {
+        return current.get() != null;
+    }
+
+    /**
+     * Collects a deferred Trigger in the propagation of the current thread.
+     *
+     * @return {@code false} if there is no propagation in progress, so the Trigger has to run immediately
+     */
+    static boolean defer(Trigger<?> trigger, Event event) {
+        Propagation propagation = current.get();
+        if (propagation == null) {
+            return false;
+        }
+        propagation.pending.put(trigger, event);
+        return true;
+    }
+
+    void drain() {
+        while (!pending.isEmpty()) {
+            for (Trigger<?> trigger : schedule()) {
+                Event event = pending.remove(trigger);
+                if (event == null || trigger.getNode() == null) {
+                    continue;
+                }
+                Integer count = runs.get(trigger);
+                count = count == null ? 1 : count + 1;
+                if (count > MAX_RUNS) {
+                    pending.clear();
+                    throw new DependencyCycleException(Collections.<Trigger<?>>singletonList(trigger));
+                }
+                runs.put(trigger, count);
+                trigger.run(event);
+            }
+        }
+    }
+
+    /**
+     * Sorts the pending Triggers, and the deferred Triggers they could activate, in topological order.
+     */
+    private List<Trigger<?>> schedule() {
+        Map<Trigger<?>, Resolved> resolved = new LinkedHashMap<>();
+        Map<Trigger<?>, Set<Trigger<?>>> edges = new HashMap<>();
+        Deque<Trigger<?>> work = new ArrayDeque<>(pending.keySet());
+        for (Trigger<?> trigger : work) {
+            resolved.put(trigger, new Resolved(trigger));
+        }
+
+        while (!work.isEmpty()) {
+            Trigger<?> trigger = work.poll();
+            Resolved source = resolved.get(trigger);
+            Set<Trigger<?>> targets = new LinkedHashSet<>();
+            // Events fired by a Trigger only reach the ancestors of the Nodes it controls
+            for (Node ancestor : source.outputAncestors) {
+                for (Trigger<?> candidate : ancestor.getTriggers()) {
+                    // Bindings of class helpers are created on demand, so they are compared by value
+                    if (candidate.equals(trigger) || !candidate.isDeferred()) {
+                        continue;
+                    }
+                    Resolved target = resolved.get(candidate);
+                    if (target == null) {
+                        target = new Resolved(candidate);
+                    }
+                    if (source.affects(target)) {
+                        targets.add(candidate);
+                        if (!resolved.containsKey(candidate)) {
+                            resolved.put(candidate, target);
+                            work.add(candidate);
+                        }
+                    }
+                }
+            }
+            edges.put(trigger, targets);
+        }
+
+        return sort(resolved.keySet(), edges);
+    }
+
+    private static List<Trigger<?>> sort(Set<Trigger<?>> triggers, Map<Trigger<?>, Set<Trigger<?>>> edges) {
+        Map<Trigger<?>, Integer> incoming = new LinkedHashMap<>();
+        for (Trigger<?> trigger : triggers) {
+            incoming.put(trigger, 0);
+        }
+        for (Set<Trigger<?>> targets : edges.values()) {
+            for (Trigger<?> target : targets) {
+                incoming.put(target, incoming.get(target) + 1);
+            }
+        }
+
+        List<Trigger<?>> ret = new ArrayList<>(triggers.size());
+        Deque<Trigger<?>> ready = new ArrayDeque<>();
+        for (Map.Entry<Trigger<?>, Integer> entry : incoming.entrySet()) {
+            if (entry.getValue() == 0) {
+                ready.add(entry.getKey());
+            }
+        }
+        while (!ready.isEmpty()) {
+            Trigger<?> trigger = ready.poll();
+            ret.add(trigger);
+            for (Trigger<?> target : edges.get(trigger)) {
+                int count = incoming.get(target) - 1;
+                incoming.put(target, count);
+                if (count == 0) {
+                    ready.add(target);
+                }
+            }
+        }
+
+        if (ret.size() < triggers.size()) {
+            List<Trigger<?>> cycle = new ArrayList<>();
+            for (Map.Entry<Trigger<?>, Integer> entry : incoming.entrySet()) {
+                if (entry.getValue() > 0) {
+                    cycle.add(entry.getKey());
+                }
+            }
+            throw new DependencyCycleException(cycle);
+        }
+        return ret;
+    }
+
+    /**
+     * A property of a specific Node; the property "*" stands for any property.
+     */
+    private static class Cell {
+
+        private final Node node;
+        private final String property;
+
+        Cell(Node node, String property) {
+            this.node = node;
+            this.property = property;
+        }
+
+        boolean matches(Cell other) {
+            return node == other.node
+                    && (property.equals(other.property) || property.equals("*") || other.property.equals("*"));
+        }
+
+    }
+
+    /**
+     * A path resolved from the Node of a Trigger: the cells it goes through and the Node it points to, if any.
+     */
+    private static class Chain {
+
+        private final List<Cell> cells = new ArrayList<>();
+        private Node value;
+
+        Chain(Node root, String path) {
+            Object current = root;
+            for (String token : PathUtils.split(path)) {
+                if (!(current instanceof Node)) {
+                    return;
+                }
+                Node node = (Node) current;
+                if (token.equals("*")) {
+                    // Any change below the Node with the wildcard can be relevant
+                    cells.add(new Cell(node, token));
+                    value = node;
+                    return;
+                }
+                cells.add(new Cell(node, token));
+                current = node.hasProperty(token) ? node.get(token) : null;
+            }
+            value = current instanceof Node ? (Node) current : null;
+        }
+
+        Cell last() {
+            return cells.isEmpty() ? null : cells.get(cells.size() - 1);
+        }
+
+        boolean contains(Cell cell, boolean includeLast) {
+            int size = includeLast ? cells.size() : cells.size() - 1;
+            for (int i = 0; i < size; i++) {
+                if (cells.get(i).matches(cell)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+    }
+
+    private static class Resolved {
+
+        private final List<Chain> outputs = new ArrayList<>();
+        private final List<Chain> controlled = new ArrayList<>();
+        private final List<Chain> sources = new ArrayList<>();
+        private final Set<Node> outputAncestors = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+
+        Resolved(Trigger<?> trigger) {
+            Node node = trigger.getNode();
+            if (node == null) {
+                return;
+            }
+            for (String path : trigger.getControlledPaths()) {
+                Chain chain = new Chain(node, path);
+                controlled.add(chain);
+                if (chain.last() != null) {
+                    outputs.add(chain);
+                    addAncestors(chain.last().node);
+                }
+            }
+            for (String path : trigger.getSourcePaths()) {
+                sources.add(new Chain(node, path));
+            }
+        }
+
+        private void addAncestors(Node node) {
+            Deque<Node> stack = new ArrayDeque<>();
+            if (outputAncestors.add(node)) {
+                stack.push(node);
+            }
+            while (!stack.isEmpty()) {
+                for (EventRecipient parent : stack.pop().getParentPaths().keySet()) {
+                    if (parent instanceof Node && outputAncestors.add((Node) parent)) {
+                        stack.push((Node) parent);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Checks if setting the properties controlled by this Trigger can activate the given Trigger.
+         */
+        boolean affects(Resolved other) {
+            for (Chain output : outputs) {
+                Cell cell = output.last();
+                for (Chain source : other.sources) {
+                    // The output is on the source path, or below the Node the source path points to
+                    if (source.contains(cell, true) || (source.value != null && outputAncestors.contains(source.value))) {
+                        return true;
+                    }
+                }
+                for (Chain chain : other.controlled) {
+                    // Setting a Node on the controlled path of the other Trigger makes it run again
+                    if (chain.contains(cell, false)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+    }
+
+}
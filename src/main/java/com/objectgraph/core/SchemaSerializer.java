@@ -0,0 +1,153 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.FieldSerializer;
+
+import java.util.*;
+
+/**
+ * Serializer used by {@link NodeArchive}: writes the properties of known classes in slots, without their names.
+ * <p/>
+ * The remaining fields (triggers, error checks and any field that is not a property) are written by a cached
+ * {@link FieldSerializer}, followed by the property values in the order given by the slot layout of the class. A slot
+ * whose type is final (for example a primitive or a String) is written without any class information.
+ */
+class SchemaSerializer extends Serializer<Node> {
+
+    /**
+     * A property slot: its name and the type used to write it, or {@code null} if its class is written along with it.
+     */
+    static class Slot {
+
+        final String property;
+        final Class<?> type;
+
+        Slot(String property, Class<?> type) {
+            this.property = property;
+            this.type = type;
+        }
+
+    }
+
+    private final Map<Class<?>, List<Slot>> slots;
+
+    private final Map<Class<?>, FieldSerializer<Node>> serializers = new HashMap<>();
+
+    private final Set<Class<?>> writtenTypes = new HashSet<>();
+
+    private final List<Error> problems;
+
+    /**
+     * @param slots the slot layout of each class: the current layouts when writing, the ones found in the archive
+     *              header when reading
+     * @param problems where slots that cannot be read back are reported, or {@code null}
+     */
+    SchemaSerializer(Map<Class<?>, List<Slot>> slots, List<Error> problems) {
+        this.slots = slots;
+        this.problems = problems;
+    }
+
+    Set<Class<?>> getWrittenTypes() {
+        return writtenTypes;
+    }
+
+    @SuppressWarnings("unchecked")
+    private FieldSerializer<Node> getFieldSerializer(Kryo kryo, Class<?> type) {
+        FieldSerializer<Node> ret = serializers.get(type);
+        if (ret == null) {
+            ret = new FieldSerializer<>(kryo, type);
+            if (slots.containsKey(type)) {
+                for (String property : NodeSchema.layoutOf(type)) {
+                    ret.removeField(property);
+                }
+            }
+            serializers.put(type, ret);
+        }
+        return ret;
+    }
+
+    @Override
+    public void write(Kryo kryo, Output output, Node node) {
+        writtenTypes.add(node.getClass());
+        getFieldSerializer(kryo, node.getClass()).write(kryo, output, node);
+        List<Slot> layout = slots.get(node.getClass());
+        if (layout != null) {
+            for (Slot slot : layout) {
+                Object value = node.getLocal(slot.property);
+                if (slot.type == null) {
+                    kryo.writeClassAndObject(output, value);
+                } else if (slot.type.isPrimitive()) {
+                    kryo.writeObject(output, value, kryo.getSerializer(slot.type));
+                } else {
+                    kryo.writeObjectOrNull(output, value, slot.type);
+                }
+            }
+        }
+    }
+
+    @Override
+    public Node read(Kryo kryo, Input input, Class<Node> nodeClass) {
+        Node ret = getFieldSerializer(kryo, nodeClass).read(kryo, input, nodeClass);
+        List<Slot> layout = slots.get(nodeClass);
+        if (layout != null) {
+            for (Slot slot : layout) {
+                String property = slot.property;
+                Object value;
+                if (slot.type == null) {
+                    value = kryo.readClassAndObject(input);
+                } else if (slot.type.isPrimitive()) {
+                    value = kryo.readObject(input, slot.type, kryo.getSerializer(slot.type));
+                } else {
+                    value = kryo.readObjectOrNull(input, slot.type);
+                }
+                // Slots of properties that have been removed are dropped; properties whose type has changed are left to
+                // their default value, and reported
+                if (ret.hasProperty(property)) {
+                    Class<?> declared = ret.getDeclaredPropertyType(property);
+                    if (value == null && declared.isPrimitive()) {
+                        reportRetyped(nodeClass, property, value, declared);
+                        continue;
+                    }
+                    try {
+                        ret.setLocal(property, value);
+                    } catch (ClassCastException ex) {
+                        reportRetyped(nodeClass, property, value, declared);
+                    }
+                }
+            }
+        }
+        ParentRegistry.registerChildren(ret);
+        return ret;
+    }
+
+    private void reportRetyped(Class<?> nodeClass, String property, Object value, Class<?> declared) {
+        if (problems != null) {
+            String archived = value == null ? "null" : value.getClass().getName();
+            problems.add(new Error(Error.Level.WARNING, nodeClass.getName() + "." + property + ": archived " + archived
+                    + " cannot be assigned to " + declared.getName() + ", the default value is kept"));
+        }
+    }
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The ForkJoinPool used by the parallel operations of this package when they are not given one.
+ * <p/>
+ * The pool is created on first use and shared by every caller; its worker threads are daemons, so it never needs to be
+ * shut down.
+ */
+final class SharedPool {
+
+    private SharedPool() {
+    }
+
+    private static class Holder {
+        private static final ForkJoinPool pool = new ForkJoinPool();
+    }
+
+    static ForkJoinPool get() {
+        return Holder.pool;
+    }
+
+}
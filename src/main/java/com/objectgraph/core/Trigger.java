@@ -19,6 +19,7 @@
 
 package com.objectgraph.core;
 
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -34,6 +35,9 @@ import java.util.List;
  * can always ask a Node for its controlled properties, by using {@link Node#getControlledProperties()}. This would be
  * particularly useful in a GUI, for example.
  * <p/>
+ * A Trigger is never activated again by the Events fired by its own action on the same thread. When it is activated
+ * on a thread while it is running on another one, its {@link ConcurrencyPolicy} decides what happens.
+ * <p/>
  * object-graph comes with some already implemented Triggers. See them as a reference or use them directly if they meet
  * your needs.
  *
@@ -41,7 +45,44 @@ import java.util.List;
  */
 public abstract class Trigger<N extends Node> extends NodeHelper<N> {
 
-    private boolean listening = true;
+    /**
+     * What to do when a Trigger is activated while its action is running on another thread.
+     */
+    public enum ConcurrencyPolicy {
+        /**
+         * The new activation is ignored.
+         */
+        DROP,
+        /**
+         * The new activation waits for the running action to finish, then runs. Two threads whose Triggers activate
+         * each other can deadlock: change a graph from one thread at a time if its Triggers form such chains.
+         */
+        QUEUE,
+        /**
+         * The new activation returns immediately, and the running thread runs the action once more when it finishes;
+         * any number of activations in the meanwhile are coalesced in one run, with the last Event.
+         */
+        COALESCE
+    }
+
+    private ConcurrencyPolicy concurrencyPolicy = ConcurrencyPolicy.QUEUE;
+
+    // The thread running the action, and the last Event coalesced while it runs
+    private transient volatile Thread owner;
+    private transient Event coalesced;
+
+    public ConcurrencyPolicy getConcurrencyPolicy() {
+        return concurrencyPolicy;
+    }
+
+    /**
+     * Sets the policy for concurrent activations; the default is {@link ConcurrencyPolicy#QUEUE}.
+     *
+     * @param concurrencyPolicy the new policy
+     */
+    public void setConcurrencyPolicy(ConcurrencyPolicy concurrencyPolicy) {
+        this.concurrencyPolicy = concurrencyPolicy;
+    }
 
     /**
      * Return the list of controlled paths
@@ -68,12 +109,166 @@ public abstract class Trigger<N extends Node> extends NodeHelper<N> {
      */
     protected abstract void action(Event event);
 
+    /**
+     * The paths whose changes are used by this Trigger to compute its controlled properties.
+     * <p/>
+     * Source paths are used to order deferred Triggers (see {@link #isDeferred()}): a deferred Trigger runs after every
+     * deferred Trigger that controls one of its source paths.
+     *
+     * @return a list of paths, relative to the Node of this Trigger; the default is an empty list
+     */
+    protected List<String> getSourcePaths() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Checks if the given Trigger does the same work as this one, when registered on the same Node.
+     * <p/>
+     * Equivalent Triggers registered on the same Node are redundant: only the first one is activated (see
+     * {@link TriggerGraph}). The default implementation returns {@code false}.
+     *
+     * @param other another Trigger
+     * @return {@code true} if the other Trigger reads and writes the same paths, in the same way
+     */
+    public boolean isEquivalent(Trigger<?> other) {
+        return false;
+    }
+
+    /**
+     * Checks if the given Trigger has the same class and the same {@link ConcurrencyPolicy} as this one, as required
+     * by {@link #isEquivalent(Trigger)}.
+     *
+     * @param other another Trigger
+     * @return {@code true} if the other Trigger is of the same kind
+     */
+    protected boolean isSameKind(Trigger<?> other) {
+        return other.getClass() == getClass() && other.concurrencyPolicy == concurrencyPolicy;
+    }
+
+    /**
+     * Whether this Trigger runs after the dispatch of the Event that activated it, instead of immediately.
+     * <p/>
+     * Deferred Triggers activated while an Event is dispatched are collected, sorted by their controlled and source
+     * paths, and run once each, so that derived properties are computed once per change and never from inconsistent
+     * values. The default is {@code false}.
+     *
+     * @return {@code true} if this Trigger should be deferred
+     */
+    protected boolean isDeferred() {
+        return false;
+    }
+
+    /**
+     * Marks the property at the given path as stale, so that it gets recomputed by {@link #refresh()} the next time
+     * it is read with {@link Node#get(String)}.
+     *
+     * @param path the path of the property, relative to the Node of this Trigger
+     * @return the Node that owns the property, or {@code null} if an intermediate Node on the path is null
+     */
+    protected final Node invalidate(String path) {
+        int lastSplit = path.lastIndexOf('.');
+        Node owner = lastSplit < 0 ? getNode() : getNode().<Node>get(path.substring(0, lastSplit));
+        if (owner != null) {
+            // A Trigger shared by a class is refreshed later, so it is recorded together with the Node it applies to
+            Trigger<?> trigger = isShared() ? new ClassHelpers.BoundTrigger(this, getNode()) : this;
+            owner.markStale(path.substring(lastSplit + 1), trigger);
+        }
+        return owner;
+    }
+
+    /**
+     * Recomputes the properties invalidated by this Trigger; called when a stale property is read.
+     * <p/>
+     * As for {@link #action(Event)}, this Trigger is not activated by the Events fired while refreshing. The default
+     * implementation does nothing.
+     */
+    protected void refresh() {
+    }
+
+    void refreshStale() {
+        if (owner == Thread.currentThread()) {
+            // Read by a Trigger activated by the action of this one, which is done invalidating
+            refresh();
+            return;
+        }
+        // A stale value must be computed before it is read, so refreshing always waits for a running action
+        if (acquire(ConcurrencyPolicy.QUEUE, null)) {
+            try {
+                refresh();
+            } finally {
+                release();
+            }
+        }
+    }
+
     void check(Event event) {
-        if (listening && isTriggeredBy(event)) {
-            listening = false;
-            action(event);
-            listening = true;
+        if (owner != Thread.currentThread() && isTriggeredBy(event)) {
+            if (isDeferred() && Propagation.defer(this, event)) {
+                return;
+            }
+            run(event);
+        }
+    }
+
+    void run(Event event) {
+        if (!acquire(concurrencyPolicy, event)) {
+            return;
+        }
+        boolean released = false;
+        try {
+            while (!released) {
+                action(event);
+                // Checked and released atomically, so that no coalesced activation gets lost
+                synchronized (this) {
+                    event = coalesced;
+                    coalesced = null;
+                    if (event == null) {
+                        release();
+                        released = true;
+                    }
+                }
+            }
+        } finally {
+            if (!released) {
+                release();
+            }
+        }
+    }
+
+    /**
+     * Makes the current thread the owner of this Trigger, applying the given policy if another thread owns it.
+     *
+     * @return {@code true} if the current thread has to run the action
+     */
+    private synchronized boolean acquire(ConcurrencyPolicy policy, Event event) {
+        Thread current = Thread.currentThread();
+        if (owner == current) {
+            return false;
+        }
+        while (owner != null) {
+            switch (policy) {
+                case DROP:
+                    return false;
+                case COALESCE:
+                    coalesced = event;
+                    return false;
+                default:
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        current.interrupt();
+                        return false;
+                    }
+            }
         }
+        owner = current;
+        return true;
+    }
+
+    private synchronized void release() {
+        coalesced = null;
+        owner = null;
+        notifyAll();
     }
 
 }
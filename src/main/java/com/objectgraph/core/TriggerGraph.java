@@ -0,0 +1,473 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import com.objectgraph.utils.PathUtils;
+
+import java.util.*;
+
+/**
+ * Static analysis of the paths read and written by {@link Trigger}s.
+ * <p/>
+ * Each Trigger writes its controlled paths ({@link Trigger#getControlledPaths()}) and reads its source paths
+ * ({@link Trigger#getSourcePaths()}). A Trigger precedes another one if it writes a path that overlaps one of the paths
+ * read by the other. From this graph the analysis computes:
+ * <ul>
+ *     <li>the cycles, that at runtime are only cut by the re-entrancy guard of each Trigger, so that their result can
+ *     depend on the order of the Events;</li>
+ *     <li>the redundant Triggers, registered on the same Node as an equivalent Trigger (see
+ *     {@link Trigger#isEquivalent(Trigger)}): they would repeat the same work;</li>
+ *     <li>an evaluation order in which every Trigger comes after the Triggers it depends on (Triggers in a cycle keep
+ *     their registration order).</li>
+ * </ul>
+ * Each Node keeps the analysis of its own Triggers, updated when a Trigger is added or removed: it dispatches Events
+ * following the evaluation order, skips redundant Triggers, and reports cycles and redundant Triggers as warnings in
+ * {@link Node#getTriggerWarnings()}, apart from the errors of its ErrorChecks. Use {@link #analyze(Node)} to find the
+ * cycles that involve Triggers on different Nodes.
+ */
+public final class TriggerGraph {
+
+    static final TriggerGraph EMPTY = of(null, Collections.<Trigger<?>>emptyList());
+
+    private final List<Trigger<?>> evaluationOrder = new ArrayList<>();
+    private final List<List<Trigger<?>>> cycles = new ArrayList<>();
+
+    // The analyzed Triggers, in registration order, and their data by position; lists are shared between the graphs
+    // derived from each other by plus() and minus(), so they are never changed once built
+    private final List<Trigger<?>> triggers;
+    private final Map<Trigger<?>, String> prefixes;
+    private final Map<Trigger<?>, Node> nodes;
+    private final List<List<String[]>> writes;
+    private final List<List<String[]>> reads;
+    private final List<List<Integer>> edges;
+    private final Set<Trigger<?>> redundant;
+
+    private TriggerGraph(List<Trigger<?>> triggers, Map<Trigger<?>, String> prefixes, Map<Trigger<?>, Node> nodes,
+                         List<List<String[]>> writes, List<List<String[]>> reads, List<List<Integer>> edges,
+                         Set<Trigger<?>> redundant) {
+        this.triggers = triggers;
+        this.prefixes = prefixes;
+        this.nodes = nodes;
+        this.writes = writes;
+        this.reads = reads;
+        this.edges = edges;
+        this.redundant = redundant;
+        new Tarjan(triggers, edges).run();
+    }
+
+    private static TriggerGraph build(Map<Trigger<?>, String> prefixes, Map<Trigger<?>, Node> nodes) {
+        List<Trigger<?>> triggers = new ArrayList<>(prefixes.keySet());
+
+        Set<Trigger<?>> redundant = new HashSet<>();
+        for (int i = 0; i < triggers.size(); i++) {
+            if (isRedundant(triggers.get(i), triggers.subList(0, i), nodes, redundant)) {
+                redundant.add(triggers.get(i));
+            }
+        }
+
+        List<List<String[]>> writes = new ArrayList<>();
+        List<List<String[]>> reads = new ArrayList<>();
+        for (Trigger<?> trigger : triggers) {
+            writes.add(absolute(prefixes.get(trigger), trigger.getControlledPaths()));
+            reads.add(absolute(prefixes.get(trigger), trigger.getSourcePaths()));
+        }
+        List<List<Integer>> edges = new ArrayList<>();
+        for (int i = 0; i < triggers.size(); i++) {
+            List<Integer> targets = new ArrayList<>();
+            for (int j = 0; j < triggers.size(); j++) {
+                if (overlap(writes.get(i), reads.get(j))) {
+                    targets.add(j);
+                }
+            }
+            edges.add(targets);
+        }
+
+        return new TriggerGraph(triggers, prefixes, nodes, writes, reads, edges, redundant);
+    }
+
+    /**
+     * Checks if a Trigger is equivalent to one of the given earlier Triggers, on the same Node, that is not redundant.
+     */
+    private static boolean isRedundant(Trigger<?> trigger, List<Trigger<?>> earlier, Map<Trigger<?>, Node> nodes,
+                                       Set<Trigger<?>> redundant) {
+        for (Trigger<?> other : earlier) {
+            if (nodes.get(other) == nodes.get(trigger) && !redundant.contains(other) && other.isEquivalent(trigger)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Analyzes the Triggers of every Node reachable from the given root.
+     *
+     * @param root the root of the graph
+     * @return the analysis, with paths relative to the root
+     */
+    public static TriggerGraph analyze(Node root) {
+        Map<Trigger<?>, String> prefixes = new LinkedHashMap<>();
+        Map<Trigger<?>, Node> nodes = new HashMap<>();
+        Set<Node> seen = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+        Deque<Node> queue = new ArrayDeque<>();
+        Deque<String> paths = new ArrayDeque<>();
+        seen.add(root);
+        queue.add(root);
+        paths.add("");
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            String path = paths.poll();
+            for (Trigger<?> trigger : node.getTriggers()) {
+                prefixes.put(trigger, path);
+                nodes.put(trigger, node);
+            }
+            for (String property : node.getProperties()) {
+                Object value = node.get(property);
+                if (value instanceof Node && seen.add((Node) value)) {
+                    queue.add((Node) value);
+                    paths.add(PathUtils.appendPath(path, property));
+                }
+            }
+        }
+        return build(prefixes, nodes);
+    }
+
+    /**
+     * Analyzes the given Triggers, registered on the same Node.
+     */
+    static TriggerGraph of(Node node, Collection<Trigger<?>> triggers) {
+        Map<Trigger<?>, String> prefixes = new LinkedHashMap<>();
+        Map<Trigger<?>, Node> nodes = new HashMap<>();
+        for (Trigger<?> trigger : triggers) {
+            prefixes.put(trigger, "");
+            nodes.put(trigger, node);
+        }
+        return build(prefixes, nodes);
+    }
+
+    /**
+     * The analysis of these Triggers and another one, registered last on the given Node.
+     * <p/>
+     * Only the paths of the new Trigger are compared with the others, so adding n Triggers one at a time does not
+     * compare every pair of them again on each addition.
+     */
+    TriggerGraph plus(Trigger<?> trigger, Node node) {
+        int index = triggers.size();
+        List<Trigger<?>> triggers = new ArrayList<>(this.triggers);
+        triggers.add(trigger);
+        Map<Trigger<?>, String> prefixes = new LinkedHashMap<>(this.prefixes);
+        prefixes.put(trigger, "");
+        Map<Trigger<?>, Node> nodes = new HashMap<>(this.nodes);
+        nodes.put(trigger, node);
+
+        Set<Trigger<?>> redundant = new HashSet<>(this.redundant);
+        if (isRedundant(trigger, this.triggers, nodes, redundant)) {
+            redundant.add(trigger);
+        }
+
+        List<String[]> write = absolute("", trigger.getControlledPaths());
+        List<String[]> read = absolute("", trigger.getSourcePaths());
+        List<List<String[]>> writes = new ArrayList<>(this.writes);
+        writes.add(write);
+        List<List<String[]>> reads = new ArrayList<>(this.reads);
+        reads.add(read);
+
+        List<List<Integer>> edges = new ArrayList<>(index + 1);
+        List<Integer> targets = new ArrayList<>();
+        for (int i = 0; i < index; i++) {
+            List<Integer> old = this.edges.get(i);
+            if (overlap(writes.get(i), read)) {
+                List<Integer> extended = new ArrayList<>(old);
+                extended.add(index);
+                edges.add(extended);
+            } else {
+                edges.add(old);
+            }
+            if (overlap(write, reads.get(i))) {
+                targets.add(i);
+            }
+        }
+        if (overlap(write, read)) {
+            targets.add(index);
+        }
+        edges.add(targets);
+
+        return new TriggerGraph(triggers, prefixes, nodes, writes, reads, edges, redundant);
+    }
+
+    /**
+     * The analysis of these Triggers without the given one.
+     */
+    TriggerGraph minus(Trigger<?> trigger) {
+        int index = triggers.indexOf(trigger);
+        if (index < 0) {
+            return this;
+        }
+        List<Trigger<?>> triggers = new ArrayList<>(this.triggers);
+        triggers.remove(index);
+        Map<Trigger<?>, String> prefixes = new LinkedHashMap<>(this.prefixes);
+        prefixes.remove(trigger);
+        Map<Trigger<?>, Node> nodes = new HashMap<>(this.nodes);
+        nodes.remove(trigger);
+
+        Set<Trigger<?>> redundant = new HashSet<>(this.redundant);
+        if (!redundant.remove(trigger)) {
+            // The later Triggers equivalent to the removed one may have become the first of their kind
+            for (int i = index; i < triggers.size(); i++) {
+                Trigger<?> later = triggers.get(i);
+                if (redundant.contains(later)) {
+                    redundant.remove(later);
+                    if (isRedundant(later, triggers.subList(0, i), nodes, redundant)) {
+                        redundant.add(later);
+                    }
+                }
+            }
+        }
+
+        List<List<String[]>> writes = new ArrayList<>(this.writes);
+        writes.remove(index);
+        List<List<String[]>> reads = new ArrayList<>(this.reads);
+        reads.remove(index);
+
+        List<List<Integer>> edges = new ArrayList<>(triggers.size());
+        for (int i = 0; i < this.edges.size(); i++) {
+            if (i == index) {
+                continue;
+            }
+            List<Integer> targets = new ArrayList<>(this.edges.get(i).size());
+            for (int target : this.edges.get(i)) {
+                if (target != index) {
+                    targets.add(target > index ? target - 1 : target);
+                }
+            }
+            edges.add(targets);
+        }
+
+        return new TriggerGraph(triggers, prefixes, nodes, writes, reads, edges, redundant);
+    }
+
+    /**
+     * The Triggers in evaluation order: each Trigger comes after the ones that write the paths it reads.
+     *
+     * @return every analyzed Trigger, including redundant ones
+     */
+    public List<Trigger<?>> getEvaluationOrder() {
+        return Collections.unmodifiableList(evaluationOrder);
+    }
+
+    /**
+     * The cycles of Triggers, each one in evaluation order; a Trigger that reads a path it writes is a cycle by itself.
+     *
+     * @return the list of cycles, empty if there are none
+     */
+    public List<List<Trigger<?>>> getCycles() {
+        return Collections.unmodifiableList(cycles);
+    }
+
+    /**
+     * The Triggers equivalent to another Trigger registered before on the same Node.
+     *
+     * @return the redundant Triggers, in registration order
+     */
+    public List<Trigger<?>> getRedundantTriggers() {
+        List<Trigger<?>> ret = new ArrayList<>(redundant.size());
+        for (Trigger<?> trigger : triggers) {
+            if (redundant.contains(trigger)) {
+                ret.add(trigger);
+            }
+        }
+        return ret;
+    }
+
+    boolean isRedundant(Trigger<?> trigger) {
+        return redundant.contains(trigger);
+    }
+
+    /**
+     * The warnings for the cycles and the redundant Triggers, by path relative to the analyzed root.
+     *
+     * @return a map from the controlled paths of the involved Triggers to the warnings
+     */
+    public Map<String, Set<Error>> getWarnings() {
+        if (cycles.isEmpty() && redundant.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Set<Error>> ret = new LinkedHashMap<>();
+        for (List<Trigger<?>> cycle : cycles) {
+            StringBuilder message = new StringBuilder("Triggers form a cycle through ");
+            List<String> paths = new ArrayList<>();
+            for (Trigger<?> trigger : cycle) {
+                paths.addAll(absolute(trigger));
+            }
+            message.append(paths);
+            for (String path : paths) {
+                addWarning(ret, path, message.toString());
+            }
+        }
+        for (Trigger<?> trigger : getRedundantTriggers()) {
+            for (String path : absolute(trigger)) {
+                addWarning(ret, path, "Redundant trigger on " + path);
+            }
+        }
+        return ret;
+    }
+
+    private List<String> absolute(Trigger<?> trigger) {
+        List<String> ret = new ArrayList<>();
+        for (String path : trigger.getControlledPaths()) {
+            ret.add(PathUtils.appendPath(prefixes.get(trigger), path));
+        }
+        if (ret.isEmpty()) {
+            ret.add(prefixes.get(trigger));
+        }
+        return ret;
+    }
+
+    private static void addWarning(Map<String, Set<Error>> warnings, String path, String message) {
+        if (!warnings.containsKey(path)) {
+            warnings.put(path, new LinkedHashSet<Error>());
+        }
+        warnings.get(path).add(new Error(Error.Level.WARNING, message));
+    }
+
+    private static List<String[]> absolute(String prefix, List<String> paths) {
+        List<String[]> ret = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            ret.add(PathUtils.split(PathUtils.appendPath(prefix, path)));
+        }
+        return ret;
+    }
+
+    private static boolean overlap(List<String[]> writes, List<String[]> reads) {
+        for (String[] write : writes) {
+            for (String[] read : reads) {
+                if (PathUtils.samePrefix(write, read)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tarjan's strongly connected components, followed by a topological sort of the components.
+     */
+    private class Tarjan {
+
+        private final List<Trigger<?>> triggers;
+        private final List<List<Integer>> edges;
+        private final int[] index;
+        private final int[] low;
+        private final boolean[] onStack;
+        private final Deque<Integer> stack = new ArrayDeque<>();
+        private final List<List<Integer>> components = new ArrayList<>();
+        private int counter = 1;
+
+        Tarjan(List<Trigger<?>> triggers, List<List<Integer>> edges) {
+            this.triggers = triggers;
+            this.edges = edges;
+            this.index = new int[triggers.size()];
+            this.low = new int[triggers.size()];
+            this.onStack = new boolean[triggers.size()];
+        }
+
+        void run() {
+            for (int i = 0; i < triggers.size(); i++) {
+                if (index[i] == 0) {
+                    visit(i);
+                }
+            }
+
+            // Topological order of the components; among independent ones, the first registered comes first
+            int[] componentOf = new int[triggers.size()];
+            for (int c = 0; c < components.size(); c++) {
+                Collections.sort(components.get(c));
+                for (int i : components.get(c)) {
+                    componentOf[i] = c;
+                }
+            }
+            int[] incoming = new int[components.size()];
+            List<Set<Integer>> successors = new ArrayList<>();
+            for (int c = 0; c < components.size(); c++) {
+                successors.add(new HashSet<Integer>());
+            }
+            for (int i = 0; i < triggers.size(); i++) {
+                for (int j : edges.get(i)) {
+                    if (componentOf[i] != componentOf[j] && successors.get(componentOf[i]).add(componentOf[j])) {
+                        incoming[componentOf[j]]++;
+                    }
+                }
+            }
+            PriorityQueue<Integer> ready = new PriorityQueue<>(Math.max(1, components.size()), new Comparator<Integer>() {
+                @Override
+                public int compare(Integer c1, Integer c2) {
+                    return Integer.compare(components.get(c1).get(0), components.get(c2).get(0));
+                }
+            });
+            for (int c = 0; c < components.size(); c++) {
+                if (incoming[c] == 0) {
+                    ready.add(c);
+                }
+            }
+            while (!ready.isEmpty()) {
+                int c = ready.poll();
+                List<Integer> component = components.get(c);
+                List<Trigger<?>> members = new ArrayList<>();
+                for (int i : component) {
+                    members.add(triggers.get(i));
+                }
+                evaluationOrder.addAll(members);
+                if (members.size() > 1 || edges.get(component.get(0)).contains(component.get(0))) {
+                    cycles.add(members);
+                }
+                for (int next : successors.get(c)) {
+                    if (--incoming[next] == 0) {
+                        ready.add(next);
+                    }
+                }
+            }
+        }
+
+        private void visit(int v) {
+            index[v] = low[v] = counter++;
+            stack.push(v);
+            onStack[v] = true;
+            for (int w : edges.get(v)) {
+                if (index[w] == 0) {
+                    visit(w);
+                    low[v] = Math.min(low[v], low[w]);
+                } else if (onStack[w]) {
+                    low[v] = Math.min(low[v], index[w]);
+                }
+            }
+            if (low[v] == index[v]) {
+                List<Integer> component = new ArrayList<>();
+                int w;
+                do {
+                    w = stack.pop();
+                    onStack[w] = false;
+                    component.add(w);
+                } while (w != v);
+                components.add(component);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,449 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the past versions of the properties of a graph, so that it can be read consistently while it is changed.
+ * <p/>
+ * Every write run through {@link #write(ConcurrentGraph.Action)} or {@link #set(String, Object)} is committed as a
+ * new version of the graph, together with the changes made by the Triggers it fires. The first time a property (or
+ * the content of a {@link ListNode}) is changed by a write, its previous value is kept; when the write ends, the new
+ * values are added to the history of the properties and the version of the graph is increased. Writes run one at a
+ * time.
+ * <p/>
+ * Readers never wait for writers: {@link #get(String, long)} and {@link ReadSession} see the values the properties
+ * had at the given version, even while a write is in progress. Past values are kept as long as a {@link ReadSession}
+ * could read them: once no session holds a version older than the latest one, the history of the properties is
+ * dropped and reads go straight to the Nodes. Reading a dropped version throws a
+ * {@link VersionNotAvailableException}, so readers that need a version for more than one read should open a
+ * session.
+ * <p/>
+ * Writes that do not go through the VersionedGraph are not versioned. The values of lazy Triggers are read as they
+ * were last computed.
+ */
+public final class VersionedGraph {
+
+    private static final ThreadLocal<Transaction> current = new ThreadLocal<>();
+
+    // Number of writes in progress on any VersionedGraph, so that other writes skip the thread-local lookup
+    private static final AtomicInteger transactions = new AtomicInteger();
+
+    private static final String LIST_CONTENT = "*";
+
+    private static final Object MISSING = new Object();
+
+    private final Node root;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ConcurrentHashMap<Cell, Chain> chains = new ConcurrentHashMap<>();
+    private final TreeMap<Long, Integer> pinned = new TreeMap<>();
+    // The Cells changed by each version that has not been reclaimed yet, guarded by the write lock
+    private final TreeMap<Long, Set<Cell>> committed = new TreeMap<>();
+    private volatile long version = 0;
+    private volatile long oldest = 0;
+
+    public VersionedGraph(Node root) {
+        this.root = root;
+    }
+
+    public Node getRoot() {
+        return root;
+    }
+
+    /**
+     * Returns the version of the graph, increased by every write that changed it.
+     *
+     * @return the latest committed version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the oldest version that can still be read with {@link #get(String, long)}.
+     *
+     * @return the oldest readable version
+     */
+    public long getOldestVersion() {
+        return oldest;
+    }
+
+    /**
+     * Sets the property at the given path, as a new version of the graph.
+     *
+     * @param path the path, relative to the root
+     * @param value the new value
+     */
+    public void set(final String path, final Object value) {
+        write(new ConcurrentGraph.Action<Void>() {
+            @Override
+            public Void run(Node root) {
+                root.set(path, value);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Runs an operation that changes the graph, and commits its changes as a new version.
+     * <p/>
+     * Writes started by the operation itself are part of the same version.
+     *
+     * @param action the operation
+     * @return the result of the operation
+     */
+    public <T> T write(ConcurrentGraph.Action<T> action) {
+        Transaction running = current.get();
+        if (running != null) {
+            if (running.graph != this) {
+                throw new IllegalStateException("Cannot write to the graph of " + root
+                        + " while writing to the graph of " + running.graph.root);
+            }
+            return action.run(root);
+        }
+
+        writeLock.lock();
+        Transaction transaction = new Transaction(this, version + 1);
+        current.set(transaction);
+        transactions.incrementAndGet();
+        try {
+            return action.run(root);
+        } finally {
+            try {
+                // Changes made before a failure are already in the Nodes, so they are committed anyway
+                commit(transaction);
+            } finally {
+                transactions.decrementAndGet();
+                current.remove();
+                writeLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Reads the property at the given path as it was at the given version.
+     *
+     * @param path the path, relative to the root
+     * @param version the version to read, between {@link #getOldestVersion()} and {@link #getVersion()}
+     * @return the value of the property at that version
+     * @throws VersionNotAvailableException if the version is not readable
+     */
+    public <T> T get(String path, long version) {
+        checkAvailable(version);
+        T ret = read(root, path, version);
+        // The version could have been dropped while reading
+        checkAvailable(version);
+        return ret;
+    }
+
+    /**
+     * Opens a session that reads the latest version of the graph, and keeps it readable until it is closed.
+     *
+     * @return the new session
+     */
+    public ReadSession openSession() {
+        synchronized (pinned) {
+            long pin = version;
+            Integer count = pinned.get(pin);
+            pinned.put(pin, count == null ? 1 : count + 1);
+            return new ReadSession(pin);
+        }
+    }
+
+    /**
+     * A consistent view of one version of the graph.
+     */
+    public final class ReadSession implements AutoCloseable {
+
+        private final long version;
+        private volatile boolean closed = false;
+
+        private ReadSession(long version) {
+            this.version = version;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * Reads the property at the given path, relative to the root.
+         *
+         * @param path the path
+         * @return the value of the property at the version of this session
+         */
+        public <T> T get(String path) {
+            return get(root, path);
+        }
+
+        /**
+         * Reads the property at the given path, relative to a Node of the graph.
+         *
+         * @param node the Node, as it is reached at the version of this session
+         * @param path the path
+         * @return the value of the property at the version of this session
+         */
+        public <T> T get(Node node, String path) {
+            if (closed) {
+                throw new IllegalStateException("Session on version " + version + " is closed");
+            }
+            return read(node, path, version);
+        }
+
+        /**
+         * Releases the version of this session, so that it can be dropped.
+         */
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                unpin(version);
+            }
+        }
+
+    }
+
+    static void beforeWrite(Node node, String property) {
+        if (transactions.get() == 0) {
+            return;
+        }
+        Transaction transaction = current.get();
+        if (transaction != null) {
+            transaction.graph.record(transaction, node, property);
+        }
+    }
+
+    private void record(Transaction transaction, Node node, String property) {
+        Cell cell = new Cell(node, node instanceof ListNode ? LIST_CONTENT : property);
+        if (transaction.touched.add(cell) && !chains.containsKey(cell)) {
+            chains.put(cell, new Chain(new Entry(Long.MIN_VALUE, readCurrent(cell), null)));
+        }
+    }
+
+    private void commit(Transaction transaction) {
+        if (transaction.touched.isEmpty()) {
+            return;
+        }
+        for (Cell cell : transaction.touched) {
+            Chain chain = chains.get(cell);
+            chain.head = new Entry(transaction.version, readCurrent(cell), chain.head);
+        }
+        committed.put(transaction.version, transaction.touched);
+        version = transaction.version;
+        reclaim();
+    }
+
+    private void unpin(long pin) {
+        synchronized (pinned) {
+            int count = pinned.get(pin);
+            if (count == 1) {
+                pinned.remove(pin);
+            } else {
+                pinned.put(pin, count - 1);
+            }
+        }
+        // A write in progress will reclaim the versions when it ends
+        if (!writeLock.isHeldByCurrentThread() && writeLock.tryLock()) {
+            try {
+                reclaim();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    // Runs under the write lock
+    private void reclaim() {
+        long keep;
+        synchronized (pinned) {
+            keep = pinned.isEmpty() ? version : pinned.firstKey();
+            oldest = keep;
+        }
+
+        // Only the Cells changed since the last reclaim can hold entries that are no longer needed: the others were
+        // trimmed to the value they had at that time, which is still the one readers of the kept versions see
+        SortedMap<Long, Set<Cell>> reclaimed = committed.headMap(keep, true);
+        for (Set<Cell> cells : reclaimed.values()) {
+            for (Cell cell : cells) {
+                Chain chain = chains.get(cell);
+                if (chain == null) {
+                    continue;
+                }
+                Entry entry = chain.head;
+                if (entry.version <= keep) {
+                    // The Node holds the latest value, which is the one every reader sees
+                    chains.remove(cell);
+                } else {
+                    while (entry.version > keep) {
+                        entry = entry.older;
+                    }
+                    entry.older = null;
+                }
+            }
+        }
+        reclaimed.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T read(Node node, String path, long version) {
+        if (path.isEmpty()) {
+            return (T) node;
+        }
+
+        Object ret = node;
+        for (String property : path.split("\\.")) {
+            if (ret == null) {
+                return null;
+            }
+            ret = readLocal((Node) ret, property, version);
+        }
+        return (T) ret;
+    }
+
+    private Object readLocal(Node node, String property, long version) {
+        if (node instanceof ListNode) {
+            List<?> content = (List<?>) readCell(new Cell(node, LIST_CONTENT), version);
+            int index;
+            try {
+                index = Integer.parseInt(property);
+            } catch (NumberFormatException ex) {
+                throw new PropertyNotExistsException(node, property);
+            }
+            if (index < 0 || index >= content.size()) {
+                throw new PropertyNotExistsException(node, property);
+            }
+            return content.get(index);
+        }
+
+        if (!node.hasProperty(property)) {
+            throw new PropertyNotExistsException(node, property);
+        }
+        return readCell(new Cell(node, property), version);
+    }
+
+    private Object readCell(Cell cell, long version) {
+        Chain chain = chains.get(cell);
+        if (chain == null) {
+            // The history is kept before the Node is changed: if there is still none after reading, the value read
+            // is the committed one
+            Object value;
+            try {
+                value = readCurrent(cell);
+            } catch (RuntimeException ex) {
+                chain = chains.get(cell);
+                if (chain == null) {
+                    // The content of a ListNode was read while a write changed it, and the history was dropped
+                    throw new VersionNotAvailableException(version, oldest, this.version, ex);
+                }
+                return valueAt(chain, version);
+            }
+            chain = chains.get(cell);
+            if (chain == null) {
+                return value;
+            }
+        }
+        return valueAt(chain, version);
+    }
+
+    private Object valueAt(Chain chain, long version) {
+        Entry entry = chain.head;
+        while (entry != null && entry.version > version) {
+            entry = entry.older;
+        }
+        if (entry == null) {
+            throw new VersionNotAvailableException(version, oldest, this.version);
+        }
+        return entry.value;
+    }
+
+    private Object readCurrent(Cell cell) {
+        if (cell.node instanceof ListNode) {
+            return Collections.unmodifiableList(Arrays.asList(((ListNode<?>) cell.node).toArray()));
+        } else {
+            return cell.node.getLocal(cell.property);
+        }
+    }
+
+    private void checkAvailable(long version) {
+        if (version < oldest || version > this.version) {
+            throw new VersionNotAvailableException(version, oldest, this.version);
+        }
+    }
+
+    private static class Transaction {
+        private final VersionedGraph graph;
+        private final long version;
+        private final Set<Cell> touched = new HashSet<>();
+
+        private Transaction(VersionedGraph graph, long version) {
+            this.graph = graph;
+            this.version = version;
+        }
+    }
+
+    private static class Cell {
+        private final Node node;
+        private final String property;
+
+        private Cell(Node node, String property) {
+            this.node = node;
+            this.property = property;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Cell)) {
+                return false;
+            }
+            Cell other = (Cell) o;
+            return node == other.node && property.equals(other.property);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(node) + property.hashCode();
+        }
+    }
+
+    private static class Chain {
+        private volatile Entry head;
+
+        private Chain(Entry head) {
+            this.head = head;
+        }
+    }
+
+    private static class Entry {
+        private final long version;
+        private final Object value;
+        private Entry older;
+
+        private Entry(long version, Object value, Entry older) {
+            this.version = version;
+            this.value = value;
+            this.older = older;
+        }
+    }
+
+}
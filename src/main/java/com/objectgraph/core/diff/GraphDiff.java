@@ -0,0 +1,313 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core.diff;
+
+import com.objectgraph.core.ListNode;
+import com.objectgraph.core.Node;
+import com.objectgraph.utils.PathUtils;
+
+import java.util.*;
+
+/**
+ * Computes the differences between two Node graphs.
+ * <p/>
+ * The graphs are walked in parallel, property by property. Nodes of the same class are compared recursively, while
+ * any other difference produces a {@link SetOperation}. {@link ListNode}s are compared with the Myers algorithm, so
+ * that the resulting {@link ListOperation} only removes and inserts the elements that are not part of the longest
+ * common subsequence; an element removed and an element inserted at the same position are compared recursively
+ * instead, if they are Nodes of the same class.
+ * <p/>
+ * Only free properties are compared, as controlled properties are updated by their triggers when the patch is
+ * applied. Nodes shared by several paths are compared once, but they are copied once per path when inserted by a
+ * patch.
+ */
+public final class GraphDiff {
+
+    private GraphDiff() {
+    }
+
+    /**
+     * Computes the patch that transforms the first graph into the second one.
+     *
+     * @param a the root of the original graph
+     * @param b the root of the modified graph
+     * @return the operations that, applied to {@code a}, make it equal to {@code b}
+     * @throws IllegalArgumentException if the roots have different classes
+     */
+    public static GraphPatch compute(Node a, Node b) {
+        if (a.getClass() != b.getClass()) {
+            throw new IllegalArgumentException("Cannot compare Nodes of different classes: "
+                    + a.getClass().getName() + " and " + b.getClass().getName());
+        }
+        Walk walk = new Walk();
+        walk.diff("", a, b);
+        return new GraphPatch(walk.operations);
+    }
+
+    /**
+     * Checks if two graphs have the same structure and the same free property values.
+     *
+     * @param a the root of the first graph
+     * @param b the root of the second graph
+     * @return true if {@link #compute(Node, Node)} would return an empty patch
+     */
+    public static boolean equal(Node a, Node b) {
+        return new Walk().equal(a, b);
+    }
+
+    private static class Walk {
+
+        private final List<PatchOperation> operations = new ArrayList<>();
+
+        private final Map<Node, Set<Node>> diffed = new IdentityHashMap<>();
+
+        private final Map<Node, Map<Node, Boolean>> equalities = new IdentityHashMap<>();
+
+        private void diff(String path, Node a, Node b) {
+            if (!visit(diffed, a, b)) {
+                return;
+            }
+            if (a instanceof ListNode) {
+                diffList(path, (ListNode<?>) a, (ListNode<?>) b);
+                return;
+            }
+            if (!a.getFreeProperties().equals(b.getFreeProperties())) {
+                // Only possible for Nodes with dynamic properties: replace the whole Node
+                operations.add(new SetOperation(path, a, b));
+                return;
+            }
+            for (String property : b.getFreeProperties()) {
+                diffValue(PathUtils.appendPath(path, property), a.get(property), b.get(property));
+            }
+        }
+
+        private void diffValue(String path, Object a, Object b) {
+            if (a instanceof Node && b instanceof Node && a.getClass() == b.getClass()) {
+                diff(path, (Node) a, (Node) b);
+            } else if (!Objects.equals(a, b)) {
+                operations.add(new SetOperation(path, a, b));
+            }
+        }
+
+        private void diffList(String path, ListNode<?> a, ListNode<?> b) {
+            int start = 0;
+            while (start < a.size() && start < b.size() && equalValues(a.get(start), b.get(start))) {
+                start++;
+            }
+            int endA = a.size();
+            int endB = b.size();
+            while (endA > start && endB > start && equalValues(a.get(endA - 1), b.get(endB - 1))) {
+                endA--;
+                endB--;
+            }
+
+            List<int[]> matches = new ArrayList<>();
+            matches.add(new int[] {start - 1, start - 1});
+            matches.addAll(lcs(a, start, endA, b, start, endB));
+            matches.add(new int[] {endA, endB});
+
+            List<Integer> removed = new ArrayList<>();
+            List<ListOperation.Insertion> insertions = new ArrayList<>();
+            Map<Integer, int[]> paired = new TreeMap<>();
+            for (int m = 1; m < matches.size(); m++) {
+                int fromA = matches.get(m - 1)[0] + 1, toA = matches.get(m)[0];
+                int fromB = matches.get(m - 1)[1] + 1, toB = matches.get(m)[1];
+                // Elements replaced at the same position are compared recursively, if they are Nodes of the same class
+                int pairs = 0;
+                while (fromA + pairs < toA && fromB + pairs < toB
+                        && pairable(a.get(fromA + pairs), b.get(fromB + pairs))) {
+                    paired.put(fromB + pairs, new int[] {fromA + pairs, fromB + pairs});
+                    pairs++;
+                }
+                for (int i = fromA + pairs; i < toA; i++) {
+                    removed.add(i);
+                }
+                if (fromB + pairs < toB) {
+                    insertions.add(new ListOperation.Insertion(fromB + pairs,
+                            new ArrayList<Object>(b.subList(fromB + pairs, toB))));
+                }
+            }
+
+            if (!removed.isEmpty() || !insertions.isEmpty()) {
+                operations.add(new ListOperation(path, removed, insertions));
+            }
+            // Once the list operation has been applied, the paired elements are at their index in b
+            for (int[] pair : paired.values()) {
+                diff(PathUtils.appendPath(path, String.valueOf(pair[1])), (Node) a.get(pair[0]), (Node) b.get(pair[1]));
+            }
+        }
+
+        private boolean pairable(Object a, Object b) {
+            return a instanceof Node && b instanceof Node && a.getClass() == b.getClass();
+        }
+
+        /**
+         * Myers' O(ND) algorithm, in its linear space variant: returns the matching index pairs of a longest common
+         * subsequence, in order.
+         */
+        private List<int[]> lcs(List<?> a, int offsetA, int endA, List<?> b, int offsetB, int endB) {
+            List<int[]> ret = new ArrayList<>();
+            lcs(a, offsetA, endA, b, offsetB, endB, ret);
+            return ret;
+        }
+
+        private void lcs(List<?> a, int startA, int endA, List<?> b, int startB, int endB, List<int[]> ret) {
+            while (startA < endA && startB < endB && equalValues(a.get(startA), b.get(startB))) {
+                ret.add(new int[] {startA++, startB++});
+            }
+            int suffix = 0;
+            while (endA - suffix > startA && endB - suffix > startB
+                    && equalValues(a.get(endA - suffix - 1), b.get(endB - suffix - 1))) {
+                suffix++;
+            }
+            if (startA < endA - suffix && startB < endB - suffix) {
+                int[] split = split(a, startA, endA - suffix, b, startB, endB - suffix);
+                if (split != null) {
+                    lcs(a, startA, split[0], b, startB, split[1], ret);
+                    lcs(a, split[0], endA - suffix, b, split[1], endB - suffix, ret);
+                }
+            }
+            for (int i = suffix; i > 0; i--) {
+                ret.add(new int[] {endA - i, endB - i});
+            }
+        }
+
+        /**
+         * Finds a point on a shortest edit path, where the forward and the reverse searches meet, or null if the
+         * ranges have no element in common. Only the furthest point reached on each diagonal is kept.
+         */
+        private int[] split(List<?> a, int startA, int endA, List<?> b, int startB, int endB) {
+            int n = endA - startA;
+            int m = endB - startB;
+            int maxD = (n + m + 1) / 2;
+            int offset = maxD;
+            int[] forward = new int[2 * maxD + 2];
+            int[] reverse = new int[2 * maxD + 2];
+            Arrays.fill(forward, -1);
+            Arrays.fill(reverse, -1);
+            forward[offset + 1] = 0;
+            reverse[offset + 1] = 0;
+            int delta = n - m;
+            // With an odd delta the paths meet during a forward step, otherwise during a reverse one
+            boolean odd = (delta & 1) != 0;
+            // Diagonals that went past the end of one of the ranges are not extended any further
+            int forwardStart = 0, forwardEnd = 0, reverseStart = 0, reverseEnd = 0;
+            for (int d = 0; d < maxD; d++) {
+                for (int k = -d + forwardStart; k <= d - forwardEnd; k += 2) {
+                    int x;
+                    if (k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1])) {
+                        x = forward[offset + k + 1];
+                    } else {
+                        x = forward[offset + k - 1] + 1;
+                    }
+                    int y = x - k;
+                    while (x < n && y < m && equalValues(a.get(startA + x), b.get(startB + y))) {
+                        x++;
+                        y++;
+                    }
+                    forward[offset + k] = x;
+                    if (x > n) {
+                        forwardEnd += 2;
+                    } else if (y > m) {
+                        forwardStart += 2;
+                    } else if (odd) {
+                        int r = offset + delta - k;
+                        if (r >= 0 && r < reverse.length && reverse[r] != -1 && x >= n - reverse[r]) {
+                            return new int[] {startA + x, startB + y};
+                        }
+                    }
+                }
+                for (int k = -d + reverseStart; k <= d - reverseEnd; k += 2) {
+                    int x;
+                    if (k == -d || (k != d && reverse[offset + k - 1] < reverse[offset + k + 1])) {
+                        x = reverse[offset + k + 1];
+                    } else {
+                        x = reverse[offset + k - 1] + 1;
+                    }
+                    int y = x - k;
+                    while (x < n && y < m && equalValues(a.get(endA - x - 1), b.get(endB - y - 1))) {
+                        x++;
+                        y++;
+                    }
+                    reverse[offset + k] = x;
+                    if (x > n) {
+                        reverseEnd += 2;
+                    } else if (y > m) {
+                        reverseStart += 2;
+                    } else if (!odd) {
+                        int f = offset + delta - k;
+                        if (f >= 0 && f < forward.length && forward[f] != -1) {
+                            int forwardX = forward[f];
+                            int forwardY = forwardX - (delta - k);
+                            if (forwardX >= n - x) {
+                                return new int[] {startA + forwardX, startB + forwardY};
+                            }
+                        }
+                    }
+                }
+            }
+            return null;
+        }
+
+        private boolean equalValues(Object a, Object b) {
+            if (a instanceof Node && b instanceof Node) {
+                return equal((Node) a, (Node) b);
+            }
+            return Objects.equals(a, b);
+        }
+
+        private boolean equal(Node a, Node b) {
+            if (a == b) {
+                return true;
+            }
+            if (a.getClass() != b.getClass()) {
+                return false;
+            }
+            Map<Node, Boolean> known = equalities.get(a);
+            if (known == null) {
+                known = new IdentityHashMap<>();
+                equalities.put(a, known);
+            }
+            if (known.containsKey(b)) {
+                return known.get(b);
+            }
+            // Assume equality while the comparison is in progress, so that cycles terminate
+            known.put(b, true);
+            boolean ret = a.getFreeProperties().equals(b.getFreeProperties());
+            for (Iterator<String> i = b.getFreeProperties().iterator(); ret && i.hasNext(); ) {
+                String property = i.next();
+                ret = equalValues(a.get(property), b.get(property));
+            }
+            known.put(b, ret);
+            return ret;
+        }
+
+        private static boolean visit(Map<Node, Set<Node>> visited, Node a, Node b) {
+            Set<Node> set = visited.get(a);
+            if (set == null) {
+                set = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+                visited.put(a, set);
+            }
+            return set.add(b);
+        }
+
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core.diff;
+
+import com.objectgraph.core.Node;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The list of operations that transforms a Node graph into another, as computed by {@link GraphDiff}.
+ */
+public class GraphPatch {
+
+    private final List<PatchOperation> operations;
+
+    GraphPatch(List<PatchOperation> operations) {
+        this.operations = Collections.unmodifiableList(operations);
+    }
+
+    public List<PatchOperation> getOperations() {
+        return operations;
+    }
+
+    public boolean isEmpty() {
+        return operations.isEmpty();
+    }
+
+    /**
+     * Replays the operations on the given graph, in order.
+     * <p/>
+     * The target should be equal to the first graph given to {@link GraphDiff#compute(Node, Node)}; once the patch
+     * has been applied, it is equal to the second one. Each operation fires the usual events: the changes of a list
+     * are coalesced in one removal and one insertion per run of new elements.
+     *
+     * @param target the root of the graph to patch
+     */
+    public void apply(Node target) {
+        for (PatchOperation operation : operations) {
+            operation.apply(target);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return operations.toString();
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core.diff;
+
+import com.objectgraph.core.ListNode;
+import com.objectgraph.core.Node;
+
+import java.util.*;
+
+/**
+ * Changes the content of a {@link ListNode}, as {@link com.objectgraph.core.ListChange}s would do.
+ * <p/>
+ * The removed indices refer to the list before the operation is applied, and are all removed at once, with a single
+ * event. Then each run of consecutive insertions is added with a single event: the index of an insertion refers to the
+ * list after the operation has been applied.
+ */
+public class ListOperation extends PatchOperation {
+
+    /**
+     * A run of consecutive elements inserted at the given index.
+     */
+    public static class Insertion {
+
+        private final int index;
+        private final List<?> elements;
+
+        Insertion(int index, List<?> elements) {
+            this.index = index;
+            this.elements = Collections.unmodifiableList(elements);
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public List<?> getElements() {
+            return elements;
+        }
+
+    }
+
+    private final List<Integer> removedIndices;
+    private final List<Insertion> insertions;
+
+    ListOperation(String path, List<Integer> removedIndices, List<Insertion> insertions) {
+        super(path);
+        this.removedIndices = Collections.unmodifiableList(removedIndices);
+        this.insertions = Collections.unmodifiableList(insertions);
+    }
+
+    public List<Integer> getRemovedIndices() {
+        return removedIndices;
+    }
+
+    public List<Insertion> getInsertions() {
+        return insertions;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    void apply(Node root) {
+        ListNode<Object> list = root.get(getPath());
+        if (!removedIndices.isEmpty()) {
+            list.removeIndices(new ArrayList<>(removedIndices));
+        }
+        for (Insertion insertion : insertions) {
+            List<Object> elements = new ArrayList<>(insertion.elements.size());
+            for (Object element : insertion.elements) {
+                elements.add(copy(element));
+            }
+            list.addAll(insertion.index, elements);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder ret = new StringBuilder("list ").append(getPath()).append(" remove ").append(removedIndices);
+        for (Insertion insertion : insertions) {
+            ret.append(" insert ").append(insertion.elements.size()).append(" at ").append(insertion.index);
+        }
+        return ret.toString();
+    }
+
+}
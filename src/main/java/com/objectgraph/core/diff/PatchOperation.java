@@ -0,0 +1,48 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core.diff;
+
+import com.objectgraph.core.Node;
+
+/**
+ * A single operation of a {@link GraphPatch}.
+ * <p/>
+ * The path of an operation is relative to the root of the graph to which the patch is applied, and is valid once the
+ * operations that precede it in the patch have been applied.
+ */
+public abstract class PatchOperation {
+
+    private final String path;
+
+    PatchOperation(String path) {
+        this.path = path;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    abstract void apply(Node root);
+
+    static Object copy(Object value) {
+        return value == null ? null : Node.getKryo().copy(value);
+    }
+
+}
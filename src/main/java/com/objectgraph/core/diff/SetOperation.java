@@ -0,0 +1,59 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core.diff;
+
+import com.objectgraph.core.Node;
+
+/**
+ * Sets a property to a new value, as a {@link com.objectgraph.core.SetProperty} change would do.
+ * <p/>
+ * The new value is copied each time the operation is applied, so that the patched graph does not share any Node with
+ * the graph from which the patch was computed.
+ */
+public class SetOperation extends PatchOperation {
+
+    private final Object oldValue;
+    private final Object newValue;
+
+    SetOperation(String path, Object oldValue, Object newValue) {
+        super(path);
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+    }
+
+    public Object getOldValue() {
+        return oldValue;
+    }
+
+    public Object getNewValue() {
+        return newValue;
+    }
+
+    @Override
+    void apply(Node root) {
+        root.set(getPath(), copy(newValue));
+    }
+
+    @Override
+    public String toString() {
+        return "set " + getPath() + " = " + newValue;
+    }
+
+}
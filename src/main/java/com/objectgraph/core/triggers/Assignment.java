@@ -22,8 +22,12 @@ package com.objectgraph.core.triggers;
 import com.objectgraph.core.Change;
 import com.objectgraph.core.Event;
 import com.objectgraph.core.Node;
+import com.objectgraph.core.Trigger;
 import com.objectgraph.utils.PathUtils;
 
+import java.util.Collections;
+import java.util.List;
+
 public class Assignment extends StaticControlledPathTrigger<Node> {
 
     private final String masterPath;
@@ -33,6 +37,17 @@ public class Assignment extends StaticControlledPathTrigger<Node> {
         this.masterPath = master;
     }
 
+    @Override
+    protected List<String> getSourcePaths() {
+        return Collections.singletonList(masterPath);
+    }
+
+    @Override
+    public boolean isEquivalent(Trigger<?> other) {
+        return isSameKind(other) && ((Assignment) other).masterPath.equals(masterPath)
+                && other.getControlledPaths().equals(getControlledPaths());
+    }
+
     @Override
     protected boolean isTriggeredBy(Event event) {
         if (event.getType() instanceof Change) {
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core.triggers;
+
+import com.objectgraph.core.ConcurrentGraph;
+import com.objectgraph.core.Event;
+import com.objectgraph.core.Node;
+import com.objectgraph.core.Trigger;
+
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link Dependency} whose handler runs on an {@link Executor}, so that long computations do not block the thread
+ * that changed a parameter.
+ * <p/>
+ * When a parameter changes, the parameter values are read on the calling thread and the handler is submitted to the
+ * executor with them. When the handler completes, its result is set on the controlled property as a write of the
+ * result graph (see {@link #setResultGraph(ConcurrentGraph)}), or through the result executor (see
+ * {@link #setResultExecutor(Executor)}, for example to apply results on the GUI thread). One of them must be given
+ * before the first change; results are never set from the executor threads, which would race with the other
+ * writers of the graph.
+ * <p/>
+ * Each change starts a new generation: a computation that has not started yet when a newer change arrives is skipped,
+ * and the result of an outdated computation is discarded, so only the latest result is set. Parameter values are not
+ * copied, so Nodes given as parameters should not be changed while the handler runs.
+ */
+public class AsyncDependency extends Dependency {
+
+    private final Executor executor;
+
+    private Executor resultExecutor;
+
+    private ConcurrentGraph resultGraph;
+
+    private long generation;
+
+    private transient volatile Thread applyingThread;
+
+    public AsyncDependency(String controlled, Executor executor, String handlerMethod, String... parameters) {
+        super(controlled, handlerMethod, parameters);
+        this.executor = executor;
+    }
+
+    public AsyncDependency(String controlled, Executor executor, Object handlerObject, String handlerMethod,
+                           String... parameters) {
+        super(controlled, handlerObject, handlerMethod, parameters);
+        this.executor = executor;
+    }
+
+    public <A> AsyncDependency(String controlled, Executor executor, Function1<A, ?> function, String parameter) {
+        super(controlled, function, parameter);
+        this.executor = executor;
+    }
+
+    public <A, B> AsyncDependency(String controlled, Executor executor, Function2<A, B, ?> function,
+                                  String parameter1, String parameter2) {
+        super(controlled, function, parameter1, parameter2);
+        this.executor = executor;
+    }
+
+    public <A, B, C> AsyncDependency(String controlled, Executor executor, Function3<A, B, C, ?> function,
+                                     String parameter1, String parameter2, String parameter3) {
+        super(controlled, function, parameter1, parameter2, parameter3);
+        this.executor = executor;
+    }
+
+    public Executor getResultExecutor() {
+        return resultExecutor;
+    }
+
+    /**
+     * Sets the executor used to set results on the controlled property.
+     * <p/>
+     * Results are set in the order the executor runs them, so it should run one task at a time.
+     *
+     * @param resultExecutor the executor, for example the one of the GUI thread
+     */
+    public void setResultExecutor(Executor resultExecutor) {
+        this.resultExecutor = resultExecutor;
+    }
+
+    public ConcurrentGraph getResultGraph() {
+        return resultGraph;
+    }
+
+    /**
+     * Sets the graph whose writes set results on the controlled property; it takes precedence over the result
+     * executor.
+     *
+     * @param resultGraph the ConcurrentGraph that guards the Node of this Dependency
+     */
+    public void setResultGraph(ConcurrentGraph resultGraph) {
+        this.resultGraph = resultGraph;
+    }
+
+    /**
+     * Discards the computation in progress, if any.
+     */
+    public synchronized void cancel() {
+        generation++;
+    }
+
+    @Override
+    public boolean isEquivalent(Trigger<?> other) {
+        if (!super.isEquivalent(other)) {
+            return false;
+        }
+        AsyncDependency dependency = (AsyncDependency) other;
+        return dependency.executor == executor && dependency.resultExecutor == resultExecutor
+                && dependency.resultGraph == resultGraph;
+    }
+
+    @Override
+    protected boolean isTriggeredBy(Event event) {
+        // Setting a result must not start a new computation
+        return Thread.currentThread() != applyingThread && super.isTriggeredBy(event);
+    }
+
+    @Override
+    protected void action(Event event) {
+        if (resultGraph == null && resultExecutor == null) {
+            throw new IllegalStateException("No result graph or result executor for the AsyncDependency of "
+                    + getControlledPath());
+        }
+        final long current;
+        synchronized (this) {
+            current = ++generation;
+        }
+        final Object[] params = getParameterValues();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (isCurrent(current)) {
+                    final Object result = compute(params);
+                    if (resultGraph != null) {
+                        resultGraph.submit(new ConcurrentGraph.Action<Void>() {
+                            @Override
+                            public Void run(Node root) {
+                                apply(current, result);
+                                return null;
+                            }
+                        });
+                    } else {
+                        resultExecutor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                apply(current, result);
+                            }
+                        });
+                    }
+                }
+            }
+        });
+    }
+
+    private synchronized boolean isCurrent(long generation) {
+        return this.generation == generation;
+    }
+
+    private void apply(long generation, Object result) {
+        Node node = getNode();
+        // The monitor is not held while setting, as the Events fired can start a new computation from other threads
+        if (!isCurrent(generation) || node == null) {
+            return;
+        }
+        applyingThread = Thread.currentThread();
+        try {
+            node.set(getControlledPath(), result);
+        } finally {
+            applyingThread = null;
+        }
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core.triggers;
+
+import com.objectgraph.core.Node;
+import com.objectgraph.utils.PathUtils;
+
+/**
+ * A path split once in its tokens, so that Triggers fired many times do not parse their paths on each event.
+ */
+class CompiledPath {
+
+    private final String path;
+    private final String[] tokens;
+    private final boolean wildcard;
+
+    CompiledPath(String path) {
+        this.path = path;
+        this.tokens = PathUtils.split(path);
+        boolean wildcard = false;
+        for (String token : tokens) {
+            wildcard |= token.equals("*");
+        }
+        this.wildcard = wildcard;
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    String[] getTokens() {
+        return tokens;
+    }
+
+    /**
+     * Resolves the path one property at a time, which avoids the substrings created by {@link Node#get(String)}.
+     * <p/>
+     * Paths with wildcards are resolved by {@link Node#get(String)}, as their meaning depends on the Nodes involved.
+     */
+    Object get(Node root) {
+        if (wildcard) {
+            return root.get(path);
+        }
+        Object ret = root;
+        for (String token : tokens) {
+            if (ret == null) {
+                return null;
+            }
+            ret = ((Node) ret).get(token);
+        }
+        return ret;
+    }
+
+}
@@ -19,29 +19,73 @@
 
 package com.objectgraph.core.triggers;
 
-import com.esotericsoftware.reflectasm.MethodAccess;
 import com.objectgraph.core.Change;
 import com.objectgraph.core.Event;
 import com.objectgraph.core.Node;
+import com.objectgraph.core.Trigger;
 import com.objectgraph.utils.PathUtils;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 
 public class Dependency extends StaticControlledPathTrigger<Node> {
 
+    /**
+     * Typed handler for a Dependency with one parameter; it is called directly, without reflection.
+     */
+    public interface Function1<A, R> {
+        R apply(A a);
+    }
+
+    /**
+     * Typed handler for a Dependency with two parameters.
+     */
+    public interface Function2<A, B, R> {
+        R apply(A a, B b);
+    }
+
+    /**
+     * Typed handler for a Dependency with three parameters.
+     */
+    public interface Function3<A, B, C, R> {
+        R apply(A a, B b, C c);
+    }
+
     private final String handlerMethod;
     private final String controlledPath;
     private final List<String> parameterPaths;
     private final Object handlerObject;
+    private final Object function;
+
+    /**
+     * The compiled paths, published together so that concurrent fires never see half of them.
+     */
+    private static class CompiledPaths {
+
+        private final CompiledPath controlled;
+        private final CompiledPath[] parameters;
+
+        CompiledPaths(String controlled, List<String> parameters) {
+            this.controlled = new CompiledPath(controlled);
+            this.parameters = new CompiledPath[parameters.size()];
+            for (int i = 0; i < this.parameters.length; i++) {
+                this.parameters[i] = new CompiledPath(parameters.get(i));
+            }
+        }
+
+    }
+
+    // Compiled by the constructors; they are not serialized, so copies compile them again on the first fire
+    private transient volatile CompiledPaths compiledPaths;
+
+    // Resolved on the first fire, for the class of the handler; copies resolve it again
+    private transient volatile HandlerMethod handler;
 
     public Dependency(String controlled, String handlerMethod, String... parameters) {
-        super(controlled);
-        this.controlledPath = controlled;
-        this.handlerMethod = handlerMethod;
-        this.handlerObject = null;
-        this.parameterPaths = new ArrayList<>(Arrays.asList(parameters));
+        this(controlled, null, handlerMethod, parameters);
     }
 
     public Dependency(String controlled, Object handlerObject, String handlerMethod, String... parameters) {
@@ -49,21 +93,82 @@ public class Dependency extends StaticControlledPathTrigger<Node> {
         this.controlledPath = controlled;
         this.handlerMethod = handlerMethod;
         this.handlerObject = handlerObject;
+        this.function = null;
         this.parameterPaths = new ArrayList<>(Arrays.asList(parameters));
+        this.compiledPaths = new CompiledPaths(controlled, parameterPaths);
         if (handlerObject != null) {
             // TODO Add checks if possible
         }
     }
 
+    public <A> Dependency(String controlled, Function1<A, ?> function, String parameter) {
+        this((Object) function, controlled, parameter);
+    }
+
+    public <A, B> Dependency(String controlled, Function2<A, B, ?> function, String parameter1, String parameter2) {
+        this((Object) function, controlled, parameter1, parameter2);
+    }
+
+    public <A, B, C> Dependency(String controlled, Function3<A, B, C, ?> function,
+                                String parameter1, String parameter2, String parameter3) {
+        this((Object) function, controlled, parameter1, parameter2, parameter3);
+    }
+
+    private Dependency(Object function, String controlled, String... parameters) {
+        super(controlled);
+        if (function == null) {
+            throw new NullPointerException("The handler function cannot be null");
+        }
+        this.controlledPath = controlled;
+        this.handlerMethod = null;
+        this.handlerObject = null;
+        this.function = function;
+        this.parameterPaths = new ArrayList<>(Arrays.asList(parameters));
+        this.compiledPaths = new CompiledPaths(controlled, parameterPaths);
+    }
+
+    private CompiledPaths compiledPaths() {
+        CompiledPaths ret = compiledPaths;
+        if (ret == null) {
+            ret = new CompiledPaths(controlledPath, parameterPaths);
+            compiledPaths = ret;
+        }
+        return ret;
+    }
+
+    @Override
+    protected List<String> getSourcePaths() {
+        return Collections.unmodifiableList(parameterPaths);
+    }
+
+    @Override
+    public boolean isEquivalent(Trigger<?> other) {
+        if (!isSameKind(other)) {
+            return false;
+        }
+        Dependency dependency = (Dependency) other;
+        return dependency.controlledPath.equals(controlledPath) && dependency.parameterPaths.equals(parameterPaths)
+                && Objects.equals(dependency.handlerMethod, handlerMethod)
+                && dependency.handlerObject == handlerObject && dependency.function == function;
+    }
+
+    @Override
+    protected boolean isDeferred() {
+        // Dependencies are scheduled in topological order, so that each one is evaluated once per change
+        return true;
+    }
+
     @Override
     protected boolean isTriggeredBy(Event event) {
         if (event.getType() instanceof Change) {
-            if (PathUtils.isPrefix(event.getPath(), controlledPath)) {
+            CompiledPaths paths = compiledPaths();
+            String[] eventTokens = PathUtils.split(event.getPath());
+            if (PathUtils.isPrefix(eventTokens, paths.controlled.getTokens())) {
                 return true;
             }
 
-            for (String path : parameterPaths) {
-                if (PathUtils.samePrefix(event.getPath(), path)) {
+            for (CompiledPath path : paths.parameters) {
+                if (PathUtils.samePrefix(eventTokens, path.getTokens())) {
                     return true;
                 }
             }
@@ -73,13 +178,49 @@ public class Dependency extends StaticControlledPathTrigger<Node> {
 
     @Override
     protected void action(Event event) {
-        Object handler = handlerObject == null ? getNode() : handlerObject;
-        MethodAccess access = MethodAccess.get(handler.getClass());
-        Object[] params = new Object[parameterPaths.size()];
-        int i = 0;
-        for (String path : parameterPaths)
-            params[i++] = getNode().get(path);
-        getNode().set(controlledPath, access.invoke(handler, handlerMethod, params));
+        getNode().set(controlledPath, compute(getParameterValues()));
+    }
+
+    protected String getControlledPath() {
+        return controlledPath;
+    }
+
+    /**
+     * Reads the current values of the parameters.
+     *
+     * @return the values of the parameter paths, in order
+     */
+    protected Object[] getParameterValues() {
+        CompiledPath[] paths = compiledPaths().parameters;
+        Object[] params = new Object[paths.length];
+        for (int i = 0; i < params.length; i++) {
+            params[i] = paths[i].get(getNode());
+        }
+        return params;
+    }
+
+    /**
+     * Calls the handler with the given parameter values.
+     *
+     * @param params the values of the parameters, as returned by {@link #getParameterValues()}
+     * @return the new value of the controlled property
+     */
+    @SuppressWarnings("unchecked")
+    protected Object compute(Object[] params) {
+        if (function instanceof Function1) {
+            return ((Function1<Object, ?>) function).apply(params[0]);
+        }
+        if (function instanceof Function2) {
+            return ((Function2<Object, Object, ?>) function).apply(params[0], params[1]);
+        }
+        if (function instanceof Function3) {
+            return ((Function3<Object, Object, Object, ?>) function).apply(params[0], params[1], params[2]);
+        }
+
+        Object target = handlerObject == null ? getNode() : handlerObject;
+        HandlerMethod handler = HandlerMethod.resolve(this.handler, target, handlerMethod);
+        this.handler = handler;
+        return handler.invoke(target, params);
     }
 
 }
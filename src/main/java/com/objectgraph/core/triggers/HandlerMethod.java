@@ -0,0 +1,55 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core.triggers;
+
+import com.esotericsoftware.reflectasm.MethodAccess;
+
+/**
+ * A handler method resolved for one class.
+ * <p/>
+ * Instances are immutable, so a Trigger can cache the last one in a volatile field and share it between threads.
+ */
+class HandlerMethod {
+
+    private final Class<?> type;
+    private final MethodAccess access;
+    private final int index;
+
+    private HandlerMethod(Class<?> type, String name) {
+        this.type = type;
+        this.access = MethodAccess.get(type);
+        this.index = access.getIndex(name);
+    }
+
+    /**
+     * Returns the cached method if it was resolved for the class of the handler, or resolves it again.
+     */
+    static HandlerMethod resolve(HandlerMethod cached, Object handler, String name) {
+        if (cached != null && cached.type == handler.getClass()) {
+            return cached;
+        }
+        return new HandlerMethod(handler.getClass(), name);
+    }
+
+    Object invoke(Object handler, Object... params) {
+        return access.invoke(handler, index, params);
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core.triggers;
+
+import com.objectgraph.core.Event;
+import com.objectgraph.core.Invalidation;
+import com.objectgraph.core.Node;
+import com.objectgraph.core.Trigger;
+import com.objectgraph.utils.PathUtils;
+
+/**
+ * A {@link Dependency} that computes its controlled property only when it is read.
+ * <p/>
+ * When a parameter changes, the controlled property is only marked as stale (see {@link Node#isStale(String)}): the
+ * handler is called, and the result cached in the property, the next time the property is read with
+ * {@link Node#get(String)}, or when its Node is copied or archived. Reading the field of the property directly returns
+ * the outdated value.
+ * <p/>
+ * Each invalidation fires an {@link Invalidation} Event from the Node that owns the property, so that the Triggers that
+ * depend on it run again. If {@link #setNotifying(boolean)} is enabled, the Event also reaches the listeners that are
+ * not Nodes, so that they know that the value changed without computing it.
+ */
+public class LazyDependency extends Dependency {
+
+    private boolean notifying;
+
+    public LazyDependency(String controlled, String handlerMethod, String... parameters) {
+        super(controlled, handlerMethod, parameters);
+    }
+
+    public LazyDependency(String controlled, Object handlerObject, String handlerMethod, String... parameters) {
+        super(controlled, handlerObject, handlerMethod, parameters);
+    }
+
+    public <A> LazyDependency(String controlled, Function1<A, ?> function, String parameter) {
+        super(controlled, function, parameter);
+    }
+
+    public <A, B> LazyDependency(String controlled, Function2<A, B, ?> function, String parameter1, String parameter2) {
+        super(controlled, function, parameter1, parameter2);
+    }
+
+    public <A, B, C> LazyDependency(String controlled, Function3<A, B, C, ?> function,
+                                    String parameter1, String parameter2, String parameter3) {
+        super(controlled, function, parameter1, parameter2, parameter3);
+    }
+
+    public boolean isNotifying() {
+        return notifying;
+    }
+
+    public void setNotifying(boolean notifying) {
+        this.notifying = notifying;
+    }
+
+    @Override
+    public boolean isEquivalent(Trigger<?> other) {
+        return super.isEquivalent(other) && ((LazyDependency) other).notifying == notifying;
+    }
+
+    @Override
+    protected boolean isDeferred() {
+        // Invalidating is cheap, and must be visible to the Triggers that run in the same propagation
+        return false;
+    }
+
+    @Override
+    protected void action(Event event) {
+        String controlled = getControlledPaths().get(0);
+        Node owner = invalidate(controlled);
+        if (owner != null) {
+            String property = PathUtils.toLocalProperty(controlled);
+            owner.fireEvent(new Event(property, new Invalidation(owner.getRootedProperty(property), notifying)));
+        }
+    }
+
+    @Override
+    protected void refresh() {
+        super.action(null);
+    }
+
+}
@@ -19,20 +19,29 @@
 
 package com.objectgraph.core.triggers;
 
-import com.esotericsoftware.reflectasm.MethodAccess;
 import com.objectgraph.core.Change;
 import com.objectgraph.core.Event;
 import com.objectgraph.core.Node;
+import com.objectgraph.core.Trigger;
 
 public class NodeActionTrigger<N extends Node> extends StaticControlledPathTrigger<N> {
 
     private final String handlerMethod;
 
+    // Resolved on the first fire: it is not serialized, so copies resolve it again
+    private transient volatile HandlerMethod handler;
+
     public NodeActionTrigger(String handlerMethod, String... controlled) {
         super(controlled);
         this.handlerMethod = handlerMethod;
     }
 
+    @Override
+    public boolean isEquivalent(Trigger<?> other) {
+        return isSameKind(other) && ((NodeActionTrigger<?>) other).handlerMethod.equals(handlerMethod)
+                && other.getControlledPaths().equals(getControlledPaths());
+    }
+
     @Override
     protected boolean isTriggeredBy(Event event) {
         return (event.getType() instanceof Change);
@@ -40,8 +49,10 @@ public class NodeActionTrigger<N extends Node> extends StaticControlledPathTrigg
 
     @Override
     protected void action(Event event) {
-        MethodAccess access = MethodAccess.get(getNode().getClass());
-        access.invoke(getNode(), handlerMethod);
+        N node = getNode();
+        HandlerMethod handler = HandlerMethod.resolve(this.handler, node, handlerMethod);
+        this.handler = handler;
+        handler.invoke(node);
     }
 
 }
@@ -24,18 +24,25 @@ import com.objectgraph.core.EventRecipient;
 import com.objectgraph.core.Node;
 import com.objectgraph.core.RootedProperty;
 import com.objectgraph.pluginsystem.PluginManager;
+import javafx.application.Platform;
 import javafx.event.EventHandler;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 
 public final class EditorManager {
 
     private static final List<PropertyEditor> editors = PluginManager.getImplementations(PropertyEditor.class, Collections.<ErrorCheck<?, ?>>emptyList());
-    private static final Map<Class<?>, Class<PropertyEditor>> cachedEditors = new HashMap<>();
-    private static final Map<Class<?>, Map<Class<?>, Double>> distances = new HashMap<>();
+    private static final ConcurrentMap<Class<?>, Class<PropertyEditor>> cachedEditors = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Class<?>, ConcurrentMap<Class<?>, Double>> distances = new ConcurrentHashMap<>();
+    // Detached editors, ready to be attached again
+    private static final ConcurrentMap<Class<?>, Queue<PropertyEditor>> pools = new ConcurrentHashMap<>();
+    private static final int MAX_POOL_SIZE = 32;
 
     private EditorManager() {
         // Utility class, no instances
@@ -75,34 +82,125 @@ public final class EditorManager {
     }
 
     public static PropertyEditor getBestEditor(RootedProperty model, boolean runtime, boolean attach) {
-        Class<?> valueType = model.getValueType(runtime);
+        Class<PropertyEditor> type = getBestEditorType(model.getValueType(runtime));
+        if (type == null) {
+            return null;
+        }
+
+        PropertyEditor best = acquireEditor(type);
+        return attach ? best.attach(model) : best;
+    }
+
+    /**
+     * Detaches an editor that is no longer displayed, so that it can be returned again by
+     * {@link #getBestEditor(RootedProperty, boolean, boolean)}.
+     * <p/>
+     * Editors that are still in a Scene are only detached.
+     *
+     * @param editor the editor
+     */
+    public static void releaseEditor(PropertyEditor editor) {
+        editor.detach();
+        if (editor.getParent() != null || editor.getScene() != null) {
+            return;
+        }
+        Queue<PropertyEditor> pool = getPool(editor.getClass());
+        if (pool.size() < MAX_POOL_SIZE) {
+            pool.offer(editor);
+        }
+    }
 
-        if (cachedEditors.containsKey(valueType)) {
-            PropertyEditor cached = instantiateEditor(cachedEditors.get(valueType));
-            if (cached.canEdit(model.getValueType(runtime))) {
-                return attach ? cached.attach(model) : cached;
+    /**
+     * Finds, in a background thread, the best editor for every type handled by the available editors, and prepares a
+     * few instances of each editor, so that their FXML is already loaded when they are first needed.
+     * <p/>
+     * Editors are controls, so they are created in the JavaFX Application Thread, one at a time.
+     *
+     * @param count the number of instances of each editor
+     */
+    public static void preloadEditors(final int count) {
+        Thread loader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Set<Class<PropertyEditor>> types = new LinkedHashSet<>();
+                for (PropertyEditor editor : getEditors()) {
+                    for (Class<?> valueType : editor.getBaseEditableTypes()) {
+                        getBestEditorType(valueType);
+                    }
+                    types.add((Class<PropertyEditor>) editor.getClass());
+                }
+                for (Class<PropertyEditor> type : types) {
+                    fillPool(type, count);
+                }
+            }
+        }, "object-graph editor preloader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    private static Class<PropertyEditor> getBestEditorType(Class<?> valueType) {
+        if (valueType != null) {
+            Class<PropertyEditor> cached = cachedEditors.get(valueType);
+            if (cached != null) {
+                return cached;
             }
         }
 
-        List<PropertyEditor> editors = getEditors();
-        Iterator<PropertyEditor> it = editors.iterator();
         PropertyEditor best = null;
-        while (it.hasNext()) {
-            PropertyEditor e = it.next();
-            if (e.canEdit(model.getValueType(runtime))) {
+        for (PropertyEditor e : getEditors()) {
+            if (e.canEdit(valueType)) {
                 best = updateBestEditor(valueType, best, e);
             }
         }
 
-        if (best != null) {
-            cachedEditors.put(valueType, (Class<PropertyEditor>) best.getClass());
-            best = instantiateEditor((Class<PropertyEditor>) best.getClass());
-            if (attach) {
-                best.attach(model);
+        if (best == null) {
+            return null;
+        }
+        Class<PropertyEditor> ret = (Class<PropertyEditor>) best.getClass();
+        if (valueType != null) {
+            cachedEditors.putIfAbsent(valueType, ret);
+        }
+        return ret;
+    }
+
+    private static PropertyEditor acquireEditor(Class<PropertyEditor> type) {
+        PropertyEditor pooled = getPool(type).poll();
+        return pooled != null ? pooled : instantiateEditor(type);
+    }
+
+    private static Queue<PropertyEditor> getPool(Class<?> type) {
+        Queue<PropertyEditor> pool = pools.get(type);
+        if (pool == null) {
+            pool = new ConcurrentLinkedQueue<>();
+            Queue<PropertyEditor> existing = pools.putIfAbsent(type, pool);
+            if (existing != null) {
+                pool = existing;
             }
         }
+        return pool;
+    }
 
-        return best;
+    private static void fillPool(final Class<PropertyEditor> type, final int count) {
+        if (count <= 0) {
+            return;
+        }
+        // Each editor is created in its own runnable, so that the events queued meanwhile are not delayed
+        Platform.runLater(new Runnable() {
+            @Override
+            public void run() {
+                Queue<PropertyEditor> pool = getPool(type);
+                if (pool.size() >= MAX_POOL_SIZE) {
+                    return;
+                }
+                try {
+                    pool.offer(type.newInstance());
+                } catch (InstantiationException | IllegalAccessException e) {
+                    e.printStackTrace();
+                    return;
+                }
+                fillPool(type, count - 1);
+            }
+        });
     }
 
     private static PropertyEditor instantiateEditor(Class<PropertyEditor> type) {
@@ -145,13 +243,21 @@ public final class EditorManager {
     }
 
     private static double distance(Class<?> dst, Class<?> src) {
-        if (!distances.containsKey(src)) {
-            distances.put(src, new HashMap<Class<?>, Double>());
-            distances.get(src).put(src, 0.0);
-            distances.get(src).put(null, Double.POSITIVE_INFINITY);
+        if (dst == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+        ConcurrentMap<Class<?>, Double> fromSrc = distances.get(src);
+        if (fromSrc == null) {
+            fromSrc = new ConcurrentHashMap<>();
+            fromSrc.put(src, 0.0);
+            ConcurrentMap<Class<?>, Double> existing = distances.putIfAbsent(src, fromSrc);
+            if (existing != null) {
+                fromSrc = existing;
+            }
         }
-        if (distances.get(src).containsKey(dst)) {
-            return distances.get(src).get(dst);
+        Double cached = fromSrc.get(dst);
+        if (cached != null) {
+            return cached;
         } else {
             double distance = 1 + distance(dst.getSuperclass(), src);
             for (Class<?> i : dst.getInterfaces()) {
@@ -160,7 +266,7 @@ public final class EditorManager {
                     distance = current;
                 }
             }
-            distances.get(src).put(dst, distance);
+            fromSrc.put(dst, distance);
             return distance;
         }
     }
@@ -22,7 +22,6 @@ package com.objectgraph.gui;
 import com.objectgraph.core.Event;
 import com.objectgraph.core.EventRecipient;
 import com.objectgraph.core.RootedProperty;
-import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
 import javafx.scene.Parent;
@@ -30,12 +29,30 @@ import javafx.scene.layout.AnchorPane;
 import org.pcollections.PSet;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 public abstract class PropertyEditor extends AnchorPane implements Initializable, EventRecipient {
 
     private RootedProperty model;
     private boolean listening = true;
+    private final List<Event> pendingEvents = new ArrayList<>();
+    private final Runnable viewUpdate = new Runnable() {
+        @Override
+        public void run() {
+            List<Event> events;
+            synchronized (pendingEvents) {
+                events = new ArrayList<>(pendingEvents);
+                pendingEvents.clear();
+            }
+            if (listening && getModel() != null) {
+                listening = false;
+                updateView(events);
+                listening = true;
+            }
+        }
+    };
 
     public PropertyEditor(String fxmlFile) {
         try {
@@ -79,6 +96,10 @@ public abstract class PropertyEditor extends AnchorPane implements Initializable
             model.getRoot().removeParentPath(this, "");
             model = null;
         }
+        ViewUpdateDispatcher.cancel(this);
+        synchronized (pendingEvents) {
+            pendingEvents.clear();
+        }
     }
 
     public abstract boolean requiresViewUpdate(Event event);
@@ -94,18 +115,44 @@ public abstract class PropertyEditor extends AnchorPane implements Initializable
     }
 
     @Override
-    public void handleEvent(final Event e, PSet<EventRecipient> visited) {
-        // An event can occur in a thread that is not the JavaFX GUI Thread
-        Platform.runLater(new Runnable() {
-            @Override
-            public void run() {
-                if (listening && requiresViewUpdate(e)) {
-                    listening = false;
-                    updateView();
-                    listening = true;
-                }
+    public void handleEvent(Event e, PSet<EventRecipient> visited) {
+        // An event can occur in a thread that is not the JavaFX GUI Thread: the events received until the next pulse
+        // lead to a single update of the view
+        synchronized (pendingEvents) {
+            pendingEvents.add(e);
+        }
+        ViewUpdateDispatcher.request(this, viewUpdate);
+    }
+
+    /**
+     * Checks if a batch of events, received since the last update, requires the view to be updated.
+     * <p/>
+     * The default implementation calls {@link #requiresViewUpdate(Event)} on each event.
+     *
+     * @param events the events, in the order they were received
+     * @return true if the view has to be updated
+     */
+    protected boolean requiresViewUpdate(List<Event> events) {
+        for (Event event : events) {
+            if (requiresViewUpdate(event)) {
+                return true;
             }
-        });
+        }
+        return false;
+    }
+
+    /**
+     * Updates the view after a batch of events.
+     * <p/>
+     * The default implementation calls {@link #updateView()} if {@link #requiresViewUpdate(List)} is true. Editors
+     * that can apply the events one by one, without rebuilding the whole view, can override this method.
+     *
+     * @param events the events, in the order they were received
+     */
+    protected void updateView(List<Event> events) {
+        if (requiresViewUpdate(events)) {
+            updateView();
+        }
     }
 
 }
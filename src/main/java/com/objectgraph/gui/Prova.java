@@ -86,6 +86,8 @@ public class Prova extends Application {
 
     @Override
     public void start(Stage stage) throws Exception {
+        EditorManager.preloadEditors(4);
+
         PropertyEditor[] editors = {
                 EditorManager.getBestEditor(node.getRootedProperty("s"), false, true),
                 EditorManager.getBestEditor(node.getRootedProperty("node"), false, true),
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.gui;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Delivers view updates to the JavaFX Application Thread, at most once per animation pulse for each view.
+ * <p/>
+ * Events can reach an editor from any thread, and a single change of the graph can fire thousands of them. Instead of
+ * posting a Runnable for each Event, views {@link #request(Object, Runnable)} an update: requests from the same view
+ * are merged until the next pulse, when the latest update of every view is run once. The pulse timer only runs while
+ * there are pending updates.
+ */
+public final class ViewUpdateDispatcher {
+
+    private static final Object lock = new Object();
+    private static Map<Object, Runnable> pending = new LinkedHashMap<>();
+    private static boolean running = false;
+
+    private static final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            flush();
+        }
+    };
+
+    private ViewUpdateDispatcher() {
+        // Utility class, no instances
+    }
+
+    /**
+     * Schedules an update of a view for the next animation pulse, replacing the one already scheduled for it.
+     * <p/>
+     * Can be called from any thread.
+     *
+     * @param view the view to update
+     * @param update the update, run on the JavaFX Application Thread
+     */
+    public static void request(Object view, Runnable update) {
+        synchronized (lock) {
+            pending.put(view, update);
+            if (running) {
+                return;
+            }
+            running = true;
+        }
+
+        if (Platform.isFxApplicationThread()) {
+            timer.start();
+        } else {
+            Platform.runLater(new Runnable() {
+                @Override
+                public void run() {
+                    timer.start();
+                }
+            });
+        }
+    }
+
+    /**
+     * Removes the update scheduled for a view, if any.
+     *
+     * @param view the view
+     */
+    public static void cancel(Object view) {
+        synchronized (lock) {
+            pending.remove(view);
+        }
+    }
+
+    private static void flush() {
+        Map<Object, Runnable> updates;
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                timer.stop();
+                running = false;
+                return;
+            }
+            updates = pending;
+            pending = new LinkedHashMap<>();
+        }
+
+        // Updates requested while flushing are run on the next pulse
+        for (Runnable update : updates.values()) {
+            try {
+                update.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+}
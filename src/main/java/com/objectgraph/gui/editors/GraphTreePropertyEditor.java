@@ -0,0 +1,242 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.gui.editors;
+
+import com.google.common.collect.Sets;
+import com.objectgraph.core.*;
+import com.objectgraph.gui.EditorManager;
+import com.objectgraph.gui.PropertyEditor;
+import com.objectgraph.utils.ClassUtils;
+import com.objectgraph.utils.PathUtils;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.collections.ObservableList;
+import javafx.event.ActionEvent;
+import javafx.event.EventHandler;
+import javafx.fxml.FXML;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.TreeItem;
+import javafx.scene.control.TreeView;
+
+import java.net.URL;
+import java.util.*;
+
+/**
+ * Shows a whole graph of Nodes as a tree, starting from the edited property.
+ * <p/>
+ * The rows of a Node are created only when it is expanded, and dropped when it is collapsed, so that very large (or
+ * cyclic) graphs can be browsed. The editor listens to the graph once, from the root of its model: the path of each
+ * incoming Event is followed through the rows that are loaded, and only the row it reaches is updated.
+ */
+public class GraphTreePropertyEditor extends PropertyEditor {
+
+    private static class PropertyItem extends TreeItem<String> {
+
+        private final Node owner;
+        private final String property;
+        private Object shown;
+        // The rows of the children, by property, while they are loaded
+        private Map<String, PropertyItem> loaded;
+
+        private PropertyItem(Node owner, String property) {
+            this.owner = owner;
+            this.property = property;
+            refresh();
+            expandedProperty().addListener(new ChangeListener<Boolean>() {
+                @Override
+                public void changed(ObservableValue<? extends Boolean> value, Boolean wasExpanded, Boolean expanded) {
+                    if (!expanded) {
+                        unload();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return !(shown instanceof Node) || ((Node) shown).getProperties().isEmpty();
+        }
+
+        @Override
+        public ObservableList<TreeItem<String>> getChildren() {
+            if (loaded == null && isExpanded() && !isLeaf()) {
+                load();
+            }
+            return super.getChildren();
+        }
+
+        private void update(Event event) {
+            refresh();
+            if (event.getType() instanceof ListChange && loaded != null) {
+                // The indices of the elements have changed
+                reload();
+            }
+        }
+
+        private void refresh() {
+            Object value;
+            try {
+                value = owner.get(property);
+            } catch (PropertyNotExistsException ex) {
+                value = null;
+            }
+            setValue(property + " = " + describe(value));
+            if (value != shown) {
+                shown = value;
+                if (loaded != null) {
+                    reload();
+                }
+            }
+        }
+
+        private void load() {
+            loaded = new HashMap<>();
+            List<PropertyItem> children = new ArrayList<>();
+            Node node = (Node) shown;
+            for (String child : node.getProperties()) {
+                PropertyItem item = new PropertyItem(node, child);
+                loaded.put(child, item);
+                children.add(item);
+            }
+            super.getChildren().setAll(children);
+        }
+
+        private void unload() {
+            loaded = null;
+            super.getChildren().clear();
+        }
+
+        private void reload() {
+            unload();
+            if (isExpanded() && !isLeaf()) {
+                load();
+            }
+        }
+
+        private static String describe(Object value) {
+            if (value == null) {
+                return "<null>";
+            } else if (value instanceof List) {
+                return value.getClass().getSimpleName() + " (" + ((List<?>) value).size() + ")";
+            } else if (value instanceof Node) {
+                return value.getClass().getSimpleName();
+            } else {
+                return value.toString();
+            }
+        }
+    }
+
+    @FXML
+    private TreeView<String> treeView;
+
+    private PropertyItem rootItem;
+
+    public GraphTreePropertyEditor() {
+        super("GraphTreeEditorView.fxml");
+    }
+
+    @Override
+    public void initialize(URL url, ResourceBundle resourceBundle) {
+        ContextMenu menu = new ContextMenu();
+
+        MenuItem editElementItem = new MenuItem("Edit in new window");
+        editElementItem.setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent actionEvent) {
+                editInNewWindow();
+            }
+        });
+
+        menu.getItems().add(editElementItem);
+
+        treeView.setContextMenu(menu);
+    }
+
+    private void editInNewWindow() {
+        TreeItem<String> selected = treeView.getSelectionModel().getSelectedItem();
+        if (selected instanceof PropertyItem) {
+            PropertyItem item = (PropertyItem) selected;
+            EditorManager.openBestEditorStage(item.owner.getRootedProperty(item.property), false, false);
+        }
+    }
+
+    @Override
+    public boolean requiresViewUpdate(Event event) {
+        return PathUtils.isPrefix(getModel().getProperty(), event.getPath());
+    }
+
+    @Override
+    public void updateView() {
+        if (getModel() == null) {
+            rootItem = null;
+        } else {
+            rootItem = new PropertyItem(getModel().getRoot(), getModel().getProperty());
+            rootItem.setExpanded(true);
+        }
+        treeView.setRoot(rootItem);
+    }
+
+    @Override
+    protected void updateView(List<Event> events) {
+        if (rootItem == null) {
+            updateView();
+            return;
+        }
+
+        int depth = PathUtils.split(getModel().getProperty()).length;
+        for (Event event : events) {
+            if (!requiresViewUpdate(event)) {
+                continue;
+            }
+            // Events below rows that are not loaded are not shown
+            String[] tokens = PathUtils.split(event.getPath());
+            PropertyItem item = rootItem;
+            for (int i = depth; i < tokens.length && item != null; i++) {
+                item = item.loaded == null ? null : item.loaded.get(tokens[i]);
+            }
+            if (item != null) {
+                item.update(event);
+            }
+        }
+    }
+
+    @Override
+    public void detach() {
+        super.detach();
+        rootItem = null;
+        treeView.setRoot(null);
+    }
+
+    @Override
+    public boolean canEdit(Class<?> valueType) {
+        return valueType != null && Node.class.isAssignableFrom(valueType) && ClassUtils.isConcrete(valueType);
+    }
+
+    @Override
+    public Set<Class<?>> getBaseEditableTypes() {
+        return Sets.<Class<?>>newHashSet(Node.class);
+    }
+
+    public TreeView<String> getTreeView() {
+        return treeView;
+    }
+
+}
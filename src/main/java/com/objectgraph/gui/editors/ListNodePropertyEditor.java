@@ -23,10 +23,11 @@ import com.google.common.collect.Sets;
 import com.objectgraph.core.*;
 import com.objectgraph.gui.EditorManager;
 import com.objectgraph.gui.PropertyEditor;
+import com.objectgraph.gui.ViewUpdateDispatcher;
 import com.objectgraph.core.RootedProperty;
 import com.objectgraph.utils.ClassUtils;
 import com.objectgraph.utils.PathUtils;
-import javafx.application.Platform;
+import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.fxml.FXML;
@@ -36,37 +37,86 @@ import org.pcollections.PSet;
 
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.ResourceBundle;
 import java.util.Set;
 
 public class ListNodePropertyEditor extends PropertyEditor {
 
+    // The Model-View-Controller is provided by the Object Graph system, so the ListView only holds placeholders
+    private static final Object ITEM = Boolean.TRUE;
+
     private static class ListItemViewer extends Label implements EventRecipient {
 
+        private ListNode<?> list;
+        private int index = -1;
         private RootedProperty itemModel;
 
-        public void setItemModel(RootedProperty model) {
-            this.itemModel = model;
-            itemModel.getRoot().addParentPath(this, "");
-            handleEvent(null, null);
+        private final Runnable textUpdate = new Runnable() {
+            @Override
+            public void run() {
+                if (itemModel == null) {
+                    return;
+                }
+                try {
+                    if (itemModel.getValue() != null)
+                        setText(itemModel.getValue().toString());
+                    else
+                        setText("<null>");
+                } catch (PropertyNotExistsException ex) {
+                    setText("");
+                }
+            }
+        };
+
+        public void bind(ListNode<?> list, int index) {
+            if (list == this.list && index == this.index) {
+                return;
+            }
+            unbind();
+            this.list = list;
+            this.index = index;
+            this.itemModel = list.getRootedProperty(String.valueOf(index));
+            list.addParentPath(this, "");
+            ViewUpdateDispatcher.request(this, textUpdate);
+        }
+
+        public void unbind() {
+            if (list != null) {
+                list.removeParentPath(this, "");
+                ViewUpdateDispatcher.cancel(this);
+                list = null;
+                index = -1;
+                itemModel = null;
+            }
         }
 
         @Override
         public void handleEvent(Event e, PSet<EventRecipient> visited) {
-            Platform.runLater(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        if (itemModel.getValue() != null)
-                            setText(itemModel.getValue().toString());
-                        else
-                            setText("<null>");
-                    } catch (PropertyNotExistsException ex) {
-                        setText("");
+            if (affects(e)) {
+                ViewUpdateDispatcher.request(this, textUpdate);
+            }
+        }
+
+        private boolean affects(Event e) {
+            // Events can arrive from other threads while the viewer is bound again
+            RootedProperty model = itemModel;
+            if (model == null) {
+                return false;
+            }
+            if (e.getType() instanceof ListChange && e.getPath().isEmpty()) {
+                // Only the elements from the first changed index onwards are shifted; changes of nested lists are
+                // matched by path below
+                int index = Integer.parseInt(model.getProperty());
+                for (int changed : ((ListChange) e.getType()).getIndices()) {
+                    if (changed <= index) {
+                        return true;
                     }
                 }
-            });
+                return false;
+            }
+            return PathUtils.isPrefix(model.getProperty(), e.getPath());
         }
     }
 
@@ -112,8 +162,8 @@ public class ListNodePropertyEditor extends PropertyEditor {
                         super.cancelEdit();
                         if (getGraphic() != viewer) {
                             PropertyEditor editor = (PropertyEditor) getGraphic();
-                            editor.detach();
                             setGraphic(viewer);
+                            EditorManager.releaseEditor(editor);
                             getStyleClass().remove("editing");
                         }
                     }
@@ -121,10 +171,12 @@ public class ListNodePropertyEditor extends PropertyEditor {
                     @Override
                     protected void updateItem(Object item, boolean empty) {
                         super.updateItem(item, empty);
-                        if (!empty) {
+                        if (empty || getModel() == null) {
+                            viewer.unbind();
+                            setGraphic(null);
+                        } else {
                             ListNode list = getModel().getValue();
-                            RootedProperty itemModel = list.getRootedProperty(String.valueOf(getIndex()));
-                            viewer.setItemModel(itemModel);
+                            viewer.bind(list, getIndex());
                             setGraphic(viewer);
                         }
                     }
@@ -209,16 +261,68 @@ public class ListNodePropertyEditor extends PropertyEditor {
 
     @Override
     public void updateView() {
+        listView.getItems().setAll(Collections.nCopies(getListSize(), ITEM));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected void updateView(List<Event> events) {
+        ObservableList<Object> items = listView.getItems();
+        try {
+            for (Event event : events) {
+                if (requiresViewUpdate(event)) {
+                    applyChange(items, event.getType(ListChange.class));
+                }
+            }
+        } catch (IndexOutOfBoundsException ex) {
+            // The events do not match the items (for example, the list has been replaced)
+            updateView();
+            return;
+        }
+        if (items.size() != getListSize()) {
+            updateView();
+        }
+    }
+
+    @Override
+    public void detach() {
+        super.detach();
         listView.getItems().clear();
-        // The Model-View-Controller is provided by the Object Graph system, so we just have
-        // to fill the ListView with some fake (not null) content
-        if (getModel() != null) {
-            List<Object> fakeContents = new ArrayList<>();
-            for(int i = 0; i < getModel().getValue(List.class).size(); i++) {
-                fakeContents.add(i);
+    }
+
+    private void applyChange(List<Object> items, ListChange change) {
+        List<Integer> indices = change.getIndices();
+        if (change.getChangeType() == ListChange.ListChangeType.ADD) {
+            // Indices are the final positions of the new elements, in increasing order
+            int i = 0;
+            while (i < indices.size()) {
+                int end = i + 1;
+                while (end < indices.size() && indices.get(end) == indices.get(end - 1) + 1) {
+                    end++;
+                }
+                items.addAll(indices.get(i), Collections.nCopies(end - i, ITEM));
+                i = end;
             }
-            listView.getItems().addAll(fakeContents);
+        } else {
+            // Indices are the positions before the removal, in increasing order: runs are removed from the last
+            int i = indices.size() - 1;
+            while (i >= 0) {
+                int start = i;
+                while (start > 0 && indices.get(start - 1) == indices.get(start) - 1) {
+                    start--;
+                }
+                items.subList(indices.get(start), indices.get(i) + 1).clear();
+                i = start - 1;
+            }
+        }
+    }
+
+    private int getListSize() {
+        if (getModel() == null) {
+            return 0;
         }
+        List<?> list = getModel().getValue(List.class);
+        return list == null ? 0 : list.size();
     }
 
     @Override
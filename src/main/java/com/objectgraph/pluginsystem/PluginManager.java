@@ -112,6 +112,13 @@ public final class PluginManager {
         return ret;
     }
 
+    public static <T> Set<Class<? extends T>> getSubTypes(Class<T> baseType) {
+        if (internal == null)
+            throw new PluginManagerNotInitializedException();
+
+        return new HashSet<>(internal.getSubTypesOf(baseType));
+    }
+
     public static List<?> getPossibleValues(RootedProperty model, Error.Level minLevel) {
         return PluginManager.getImplementations(model.getValueType(false), model.getErrorChecks(minLevel));
     }
@@ -22,7 +22,7 @@ package com.objectgraph.utils;
 public final class PathUtils {
 
     private static final String SPLITTER = "\\.";
-    private static final String ANY = "*";
+    public static final String ANY = "*";
 
     private PathUtils() {
     }
@@ -99,6 +99,30 @@ public final class PathUtils {
         return standardPathComparison(tokens1, tokens2, tokens1.length);
     }
 
+    /**
+     * Splits a path in its tokens, so that it can be compared many times without being split again.
+     *
+     * @param path the path to split
+     * @return the tokens of the path, or an empty array for the empty path
+     */
+    public static String[] split(String path) {
+        if (path.isEmpty()) {
+            return new String[0];
+        }
+        return path.split(SPLITTER);
+    }
+
+    public static boolean isPrefix(String[] prefixTokens, String[] pathTokens) {
+        if (prefixTokens.length > pathTokens.length) {
+            return false;
+        }
+        return standardPathComparison(prefixTokens, pathTokens, prefixTokens.length);
+    }
+
+    public static boolean samePrefix(String[] tokens1, String[] tokens2) {
+        return standardPathComparison(tokens1, tokens2, Math.min(tokens1.length, tokens2.length));
+    }
+
     private static boolean standardPathComparison(String[] path1, String[] path2, int l) {
         for (int i = 0; i < l; i++) {
             if (path1[i].equals(ANY) || path2[i].equals(ANY) || path1[i].equals(path2[i])) {
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import org.junit.Test;
+import org.pcollections.PSet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AsyncEventRecipientTest {
+
+    private static class TestNode extends ObjectNode {
+        @Property int a;
+        @Property int b;
+    }
+
+    private static class Recorder implements EventRecipient {
+        private final List<Object> values = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch gate;
+
+        Recorder(CountDownLatch gate) {
+            this.gate = gate;
+        }
+
+        @Override
+        public void handleEvent(Event e, PSet<EventRecipient> visited) {
+            try {
+                gate.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            values.add(e.getPath() + "=" + e.getType(SetProperty.class).getNewValue());
+        }
+    }
+
+    private void await(AsyncEventRecipient async) throws InterruptedException {
+        for (int i = 0; i < 1000 && async.getPendingCount() > 0; i++) {
+            Thread.sleep(5);
+        }
+        Thread.sleep(20);
+    }
+
+    @Test
+    public void testOrderAndWriterNotStalled() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch gate = new CountDownLatch(1);
+        Recorder recorder = new Recorder(gate);
+        AsyncEventRecipient async = new AsyncEventRecipient(recorder, executor, 1000,
+                AsyncEventRecipient.OverflowPolicy.BLOCK);
+        TestNode node = new TestNode();
+        node.addParentPath(async, "");
+
+        // The recipient is blocked, but the writer goes on
+        for (int i = 1; i <= 100; i++) {
+            node.set("a", i);
+        }
+        assertTrue(recorder.values.isEmpty());
+        gate.countDown();
+        await(async);
+
+        assertEquals(100, recorder.values.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("a=" + (i + 1), recorder.values.get(i));
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void testCoalesce() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch gate = new CountDownLatch(1);
+        Recorder recorder = new Recorder(gate);
+        AsyncEventRecipient async = new AsyncEventRecipient(recorder, executor, 2,
+                AsyncEventRecipient.OverflowPolicy.COALESCE);
+        TestNode node = new TestNode();
+        node.addParentPath(async, "");
+
+        node.set("a", 1);
+        Thread.sleep(50);
+        // The first event is being delivered, the next two fill the mailbox
+        node.set("a", 2);
+        node.set("b", 1);
+        for (int i = 3; i <= 50; i++) {
+            node.set("a", i);
+        }
+        gate.countDown();
+        await(async);
+
+        assertEquals(3, recorder.values.size());
+        assertEquals("a=1", recorder.values.get(0));
+        assertEquals("a=50", recorder.values.get(1));
+        assertEquals("b=1", recorder.values.get(2));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testDrop() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch gate = new CountDownLatch(1);
+        Recorder recorder = new Recorder(gate);
+        AsyncEventRecipient async = new AsyncEventRecipient(recorder, executor, 5,
+                AsyncEventRecipient.OverflowPolicy.DROP);
+        TestNode node = new TestNode();
+        node.addParentPath(async, "");
+
+        for (int i = 1; i <= 20; i++) {
+            node.set("a", i);
+        }
+        assertTrue(async.getDroppedCount() >= 14);
+        gate.countDown();
+        await(async);
+        assertEquals(20 - async.getDroppedCount(), recorder.values.size());
+        executor.shutdown();
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import com.objectgraph.core.triggers.Dependency;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ClassHelpersTest {
+
+    private static class TestNode extends ObjectNode {
+        static final Dependency X = new Dependency("x", "computeX", "a");
+
+        static {
+            addClassTrigger(TestNode.class, X);
+            addClassTrigger(TestNode.class, new Dependency("y", "computeY", "x"));
+            addClassErrorCheck(TestNode.class, new ErrorCheck<TestNode, Integer>(Error.Level.SEVERE, "a") {
+                @Override
+                protected String getMessage(Integer value) {
+                    return value > getNode().limit ? "Too large" : null;
+                }
+            });
+        }
+
+        @Property int a;
+        @Property int x;
+        @Property int y;
+
+        int limit = 10;
+        int computations;
+
+        public TestNode() {
+            initialiseNode();
+        }
+
+        protected int computeX(int a) {
+            computations++;
+            return a + 1;
+        }
+
+        protected int computeY(int x) {
+            computations++;
+            return 2 * x;
+        }
+    }
+
+    private static class TestSubNode extends TestNode {
+        @Property int z;
+
+        static {
+            addClassTrigger(TestSubNode.class, new Dependency("z", "computeZ", "y"));
+        }
+
+        protected int computeZ(int y) {
+            return y + 100;
+        }
+    }
+
+    @Test
+    public void testSharedTriggers() {
+        TestNode node1 = new TestNode();
+        TestNode node2 = new TestNode();
+        node1.set("a", 1);
+        node2.set("a", 5);
+
+        assertEquals(2, node1.x);
+        assertEquals(4, node1.y);
+        assertEquals(6, node2.x);
+        assertEquals(12, node2.y);
+        assertEquals(2, node1.computations);
+
+        assertSame(TriggerGraph.EMPTY, node1.getTriggerGraph());
+        assertEquals(2, node1.getTriggers().size());
+        assertEquals(Arrays.asList("x", "y"), node1.getControlledProperties());
+    }
+
+    @Test
+    public void testSharedErrorChecks() {
+        TestNode node1 = new TestNode();
+        TestNode node2 = new TestNode();
+        node1.set("a", 20);
+        node2.set("a", 5);
+
+        assertEquals(Error.Level.SEVERE, node1.getErrors().get("a").iterator().next().getLevel());
+        assertTrue(node2.getErrors().isEmpty());
+        node2.limit = 2;
+        assertTrue(node2.getErrors().containsKey("a"));
+
+        ErrorCheck<?, ?> check = node1.getErrorChecks("a").get(0);
+        assertNotNull(check.getError());
+        node1.set("a", 0);
+        assertNull(check.getError());
+    }
+
+    @Test
+    public void testInheritedSharedTriggers() {
+        TestSubNode node = new TestSubNode();
+        node.set("a", 1);
+        assertEquals(104, node.z);
+        assertEquals(3, node.getTriggers().size());
+    }
+
+    @Test
+    public void testInstanceTriggersAreAllocatedOnDemand() {
+        TestNode node = new TestNode();
+        Dependency trigger = new Dependency("a", "computeX", "y");
+        node.addTrigger(trigger);
+        assertNotSame(TriggerGraph.EMPTY, node.getTriggerGraph());
+        node.removeTrigger(trigger);
+        assertSame(TriggerGraph.EMPTY, node.getTriggerGraph());
+    }
+
+    @Test
+    public void testBindingsAreEqual() {
+        TestNode node = new TestNode();
+        assertEquals(node.getTriggers(), node.getTriggers());
+
+        Set<Trigger<?>> before = node.getTriggers();
+        Dependency trigger = new Dependency("a", "computeX", "y");
+        node.addTrigger(trigger);
+        assertNotSame(before, node.getTriggers());
+        assertEquals(3, node.getTriggers().size());
+        assertTrue(node.getTriggers().containsAll(before));
+    }
+
+    @Test(expected = NodeHelperUsedByOtherException.class)
+    public void testSharedTriggerCannotBeAddedToAnInstance() {
+        new TestNode().addTrigger(TestNode.X);
+    }
+
+}
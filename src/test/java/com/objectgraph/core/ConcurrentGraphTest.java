@@ -0,0 +1,196 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import com.objectgraph.core.triggers.Dependency;
+import com.objectgraph.core.triggers.LazyDependency;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentGraphTest {
+
+    private static class TestNode extends ObjectNode {
+        @Property int a;
+        @Property int b;
+
+        public TestNode() {
+            addTrigger(new Dependency("b", new Dependency.Function1<Integer, Integer>() {
+                @Override
+                public Integer apply(Integer a) {
+                    return 2 * a;
+                }
+            }, "a"));
+            initialiseNode();
+        }
+    }
+
+    private static class LazyNode extends ObjectNode {
+        @Property int a;
+        @Property int b;
+
+        public LazyNode() {
+            addTrigger(new LazyDependency("b", new Dependency.Function1<Integer, Integer>() {
+                @Override
+                public Integer apply(Integer a) {
+                    return 2 * a;
+                }
+            }, "a"));
+            initialiseNode();
+        }
+    }
+
+    private void testConsistentReads(ConcurrentGraph.Mode mode) throws Exception {
+        final ConcurrentGraph graph = new ConcurrentGraph(new TestNode(), mode);
+        final AtomicBoolean consistent = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 2; t++) {
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 500; i++) {
+                        graph.write(new ConcurrentGraph.Action<Void>() {
+                            @Override
+                            public Void run(Node root) {
+                                root.set("a", root.<Integer>get("a") + 1);
+                                return null;
+                            }
+                        });
+                    }
+                }
+            }));
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 500; i++) {
+                        boolean ok = graph.read(new ConcurrentGraph.Action<Boolean>() {
+                            @Override
+                            public Boolean run(Node root) {
+                                return root.<Integer>get("b") == 2 * root.<Integer>get("a");
+                            }
+                        });
+                        if (!ok) {
+                            consistent.set(false);
+                        }
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        graph.shutdown();
+
+        assertTrue(consistent.get());
+        assertEquals(1000, (int) graph.<Integer>get("a"));
+        assertEquals(2000, (int) graph.<Integer>get("b"));
+    }
+
+    @Test
+    public void testLockedMode() throws Exception {
+        testConsistentReads(ConcurrentGraph.Mode.LOCKED);
+    }
+
+    @Test
+    public void testSingleWriterMode() throws Exception {
+        testConsistentReads(ConcurrentGraph.Mode.SINGLE_WRITER);
+    }
+
+    @Test
+    public void testSubmitRunsInOrder() throws Exception {
+        ConcurrentGraph graph = new ConcurrentGraph(new TestNode(), ConcurrentGraph.Mode.SINGLE_WRITER);
+        Future<Integer> last = null;
+        for (int i = 1; i <= 100; i++) {
+            final int value = i;
+            last = graph.submit(new ConcurrentGraph.Action<Integer>() {
+                @Override
+                public Integer run(Node root) {
+                    root.set("a", value);
+                    return root.get("b");
+                }
+            });
+        }
+        assertEquals(200, (int) last.get(10, TimeUnit.SECONDS));
+        graph.shutdown();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNoWriteWhileReading() {
+        final ConcurrentGraph graph = new ConcurrentGraph(new TestNode(), ConcurrentGraph.Mode.LOCKED);
+        graph.read(new ConcurrentGraph.Action<Void>() {
+            @Override
+            public Void run(Node root) {
+                graph.set("a", 1);
+                return null;
+            }
+        });
+    }
+
+    private void testRefreshOutsideReadLock(ConcurrentGraph.Mode mode) {
+        final ConcurrentGraph graph = new ConcurrentGraph(new LazyNode(), mode);
+        graph.set("a", 5);
+        assertTrue(graph.getRoot().isStale("b"));
+
+        final AtomicInteger runs = new AtomicInteger();
+        int b = graph.read(new ConcurrentGraph.Action<Integer>() {
+            @Override
+            public Integer run(Node root) {
+                runs.incrementAndGet();
+                return root.get("b");
+            }
+        });
+        assertEquals(10, b);
+        assertEquals(2, runs.get());
+        assertFalse(graph.getRoot().isStale("b"));
+        graph.shutdown();
+    }
+
+    @Test
+    public void testRefreshOutsideReadLockLocked() {
+        testRefreshOutsideReadLock(ConcurrentGraph.Mode.LOCKED);
+    }
+
+    @Test
+    public void testRefreshOutsideReadLockSingleWriter() {
+        testRefreshOutsideReadLock(ConcurrentGraph.Mode.SINGLE_WRITER);
+    }
+
+    @Test
+    public void testRefreshInsideWrite() {
+        final ConcurrentGraph graph = new ConcurrentGraph(new LazyNode(), ConcurrentGraph.Mode.LOCKED);
+        int b = graph.write(new ConcurrentGraph.Action<Integer>() {
+            @Override
+            public Integer run(Node root) {
+                root.set("a", 3);
+                return graph.get("b");
+            }
+        });
+        assertEquals(6, b);
+    }
+
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DerivedPropertyTest {
+
+    private static class TestChild extends ObjectNode {
+        @Property String text;
+    }
+
+    private static class TestNode extends ObjectNode {
+        @Property int a;
+        @Property TestChild b = new TestChild();
+        @Property String x;
+        @Property int length;
+
+        int computations;
+
+        public TestNode() {
+            initialiseNode();
+        }
+
+        @DerivedFrom(property = "x", value = {"a", "b.text"})
+        protected String computeX(int a, String text) {
+            computations++;
+            return text + ": " + a;
+        }
+
+        @DerivedFrom(property = "length", value = "x")
+        protected int computeLength(String x) {
+            return x.length();
+        }
+    }
+
+    private static class TestSubNode extends TestNode {
+        @Property int twice;
+
+        @DerivedFrom(property = "twice", value = "a")
+        protected int computeTwice(int a) {
+            return 2 * a;
+        }
+    }
+
+    private static class OverridingNode extends TestNode {
+        @Override
+        @DerivedFrom(property = "x", value = {"a", "b.text"})
+        protected String computeX(int a, String text) {
+            return super.computeX(a, text).toUpperCase();
+        }
+    }
+
+    private static class Diamond extends ObjectNode {
+        @Property int a;
+        @Property int b;
+        @Property int c;
+        @Property String d;
+
+        final List<String> evaluations = new ArrayList<>();
+
+        public Diamond() {
+            initialiseNode();
+        }
+
+        // The sink is declared first, so that eager evaluation would compute it before its parameters
+        @DerivedFrom(property = "d", value = {"b", "c"})
+        protected String computeD(int b, int c) {
+            String ret = b + "/" + c;
+            evaluations.add(ret);
+            return ret;
+        }
+
+        @DerivedFrom(property = "b", value = "a")
+        protected int computeB(int a) {
+            return a + 1;
+        }
+
+        @DerivedFrom(property = "c", value = "a")
+        protected int computeC(int a) {
+            return a + 2;
+        }
+    }
+
+    private static class WrongPath extends ObjectNode {
+        @Property int a;
+
+        @DerivedFrom(property = "a", value = "missing")
+        protected int compute(int missing) {
+            return missing;
+        }
+    }
+
+    private static class WrongArity extends ObjectNode {
+        @Property int a;
+        @Property int b;
+
+        @DerivedFrom(property = "a", value = "b")
+        protected int compute() {
+            return 0;
+        }
+    }
+
+    @Test
+    public void testDerivedProperty() {
+        TestNode node = new TestNode();
+        node.set("a", 3);
+        assertEquals("null: 3", node.x);
+        node.set("b.text", "hello");
+        assertEquals("hello: 3", node.x);
+        assertEquals(8, node.length);
+
+        node.set("b", new TestChild());
+        assertEquals("null: 3", node.x);
+
+        // Derived properties are scheduled as deferred Triggers
+        assertEquals(2, node.getTriggers().size());
+        for (Trigger<?> t : node.getTriggers()) {
+            assertTrue(t.isDeferred());
+        }
+        assertEquals(Arrays.asList("length", "x"), node.getControlledProperties());
+    }
+
+    @Test
+    public void testEvaluatedOncePerChange() {
+        Diamond node = new Diamond();
+        node.evaluations.clear();
+        node.set("a", 10);
+
+        assertEquals("11/12", node.d);
+        assertEquals(Arrays.asList("11/12"), node.evaluations);
+    }
+
+    @Test
+    public void testOverriddenHandlerRegisteredOnce() {
+        OverridingNode node = new OverridingNode();
+        int computations = node.computations;
+        node.set("a", 4);
+        assertEquals("NULL: 4", node.x);
+        assertEquals(computations + 1, node.computations);
+        assertEquals(2, node.getTriggers().size());
+    }
+
+    @Test
+    public void testOverwriteIsRecomputed() {
+        TestNode node = new TestNode();
+        node.set("b.text", "hello");
+        int computations = node.computations;
+        node.set("x", "overwritten");
+        assertEquals("hello: 0", node.x);
+        assertEquals(computations + 1, node.computations);
+    }
+
+    @Test
+    public void testInheritedDerivedProperties() {
+        TestSubNode node = new TestSubNode();
+        node.set("a", 21);
+        assertEquals(42, node.twice);
+        assertEquals("null: 21", node.x);
+    }
+
+    @Test(expected = InvalidDerivedPropertyException.class)
+    public void testWrongPath() {
+        new WrongPath().set("a", 1);
+    }
+
+    @Test(expected = InvalidDerivedPropertyException.class)
+    public void testWrongArity() {
+        new WrongArity().getProperties();
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ErrorSubscriptionTest {
+
+    private static class LevelCheck extends ErrorCheck<Node, Integer> {
+        LevelCheck(Error.Level level, String path) {
+            super(level, path);
+        }
+
+        @Override
+        protected String getMessage(Integer value) {
+            return value < 0 ? "Negative value" : null;
+        }
+    }
+
+    private static class TestChild extends ObjectNode {
+        @Property int value;
+        @Property int warning;
+
+        public TestChild() {
+            addErrorCheck(new LevelCheck(Error.Level.SEVERE, "value"));
+            addErrorCheck(new LevelCheck(Error.Level.WARNING, "warning"));
+        }
+    }
+
+    private static class TestNode extends ObjectNode {
+        @Property TestChild child = new TestChild();
+        @Property ListNode<TestChild> list = new ListNode<>(TestChild.class);
+
+        public TestNode() {
+            initialiseNode();
+        }
+    }
+
+    private static class Recorder implements IncrementalValidator.Listener {
+        private final List<ErrorDelta> deltas = new ArrayList<>();
+
+        @Override
+        public void errorsChanged(ErrorDelta delta) {
+            deltas.add(delta);
+        }
+    }
+
+    @Test
+    public void testLevelFilter() {
+        TestNode node = new TestNode();
+        Recorder recorder = new Recorder();
+        node.subscribeErrors(Error.Level.INVALID, "", recorder);
+
+        node.set("child.warning", -1);
+        assertTrue(recorder.deltas.isEmpty());
+        node.set("child.value", -1);
+        assertEquals(1, recorder.deltas.size());
+        assertEquals("child.value", recorder.deltas.get(0).getPath());
+        node.set("child.value", 1);
+        assertEquals(1, recorder.deltas.get(1).getRemoved().size());
+    }
+
+    @Test
+    public void testPathPattern() {
+        TestNode node = new TestNode();
+        Recorder recorder = new Recorder();
+        node.subscribeErrors(Error.Level.WARNING, "list.*.value", recorder);
+
+        node.set("child.value", -1);
+        TestChild element = new TestChild();
+        element.set("warning", -1);
+        node.list.add(element);
+        assertTrue(recorder.deltas.isEmpty());
+
+        element.set("value", -1);
+        assertEquals(1, recorder.deltas.size());
+        assertEquals("list.0.value", recorder.deltas.get(0).getPath());
+    }
+
+    @Test
+    public void testCurrentErrorsAndCancel() {
+        TestNode node = new TestNode();
+        node.set("child.value", -1);
+        Recorder recorder = new Recorder();
+        ErrorSubscription subscription = node.subscribeErrors(Error.Level.WARNING, "child", recorder);
+        assertEquals(1, recorder.deltas.size());
+
+        subscription.cancel();
+        assertTrue(subscription.isCancelled());
+        node.set("child.warning", -1);
+        assertEquals(1, recorder.deltas.size());
+        assertTrue(node.getParentPaths().isEmpty());
+    }
+
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class IncrementalValidatorTest {
+
+    private static class CountingCheck extends ErrorCheck<Node, Integer> {
+        private int evaluations;
+
+        CountingCheck(String path) {
+            super(Error.Level.INVALID, path);
+        }
+
+        @Override
+        protected String getMessage(Integer value) {
+            evaluations++;
+            return value < 0 ? "Negative value" : null;
+        }
+    }
+
+    private static class TestChild extends ObjectNode {
+        @Property int value;
+        final CountingCheck check = new CountingCheck("value");
+
+        public TestChild() {
+            addErrorCheck(check);
+        }
+    }
+
+    private static class TestNode extends ObjectNode {
+        @Property int a;
+        @Property int b;
+        @Property TestChild child = new TestChild();
+        @Property ListNode<TestChild> list = new ListNode<>(TestChild.class);
+        final CountingCheck checkA = new CountingCheck("a");
+
+        public TestNode() {
+            addErrorCheck(checkA);
+            initialiseNode();
+        }
+    }
+
+    private static class Recorder implements IncrementalValidator.Listener {
+        private final List<ErrorDelta> deltas = new ArrayList<>();
+
+        @Override
+        public void errorsChanged(ErrorDelta delta) {
+            deltas.add(delta);
+        }
+    }
+
+    private static Map<String, Set<String>> messages(Map<String, Set<Error>> errors) {
+        Map<String, Set<String>> ret = new HashMap<>();
+        for (Map.Entry<String, Set<Error>> entry : errors.entrySet()) {
+            ret.put(entry.getKey(), new HashSet<String>());
+            for (Error error : entry.getValue()) {
+                ret.get(entry.getKey()).add(error.getMessage());
+            }
+        }
+        return ret;
+    }
+
+    private static Set<String> collectedPaths(Node node) {
+        IncrementalValidator validator = new IncrementalValidator(node);
+        validator.dispose();
+        return validator.getErrors().keySet();
+    }
+
+    @Test
+    public void testOnlyOverlappingChecksAreEvaluated() {
+        TestNode node = new TestNode();
+        IncrementalValidator validator = new IncrementalValidator(node);
+        int evaluations = node.checkA.evaluations;
+
+        node.set("b", -1);
+        node.set("child.value", 3);
+        assertEquals(evaluations, node.checkA.evaluations);
+
+        node.set("a", -1);
+        assertEquals(evaluations + 1, node.checkA.evaluations);
+        assertEquals(messages(node.getErrors()), messages(validator.getErrors()));
+        assertEquals(1, validator.getErrors("a").size());
+    }
+
+    @Test
+    public void testDeltas() {
+        TestNode node = new TestNode();
+        IncrementalValidator validator = new IncrementalValidator(node);
+        Recorder recorder = new Recorder();
+        validator.addListener(recorder);
+
+        node.set("child.value", -5);
+        assertEquals(1, recorder.deltas.size());
+        assertEquals("child.value", recorder.deltas.get(0).getPath());
+        assertEquals(1, recorder.deltas.get(0).getAdded().size());
+
+        // Same error: no delta
+        node.set("child.value", -6);
+        assertEquals(1, recorder.deltas.size());
+
+        node.set("child.value", 1);
+        assertEquals(2, recorder.deltas.size());
+        assertEquals(1, recorder.deltas.get(1).getRemoved().size());
+        assertTrue(validator.getErrors().isEmpty());
+    }
+
+    @Test
+    public void testStructuralChanges() {
+        TestNode node = new TestNode();
+        IncrementalValidator validator = new IncrementalValidator(node);
+        Recorder recorder = new Recorder();
+        validator.addListener(recorder);
+
+        TestChild element = new TestChild();
+        element.set("value", -1);
+        node.list.add(element);
+        assertEquals(messages(node.getErrors()), messages(validator.getErrors()));
+        assertTrue(validator.getErrors().containsKey("list.0.value"));
+
+        node.set("child.value", -2);
+        TestChild replacement = new TestChild();
+        int evaluations = node.list.get(0).check.evaluations;
+        node.set("child", replacement);
+        assertEquals(evaluations, node.list.get(0).check.evaluations);
+        assertFalse(validator.getErrors().containsKey("child.value"));
+        assertEquals(messages(node.getErrors()), messages(validator.getErrors()));
+
+        node.list.remove(0);
+        assertTrue(validator.getErrors().isEmpty());
+        assertEquals(4, recorder.deltas.size());
+    }
+
+    @Test
+    public void testSharedNodes() {
+        TestNode node = new TestNode();
+        IncrementalValidator validator = new IncrementalValidator(node);
+
+        TestChild shared = new TestChild();
+        shared.set("value", -1);
+        node.list.add(new TestChild());
+        node.list.add(shared);
+        node.set("child", shared);
+        assertEquals(collectedPaths(node), validator.getErrors().keySet());
+
+        node.list.remove(0);
+        assertEquals(collectedPaths(node), validator.getErrors().keySet());
+
+        node.set("child", new TestChild());
+        assertEquals(collectedPaths(node), validator.getErrors().keySet());
+        assertTrue(validator.getErrors().containsKey("list.0.value"));
+
+        node.list.remove(0);
+        assertTrue(validator.getErrors().isEmpty());
+    }
+
+    @Test
+    public void testDispose() {
+        TestNode node = new TestNode();
+        IncrementalValidator validator = new IncrementalValidator(node);
+        validator.dispose();
+        node.set("a", -1);
+        assertTrue(validator.getErrors().isEmpty());
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+public class MappedGraphTest {
+
+    private static class TestChild extends ObjectNode {
+        @Property String s;
+        @Property int i;
+        @Property double d;
+        @Property Date date;
+        @Property TestChild next;
+    }
+
+    private static class TestBase extends ObjectNode {
+        @Property TestChild child = new TestChild();
+        @Property ListNode<TestChild> list = new ListNode<>(TestChild.class);
+
+        public TestBase() {
+            initialiseNode();
+        }
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MappedGraph exportAndOpen(Node root) throws Exception {
+        File file = folder.newFile("graph.bin");
+        MappedGraph.export(root, file);
+        return MappedGraph.open(file);
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        TestBase base = new TestBase();
+        base.set("child.s", "child");
+        base.set("child.i", 12);
+        base.set("child.d", 0.5);
+        base.set("child.date", new Date(1000));
+        for (int i = 0; i < 10; i++) {
+            TestChild element = new TestChild();
+            element.set("i", i);
+            base.list.add(element);
+        }
+        base.list.add(base.child);
+        base.child.set("next", base.child);
+
+        MappedGraph graph = exportAndOpen(base);
+        MappedNode root = graph.getRoot();
+
+        assertEquals(13, graph.getNodeCount());
+        assertEquals(TestBase.class.getName(), root.getOriginalClassName());
+        assertEquals(base.getProperties(), root.getProperties());
+        assertEquals("child", root.get("child.s"));
+        assertEquals(12, (int) root.get("child.i"));
+        assertEquals(0.5, (double) root.get("child.d"), 0);
+        assertEquals(new Date(1000), root.get("child.date"));
+        assertEquals(Arrays.asList("0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "10"),
+                root.get("list", Node.class).getProperties());
+        assertEquals(7, (int) root.get("list.7.i"));
+        assertNull(root.get("list.7.s"));
+        assertSame(root.get("child"), root.get("list.10"));
+        assertSame(root.get("child"), root.get("child.next.next"));
+        assertEquals(TestChild.class, root.getPropertyType("child", false));
+        assertEquals(int.class, root.get("child", Node.class).getPropertyType("i", false));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testReadOnly() throws Exception {
+        exportAndOpen(new TestBase()).getRoot().set("child.s", "changed");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testErrorChecksReadOnly() throws Exception {
+        exportAndOpen(new TestBase()).getRoot().addErrorCheck(new ErrorCheck<Node, Object>(Error.Level.WARNING, "child") {
+            @Override
+            public String getMessage(Object value) {
+                return null;
+            }
+        });
+    }
+
+    @Test(expected = PropertyNotExistsException.class)
+    public void testPropertyNotExists() throws Exception {
+        exportAndOpen(new TestBase()).getRoot().get("missing");
+    }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import com.esotericsoftware.kryo.io.Output;
+import com.google.common.collect.Sets;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class NodeArchiveTest {
+
+    private static class TestChild extends ObjectNode {
+        @Property String s;
+        @Property int i;
+    }
+
+    private static class TestBase extends ObjectNode {
+        @Property TestChild child = new TestChild();
+        @Property ListNode<TestChild> list = new ListNode<>(TestChild.class);
+
+        public TestBase() {
+            initialiseNode();
+        }
+    }
+
+    // The same class at different times: class names have the same length, so that an archive written with one of
+    // them can be read as another one by renaming it in the header
+    private static class V1Layout extends ObjectNode {
+        @Property String s;
+        @Property int i;
+    }
+
+    private static class V2Layout extends ObjectNode {
+        @Property String s;
+        @Property int i;
+        @Property String added = "default";
+    }
+
+    private static class V3Layout extends ObjectNode {
+        @Property String s;
+    }
+
+    private static class V4Layout extends ObjectNode {
+        @Property String s;
+        @Property String i;
+    }
+
+    private byte[] writeV1() {
+        V1Layout node = new V1Layout();
+        node.set("s", "text");
+        node.set("i", 12);
+        NodeArchive archive = new NodeArchive(new NodeSchema(Arrays.asList(V1Layout.class)));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        archive.write(node, bytes);
+        return bytes.toByteArray();
+    }
+
+    private <N extends Node> N readAs(Class<N> type, List<Error> problems) {
+        byte[] bytes = writeV1();
+        // Kryo marks the last character of ASCII strings, so the names are compared without it
+        String name = V1Layout.class.getName();
+        byte[] from = name.substring(0, name.length() - 1).getBytes(StandardCharsets.US_ASCII);
+        byte[] to = type.getName().substring(0, name.length() - 1).getBytes(StandardCharsets.US_ASCII);
+        int replaced = 0;
+        for (int i = 0; i + from.length <= bytes.length; i++) {
+            if (Arrays.equals(from, Arrays.copyOfRange(bytes, i, i + from.length))) {
+                System.arraycopy(to, 0, bytes, i, to.length);
+                replaced++;
+            }
+        }
+        assertEquals(1, replaced);
+        NodeArchive archive = new NodeArchive(new NodeSchema(Arrays.<Class<? extends Node>>asList(type)));
+        return archive.read(new ByteArrayInputStream(bytes), problems);
+    }
+
+    private TestBase newGraph() {
+        TestBase base = new TestBase();
+        base.set("child.s", "child");
+        base.set("child.i", 12);
+        for (int i = 0; i < 100; i++) {
+            TestChild element = new TestChild();
+            element.set("i", i);
+            base.list.add(element);
+        }
+        base.list.add(base.child);
+        return base;
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        NodeArchive archive = new NodeArchive(new NodeSchema(Arrays.asList(TestBase.class, TestChild.class)));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        archive.write(newGraph(), bytes);
+        TestBase read = archive.read(new ByteArrayInputStream(bytes.toByteArray()));
+
+        assertEquals("child", read.get("child.s"));
+        assertEquals(12, (int) read.get("child.i"));
+        assertEquals(101, read.list.size());
+        assertEquals(42, (int) read.get("list.42.i"));
+        assertSame(read.child, read.list.get(100));
+        assertEquals(Sets.newHashSet("child"), read.child.getParentPaths().get(read));
+        assertEquals(Sets.newHashSet("100"), read.child.getParentPaths().get(read.list));
+    }
+
+    @Test
+    public void testSmallerThanDefaultFormat() throws Exception {
+        NodeArchive archive = new NodeArchive(new NodeSchema(Arrays.asList(TestBase.class, TestChild.class)));
+        ByteArrayOutputStream compact = new ByteArrayOutputStream();
+        archive.write(newGraph(), compact);
+
+        ByteArrayOutputStream standard = new ByteArrayOutputStream();
+        Output output = new Output(standard);
+        Node.getKryo().writeClassAndObject(output, newGraph());
+        output.close();
+
+        assertTrue(compact.size() < standard.size());
+    }
+
+    @Test
+    public void testReadWithAddedSlot() throws Exception {
+        List<Error> problems = new ArrayList<>();
+        V2Layout read = readAs(V2Layout.class, problems);
+
+        assertEquals("text", read.get("s"));
+        assertEquals(12, (int) read.get("i"));
+        // Constructors are not run when reading, so the new property is not initialised
+        assertNull(read.get("added"));
+        assertTrue(problems.isEmpty());
+    }
+
+    @Test
+    public void testReadWithRemovedSlot() throws Exception {
+        List<Error> problems = new ArrayList<>();
+        V3Layout read = readAs(V3Layout.class, problems);
+
+        assertEquals("text", read.get("s"));
+        assertTrue(problems.isEmpty());
+    }
+
+    @Test
+    public void testReadWithRetypedSlot() throws Exception {
+        List<Error> problems = new ArrayList<>();
+        V4Layout read = readAs(V4Layout.class, problems);
+
+        assertEquals("text", read.get("s"));
+        assertNull(read.get("i"));
+        assertEquals(1, problems.size());
+        assertEquals(Error.Level.WARNING, problems.get(0).getLevel());
+        assertTrue(problems.get(0).getMessage().contains("V4Layout.i"));
+    }
+
+    @Test(expected = InvalidArchiveException.class)
+    public void testInvalidArchive() throws Exception {
+        NodeArchive archive = new NodeArchive(new NodeSchema(Arrays.<Class<? extends Node>>asList(TestChild.class)));
+        archive.read(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}));
+    }
+
+}
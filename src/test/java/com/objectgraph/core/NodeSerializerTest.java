@@ -0,0 +1,86 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.google.common.collect.Sets;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.*;
+
+public class NodeSerializerTest {
+
+    private static class TestChild extends ObjectNode {
+        @Property String s;
+        @Property TestChild next;
+    }
+
+    private static class TestBase extends ObjectNode {
+        @Property TestChild child = new TestChild();
+        @Property TestChild shared = new TestChild();
+        @Property ListNode<TestChild> list = new ListNode<>(TestChild.class);
+
+        public TestBase() {
+            initialiseNode();
+            child.set("next", shared);
+            list.add(new TestChild());
+            list.add(shared);
+        }
+    }
+
+    private void assertParentPaths(TestBase base) {
+        assertEquals(Sets.newHashSet("child"), base.child.getParentPaths().get(base));
+        assertEquals(Sets.newHashSet("shared"), base.shared.getParentPaths().get(base));
+        assertEquals(Sets.newHashSet("next"), base.shared.getParentPaths().get(base.child));
+        assertEquals(Sets.newHashSet("1"), base.shared.getParentPaths().get(base.list));
+        assertEquals(Sets.newHashSet("0"), base.list.get(0).getParentPaths().get(base.list));
+        assertEquals(Sets.newHashSet("list"), base.list.getParentPaths().get(base));
+    }
+
+    @Test
+    public void testCopy() throws Exception {
+        TestBase copy = Node.getKryo().copy(new TestBase());
+
+        assertSame(copy.shared, copy.child.next);
+        assertSame(copy.shared, copy.list.get(1));
+        assertParentPaths(copy);
+
+        copy.set("shared.s", "changed");
+        assertEquals("changed", copy.get("child.next.s"));
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Output output = new Output(bytes);
+        Node.getKryo().writeObject(output, new TestBase());
+        output.close();
+
+        TestBase read = Node.getKryo().readObject(new Input(bytes.toByteArray()), TestBase.class);
+
+        assertSame(read.shared, read.child.next);
+        assertSame(read.shared, read.list.get(1));
+        assertParentPaths(read);
+    }
+
+}
@@ -129,4 +129,49 @@ public class ObjectNodeTest {
         assertTrue(errors.isEmpty());
     }
 
+    @Test
+    public void testLookupsFollowStructureChanges() throws Exception {
+        TestBase base = new TestBase();
+        TestChild child = base.get("child");
+        assertTrue(child.getErrorChecks("s").isEmpty());
+        assertTrue(child.getControlledProperties().isEmpty());
+
+        ErrorCheck check = mock(ErrorCheck.class);
+        when(check.getPath()).thenReturn("child.s");
+        base.addErrorCheck(check);
+        Trigger trigger = mock(Trigger.class);
+        when(trigger.getControlledPaths()).thenReturn(Arrays.asList("child.i"));
+        base.addTrigger(trigger);
+
+        assertEquals(Arrays.asList(check), child.getErrorChecks("s"));
+        assertEquals(Arrays.asList(check), child.getErrorChecks("s"));
+        assertEquals(Arrays.asList("i"), child.getControlledProperties());
+
+        base.set("child", new TestChild());
+        assertTrue(child.getErrorChecks("s").isEmpty());
+        assertTrue(child.getControlledProperties().isEmpty());
+        assertEquals(Arrays.asList("i"), base.get("child", TestChild.class).getControlledProperties());
+    }
+
+    @Test
+    public void testLookupsFollowUnlinkedNodes() throws Exception {
+        TestBase base = new TestBase();
+        TestChild child = base.get("child");
+        ErrorCheck check = mock(ErrorCheck.class);
+        when(check.getPath()).thenReturn("child.s");
+        base.addErrorCheck(check);
+        assertEquals(Arrays.asList(check), child.getErrorChecks("s"));
+
+        base.set("child", new TestChild());
+        assertTrue(child.getErrorChecks("s").isEmpty());
+        ErrorCheck own = mock(ErrorCheck.class);
+        when(own.getPath()).thenReturn("s");
+        child.addErrorCheck(own);
+        assertEquals(Arrays.asList(own), child.getErrorChecks("s"));
+        assertEquals(Arrays.asList(check), base.get("child", TestChild.class).getErrorChecks("s"));
+
+        base.set("child", child);
+        assertEquals(Sets.newHashSet(check, own), Sets.newHashSet(child.getErrorChecks("s")));
+    }
+
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import com.google.common.collect.Sets;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class ParallelNodeArchiveTest {
+
+    private static class TestChild extends ObjectNode {
+        @Property String s;
+        @Property TestChild next;
+        @Property TestBase back;
+    }
+
+    private static class TestBase extends ObjectNode {
+        @Property TestChild shared = new TestChild();
+        @Property ListNode<TestChild> list = new ListNode<>(TestChild.class);
+
+        public TestBase() {
+            initialiseNode();
+        }
+    }
+
+    private TestBase newGraph() {
+        TestBase base = new TestBase();
+        TestChild deepShared = new TestChild();
+        deepShared.set("s", "deep");
+        for (int i = 0; i < 100; i++) {
+            TestChild element = new TestChild();
+            element.set("s", "element" + i);
+            element.set("back", base);
+            TestChild nested = new TestChild();
+            nested.set("next", i % 10 == 0 ? deepShared : base.shared);
+            element.set("next", nested);
+            base.list.add(element);
+        }
+        return base;
+    }
+
+    private TestBase writeAndRead(ParallelNodeArchive archive) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        archive.write(newGraph(), bytes);
+        return archive.read(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    private void checkGraph(TestBase read) {
+        assertEquals(100, read.list.size());
+        assertEquals("element42", read.get("list.42.s"));
+        assertSame(read, read.get("list.42.back"));
+        assertSame(read.shared, read.get("list.42.next.next"));
+        assertEquals("deep", read.get("list.40.next.next.s"));
+        assertSame(read.get("list.30.next.next"), read.get("list.40.next.next"));
+        assertEquals(Sets.newHashSet("shared"), read.shared.getParentPaths().get(read));
+        assertEquals(Sets.newHashSet("42"), read.list.get(42).getParentPaths().get(read.list));
+        assertEquals(Sets.newHashSet("next"), read.get("list.42.next", Node.class).getParentPaths().get(read.list.get(42)));
+    }
+
+    @Test
+    public void testWriteAndRead() {
+        checkGraph(writeAndRead(new ParallelNodeArchive()));
+    }
+
+    @Test
+    public void testSplitDepth() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        for (int depth = 1; depth <= 4; depth++) {
+            checkGraph(writeAndRead(new ParallelNodeArchive(depth, pool)));
+        }
+    }
+
+    @Test
+    public void testSharedNodesBecomeCuts() {
+        TestBase base = newGraph();
+        // root, shared and the elements of the list, plus the deep shared Node, reachable from many elements
+        assertEquals(103, new ParallelNodeArchive(1, new ForkJoinPool()).findCuts(base).size());
+        // root and the Nodes nested in the elements, plus shared and the deep shared Node, reachable from many of them
+        assertEquals(103, new ParallelNodeArchive(2, new ForkJoinPool()).findCuts(base).size());
+    }
+
+    @Test
+    public void testListElementsAreChunks() {
+        ListNode<TestChild> list = new ListNode<>(TestChild.class);
+        for (int i = 0; i < 50; i++) {
+            TestChild child = new TestChild();
+            child.set("next", new TestChild());
+            list.add(child);
+        }
+        assertEquals(51, new ParallelNodeArchive().findCuts(list).size());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new ParallelNodeArchive().write(list, bytes);
+        ListNode<TestChild> read = new ParallelNodeArchive().read(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(50, read.size());
+        assertNotNull(read.get("49.next"));
+    }
+
+    @Test(expected = InvalidArchiveException.class)
+    public void testInvalidArchive() {
+        new ParallelNodeArchive().read(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}));
+    }
+
+}
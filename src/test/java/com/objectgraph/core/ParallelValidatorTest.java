@@ -0,0 +1,124 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class ParallelValidatorTest {
+
+    private static class PositiveCheck extends ErrorCheck<Node, Integer> {
+        PositiveCheck(Error.Level level, String path) {
+            super(level, path);
+        }
+
+        @Override
+        protected String getMessage(Integer value) {
+            return value <= 0 ? "Not positive" : null;
+        }
+    }
+
+    private static class TestChild extends ObjectNode {
+        @Property int value;
+        @Property TestChild next;
+
+        public TestChild() {
+            addErrorCheck(new PositiveCheck(Error.Level.INVALID, "value"));
+        }
+    }
+
+    private static class TestNode extends ObjectNode {
+        @Property int a;
+        @Property ListNode<TestChild> list = new ListNode<>(TestChild.class);
+        @Property TestChild shared = new TestChild();
+
+        public TestNode() {
+            addErrorCheck(new PositiveCheck(Error.Level.SEVERE, "a"));
+            initialiseNode();
+        }
+    }
+
+    private TestNode newGraph() {
+        TestNode node = new TestNode();
+        node.set("a", 1);
+        node.set("shared.value", 1);
+        for (int i = 0; i < 200; i++) {
+            TestChild child = new TestChild();
+            child.set("value", i % 10);
+            if (i % 3 == 0) {
+                child.set("next", node.shared);
+            }
+            node.list.add(child);
+        }
+        return node;
+    }
+
+    private static Map<String, Set<String>> messages(Map<String, Set<Error>> errors) {
+        Map<String, Set<String>> ret = new HashMap<>();
+        for (Map.Entry<String, Set<Error>> entry : errors.entrySet()) {
+            ret.put(entry.getKey(), new HashSet<String>());
+            for (Error error : entry.getValue()) {
+                ret.get(entry.getKey()).add(error.getMessage());
+            }
+        }
+        return ret;
+    }
+
+    @Test
+    public void testSameErrorsAsSerial() {
+        TestNode node = newGraph();
+        Map<String, Set<Error>> errors = new ParallelValidator(new ForkJoinPool(4)).validate(node);
+        assertEquals(20, errors.size());
+        assertEquals(messages(node.getErrors()), messages(errors));
+    }
+
+    @Test
+    public void testSharedNodeVisitedOnce() {
+        TestNode node = newGraph();
+        node.set("shared.value", -1);
+        Map<String, Set<Error>> errors = new ParallelValidator(new ForkJoinPool(4)).validate(node);
+        int shared = 0;
+        for (String path : errors.keySet()) {
+            if (!path.startsWith("list.") || path.endsWith(".next.value")) {
+                shared++;
+            }
+        }
+        assertEquals(1, shared);
+    }
+
+    @Test
+    public void testEarlyExit() {
+        TestNode node = newGraph();
+        ParallelValidator validator = new ParallelValidator(new ForkJoinPool(1));
+        validator.setMaxErrors(3);
+        assertTrue(validator.validate(node).size() < 20);
+
+        node.set("a", 0);
+        validator = new ParallelValidator(new ForkJoinPool(1));
+        validator.setStopLevel(Error.Level.SEVERE);
+        Map<String, Set<Error>> errors = validator.validate(node);
+        assertEquals(Collections.singleton("a"), errors.keySet());
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import com.objectgraph.core.triggers.Dependency;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PropagationTest {
+
+    private static class TestChild extends ObjectNode {
+        @Property int value;
+        @Property int doubled;
+    }
+
+    private static class TestNode extends ObjectNode {
+        @Property int a;
+        @Property int b;
+        @Property int c;
+        @Property String d;
+        @Property TestChild child = new TestChild();
+        @Property int fromChild;
+
+        public TestNode() {
+            initialiseNode();
+        }
+    }
+
+    private static class Increment implements Dependency.Function1<Integer, Integer> {
+        private final int amount;
+
+        Increment(int amount) {
+            this.amount = amount;
+        }
+
+        @Override
+        public Integer apply(Integer a) {
+            return a + amount;
+        }
+    }
+
+    @Test
+    public void testDiamond() {
+        final TestNode node = new TestNode();
+        final List<String> evaluations = new ArrayList<>();
+
+        // The sink is registered first, so that eager evaluation would compute it before its parameters
+        node.addTrigger(new Dependency("d", new Dependency.Function2<Integer, Integer, String>() {
+            @Override
+            public String apply(Integer b, Integer c) {
+                String ret = b + "/" + c;
+                evaluations.add(ret);
+                return ret;
+            }
+        }, "b", "c"));
+        node.addTrigger(new Dependency("b", new Increment(1), "a"));
+        node.addTrigger(new Dependency("c", new Increment(2), "a"));
+
+        evaluations.clear();
+        node.set("a", 10);
+
+        assertEquals("11/12", node.d);
+        assertEquals(1, evaluations.size());
+    }
+
+    @Test
+    public void testAcrossNodes() {
+        final TestNode node = new TestNode();
+        final List<Integer> evaluations = new ArrayList<>();
+
+        node.addTrigger(new Dependency("fromChild", new Dependency.Function2<Integer, Integer, Integer>() {
+            @Override
+            public Integer apply(Integer value, Integer doubled) {
+                evaluations.add(doubled - 2 * value);
+                return value + doubled;
+            }
+        }, "child.value", "child.doubled"));
+        node.child.addTrigger(new Dependency("doubled", new Dependency.Function1<Integer, Integer>() {
+            @Override
+            public Integer apply(Integer value) {
+                return 2 * value;
+            }
+        }, "value"));
+
+        evaluations.clear();
+        node.set("child.value", 5);
+
+        assertEquals(15, node.fromChild);
+        // Evaluated once, and never with an outdated value of child.doubled
+        assertEquals(1, evaluations.size());
+        assertEquals(0, (int) evaluations.get(0));
+    }
+
+    @Test
+    public void testDeferredTriggerAddedToAncestor() {
+        TestNode node = new TestNode();
+        // Fired while no deferred Trigger can be reached, so no propagation is needed
+        node.set("child.value", 1);
+
+        final List<String> evaluations = new ArrayList<>();
+        node.addTrigger(new Dependency("d", new Dependency.Function2<Integer, Integer, String>() {
+            @Override
+            public String apply(Integer b, Integer c) {
+                String ret = b + "/" + c;
+                evaluations.add(ret);
+                return ret;
+            }
+        }, "b", "c"));
+        node.addTrigger(new Dependency("b", new Increment(1), "child.value"));
+        node.addTrigger(new Dependency("c", new Increment(2), "child.value"));
+
+        evaluations.clear();
+        node.set("child.value", 10);
+
+        assertEquals("11/12", node.d);
+        assertEquals(1, evaluations.size());
+    }
+
+    @Test(expected = DependencyCycleException.class)
+    public void testCycle() {
+        TestNode node = new TestNode();
+        node.addTrigger(new Dependency("b", new Increment(1), "c"));
+        node.addTrigger(new Dependency("c", new Increment(1), "b"));
+
+        node.set("b", 1);
+    }
+
+    @Test
+    public void testPropagationEndsAfterCycle() {
+        TestNode node = new TestNode();
+        node.addTrigger(new Dependency("b", new Increment(1), "c"));
+        node.addTrigger(new Dependency("c", new Increment(1), "b"));
+        try {
+            node.set("b", 1);
+            fail();
+        } catch (DependencyCycleException ex) {
+            assertEquals(2, ex.getTriggers().size());
+        }
+
+        TestNode other = new TestNode();
+        other.addTrigger(new Dependency("b", new Increment(1), "a"));
+        other.set("a", 1);
+        assertEquals(2, other.b);
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import com.objectgraph.core.triggers.Assignment;
+import com.objectgraph.core.triggers.Dependency;
+import com.objectgraph.core.triggers.LazyDependency;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TriggerGraphTest {
+
+    private static class TestChild extends ObjectNode {
+        @Property int a;
+        @Property int c;
+    }
+
+    private static class TestNode extends ObjectNode {
+        @Property int a;
+        @Property int b;
+        @Property int c;
+        @Property TestChild child = new TestChild();
+
+        public TestNode() {
+            initialiseNode();
+        }
+    }
+
+    private static class Increment implements Dependency.Function1<Integer, Integer> {
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public Integer apply(Integer value) {
+            calls.incrementAndGet();
+            return value + 1;
+        }
+    }
+
+    @Test
+    public void testEvaluationOrder() {
+        TestNode node = new TestNode();
+        Assignment second = new Assignment("b", "c");
+        Assignment first = new Assignment("a", "b");
+        node.addTrigger(second);
+        node.addTrigger(first);
+
+        assertEquals(Arrays.<Trigger<?>>asList(first, second), node.getTriggerGraph().getEvaluationOrder());
+        assertTrue(node.getTriggerGraph().getCycles().isEmpty());
+        assertTrue(node.getTriggerWarnings().isEmpty());
+
+        node.set("a", 3);
+        assertEquals(3, node.c);
+    }
+
+    @Test
+    public void testCycle() {
+        TestNode node = new TestNode();
+        node.addTrigger(new Assignment("a", "b"));
+        node.addTrigger(new Assignment("b", "a"));
+
+        assertEquals(1, node.getTriggerGraph().getCycles().size());
+        assertEquals(Error.Level.WARNING, node.getTriggerWarnings().get("a").iterator().next().getLevel());
+        assertTrue(node.getTriggerWarnings().containsKey("b"));
+        // Warnings are not errors of the Node
+        assertTrue(node.getErrors().isEmpty());
+    }
+
+    @Test
+    public void testRedundantTrigger() {
+        TestNode node = new TestNode();
+        Increment increment = new Increment();
+        Dependency first = new Dependency("b", increment, "a");
+        Dependency second = new Dependency("b", increment, "a");
+        node.addTrigger(first);
+        node.addTrigger(second);
+
+        assertEquals(Arrays.<Trigger<?>>asList(second), node.getTriggerGraph().getRedundantTriggers());
+        assertTrue(node.getTriggerWarnings().containsKey("b"));
+
+        node.set("a", 1);
+        assertEquals(2, node.b);
+        assertEquals(1, increment.calls.get());
+
+        node.removeTrigger(first);
+        assertTrue(node.getTriggerGraph().getRedundantTriggers().isEmpty());
+        node.set("a", 5);
+        assertEquals(6, node.b);
+    }
+
+    @Test
+    public void testConfigurationPreventsRedundancy() {
+        TestNode node = new TestNode();
+        Increment increment = new Increment();
+        Dependency first = new Dependency("b", increment, "a");
+        Dependency second = new Dependency("b", increment, "a");
+        second.setConcurrencyPolicy(Trigger.ConcurrencyPolicy.DROP);
+        LazyDependency lazy = new LazyDependency("c", increment, "a");
+        LazyDependency notifying = new LazyDependency("c", increment, "a");
+        notifying.setNotifying(true);
+        node.addTrigger(first);
+        node.addTrigger(second);
+        node.addTrigger(lazy);
+        node.addTrigger(notifying);
+
+        assertTrue(node.getTriggerGraph().getRedundantTriggers().isEmpty());
+    }
+
+    @Test
+    public void testIncrementalUpdates() {
+        TestNode node = new TestNode();
+        Assignment ab = new Assignment("a", "b");
+        Assignment bc = new Assignment("b", "c");
+        Assignment ca = new Assignment("c", "a");
+        node.addTrigger(bc);
+        node.addTrigger(ab);
+        node.addTrigger(ca);
+        assertEquals(1, node.getTriggerGraph().getCycles().size());
+        assertEquals(3, node.getTriggerGraph().getCycles().get(0).size());
+
+        node.removeTrigger(ca);
+        assertTrue(node.getTriggerGraph().getCycles().isEmpty());
+        assertEquals(Arrays.<Trigger<?>>asList(ab, bc), node.getTriggerGraph().getEvaluationOrder());
+
+        // The same analysis as a graph built from scratch
+        TriggerGraph rebuilt = TriggerGraph.of(node, Arrays.<Trigger<?>>asList(bc, ab));
+        assertEquals(rebuilt.getEvaluationOrder(), node.getTriggerGraph().getEvaluationOrder());
+    }
+
+    @Test
+    public void testCycleAcrossNodes() {
+        TestNode node = new TestNode();
+        node.addTrigger(new Assignment("b", "child.a"));
+        node.child.addTrigger(new Assignment("a", "c"));
+        node.addTrigger(new Assignment("child.c", "b"));
+
+        // Each Node alone has no cycles
+        assertTrue(node.getTriggerGraph().getCycles().isEmpty());
+        TriggerGraph graph = TriggerGraph.analyze(node);
+        assertEquals(1, graph.getCycles().size());
+        assertEquals(3, graph.getCycles().get(0).size());
+        assertTrue(graph.getWarnings().containsKey("child.c"));
+    }
+
+}
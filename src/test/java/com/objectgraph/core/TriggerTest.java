@@ -0,0 +1,131 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TriggerTest {
+
+    private static class TestNode extends ObjectNode {
+        @Property int value;
+
+        public TestNode() {
+            initialiseNode();
+        }
+    }
+
+    private static class BlockingTrigger extends Trigger<TestNode> {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final AtomicInteger runs = new AtomicInteger();
+
+        @Override
+        public List<String> getControlledPaths() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        protected boolean isTriggeredBy(Event event) {
+            return true;
+        }
+
+        @Override
+        protected void action(Event event) {
+            runs.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            // Re-entrant activation on the same thread is ignored
+            getNode().set("value", getNode().value + 1);
+        }
+    }
+
+    private final Event event = new Event("value", new Change());
+
+    private BlockingTrigger startBlocked(Trigger.ConcurrencyPolicy policy, Thread[] runner) throws Exception {
+        TestNode node = new TestNode();
+        final BlockingTrigger trigger = new BlockingTrigger();
+        trigger.setConcurrencyPolicy(policy);
+        node.addTrigger(trigger);
+        runner[0] = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                trigger.check(event);
+            }
+        });
+        runner[0].start();
+        assertTrue(trigger.started.await(5, TimeUnit.SECONDS));
+        return trigger;
+    }
+
+    @Test
+    public void testDrop() throws Exception {
+        Thread[] runner = new Thread[1];
+        BlockingTrigger trigger = startBlocked(Trigger.ConcurrencyPolicy.DROP, runner);
+        trigger.check(event);
+        trigger.release.countDown();
+        runner[0].join(5000);
+        assertEquals(1, trigger.runs.get());
+    }
+
+    @Test
+    public void testCoalesce() throws Exception {
+        Thread[] runner = new Thread[1];
+        BlockingTrigger trigger = startBlocked(Trigger.ConcurrencyPolicy.COALESCE, runner);
+        trigger.check(event);
+        trigger.check(event);
+        trigger.check(event);
+        trigger.release.countDown();
+        runner[0].join(5000);
+        assertEquals(2, trigger.runs.get());
+    }
+
+    @Test
+    public void testQueue() throws Exception {
+        Thread[] runner = new Thread[1];
+        final BlockingTrigger trigger = startBlocked(Trigger.ConcurrencyPolicy.QUEUE, runner);
+        Thread queued = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                trigger.check(event);
+            }
+        });
+        queued.start();
+        Thread.sleep(50);
+        assertEquals(1, trigger.runs.get());
+        trigger.release.countDown();
+        runner[0].join(5000);
+        queued.join(5000);
+        assertEquals(2, trigger.runs.get());
+        assertEquals(2, trigger.getNode().value);
+    }
+
+}
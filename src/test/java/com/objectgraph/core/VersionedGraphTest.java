@@ -0,0 +1,247 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core;
+
+import com.objectgraph.core.triggers.Dependency;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class VersionedGraphTest {
+
+    private static class TestChild extends ObjectNode {
+        @Property String s;
+    }
+
+    private static class TestNode extends ObjectNode {
+        @Property int a;
+        @Property int b;
+        @Property TestChild child = new TestChild();
+        @Property ListNode<TestChild> list = new ListNode<>(TestChild.class);
+
+        public TestNode() {
+            addTrigger(new Dependency("b", new Dependency.Function1<Integer, Integer>() {
+                @Override
+                public Integer apply(Integer a) {
+                    return 2 * a;
+                }
+            }, "a"));
+            initialiseNode();
+        }
+    }
+
+    @Test
+    public void testReadPastVersions() {
+        VersionedGraph graph = new VersionedGraph(new TestNode());
+        graph.set("a", 1);
+        graph.set("child.s", "first");
+        assertEquals(2, graph.getVersion());
+
+        try (VersionedGraph.ReadSession session = graph.openSession()) {
+            graph.set("a", 5);
+            graph.set("child.s", "second");
+
+            assertEquals(1, (int) session.<Integer>get("a"));
+            assertEquals(2, (int) session.<Integer>get("b"));
+            assertEquals("first", session.get("child.s"));
+            assertEquals(1, (int) graph.<Integer>get("a", 2));
+            assertEquals(5, (int) graph.<Integer>get("a", 3));
+            assertEquals(10, (int) graph.<Integer>get("b", 3));
+            assertEquals("first", graph.get("child.s", 3));
+            assertEquals("second", graph.get("child.s", 4));
+        }
+    }
+
+    @Test
+    public void testListContentIsVersioned() {
+        TestNode node = new TestNode();
+        VersionedGraph graph = new VersionedGraph(node);
+        final TestChild first = new TestChild();
+        final TestChild second = new TestChild();
+        graph.write(new ConcurrentGraph.Action<Void>() {
+            @Override
+            public Void run(Node root) {
+                root.<ListNode<TestChild>>get("list").add(first);
+                return null;
+            }
+        });
+
+        try (VersionedGraph.ReadSession session = graph.openSession()) {
+            graph.write(new ConcurrentGraph.Action<Void>() {
+                @Override
+                public Void run(Node root) {
+                    ListNode<TestChild> list = root.get("list");
+                    list.add(0, second);
+                    list.remove(first);
+                    return null;
+                }
+            });
+
+            assertSame(first, session.get("list.0"));
+            assertSame(second, graph.get("list.0", graph.getVersion()));
+            assertSame(second, node.get("list.0"));
+            try {
+                session.get("list.1");
+                fail();
+            } catch (PropertyNotExistsException ex) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void testListIteratorWritesAreVersioned() {
+        TestNode node = new TestNode();
+        VersionedGraph graph = new VersionedGraph(node);
+        final TestChild first = new TestChild();
+        final TestChild second = new TestChild();
+        graph.write(new ConcurrentGraph.Action<Void>() {
+            @Override
+            public Void run(Node root) {
+                root.<ListNode<TestChild>>get("list").add(first);
+                return null;
+            }
+        });
+        long version = graph.getVersion();
+
+        try (VersionedGraph.ReadSession session = graph.openSession()) {
+            graph.write(new ConcurrentGraph.Action<Void>() {
+                @Override
+                public Void run(Node root) {
+                    ListIterator<TestChild> iterator = root.<ListNode<TestChild>>get("list").listIterator();
+                    iterator.next();
+                    iterator.remove();
+                    iterator.add(second);
+                    return null;
+                }
+            });
+
+            assertTrue(graph.getVersion() > version);
+            assertSame(first, session.get("list.0"));
+            assertSame(second, node.get("list.0"));
+        }
+    }
+
+    @Test
+    public void testOldVersionsAreReclaimed() {
+        VersionedGraph graph = new VersionedGraph(new TestNode());
+        graph.set("a", 1);
+        VersionedGraph.ReadSession session = graph.openSession();
+        graph.set("a", 2);
+        graph.set("a", 3);
+        assertEquals(1, graph.getOldestVersion());
+        assertEquals(2, (int) graph.<Integer>get("a", 2));
+
+        session.close();
+        assertEquals(3, graph.getOldestVersion());
+        assertEquals(3, (int) graph.<Integer>get("a", 3));
+        try {
+            graph.get("a", 2);
+            fail();
+        } catch (VersionNotAvailableException ex) {
+            // Expected
+        }
+        try {
+            session.get("a");
+            fail();
+        } catch (IllegalStateException ex) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testStaggeredSessions() {
+        VersionedGraph graph = new VersionedGraph(new TestNode());
+        graph.set("a", 1);
+        VersionedGraph.ReadSession first = graph.openSession();
+        graph.set("a", 2);
+        graph.set("child.s", "x");
+        VersionedGraph.ReadSession second = graph.openSession();
+        graph.set("a", 3);
+        graph.set("child.s", "y");
+
+        first.close();
+        assertEquals(3, graph.getOldestVersion());
+        assertEquals(2, (int) second.<Integer>get("a"));
+        assertEquals(4, (int) second.<Integer>get("b"));
+        assertEquals("x", second.get("child.s"));
+        assertEquals(3, (int) graph.<Integer>get("a", 5));
+
+        second.close();
+        graph.set("a", 4);
+        assertEquals(6, graph.getOldestVersion());
+        assertEquals(4, (int) graph.<Integer>get("a", 6));
+        assertEquals("y", graph.get("child.s", 6));
+    }
+
+    @Test
+    public void testSessionsDoNotBlockWriters() throws Exception {
+        final VersionedGraph graph = new VersionedGraph(new TestNode());
+        final AtomicBoolean consistent = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        List<Future<?>> futures = new ArrayList<>();
+        futures.add(executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 1000; i++) {
+                    graph.write(new ConcurrentGraph.Action<Void>() {
+                        @Override
+                        public Void run(Node root) {
+                            root.set("a", root.<Integer>get("a") + 1);
+                            return null;
+                        }
+                    });
+                }
+            }
+        }));
+        for (int t = 0; t < 2; t++) {
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 1000; i++) {
+                        try (VersionedGraph.ReadSession session = graph.openSession()) {
+                            int a = session.get("a");
+                            int b = session.get("b");
+                            if (b != 2 * a || a != session.getVersion()) {
+                                consistent.set(false);
+                            }
+                        }
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertTrue(consistent.get());
+        assertEquals(1000, (int) graph.getRoot().<Integer>get("a"));
+        assertEquals(1000, graph.getVersion());
+        assertEquals(1000, graph.getOldestVersion());
+    }
+
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core.diff;
+
+import com.objectgraph.core.EventRecipient;
+import com.objectgraph.core.Event;
+import com.objectgraph.core.ListNode;
+import com.objectgraph.core.Node;
+import com.objectgraph.core.ObjectNode;
+import org.junit.Test;
+import org.pcollections.PSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class GraphDiffTest {
+
+    private static class TestChild extends ObjectNode {
+        @Property String s;
+        @Property int i;
+
+        public TestChild() {
+            initialiseNode();
+        }
+
+        public TestChild(String s, int i) {
+            this();
+            set("s", s);
+            set("i", i);
+        }
+    }
+
+    private static class TestBase extends ObjectNode {
+        @Property TestChild child = new TestChild();
+        @Property ListNode<TestChild> list = new ListNode<>(TestChild.class);
+        @Property ListNode<String> strings = new ListNode<>(String.class);
+
+        public TestBase() {
+            initialiseNode();
+        }
+    }
+
+    private TestBase newGraph() {
+        TestBase base = new TestBase();
+        base.set("child.s", "child");
+        for (int i = 0; i < 10; i++) {
+            base.list.add(new TestChild("element" + i, i));
+        }
+        base.strings.addAll(Arrays.asList("a", "b", "c", "d", "e", "f"));
+        return base;
+    }
+
+    @Test
+    public void testEqualGraphs() {
+        assertTrue(GraphDiff.compute(newGraph(), newGraph()).isEmpty());
+        assertTrue(GraphDiff.equal(newGraph(), newGraph()));
+    }
+
+    @Test
+    public void testSetProperty() {
+        TestBase a = newGraph();
+        TestBase b = newGraph();
+        b.set("child.i", 3);
+        b.set("list.4.s", "changed");
+
+        GraphPatch patch = GraphDiff.compute(a, b);
+        assertEquals(2, patch.getOperations().size());
+        assertEquals("child.i", patch.getOperations().get(0).getPath());
+        assertEquals("list.4.s", patch.getOperations().get(1).getPath());
+
+        patch.apply(a);
+        assertTrue(GraphDiff.equal(a, b));
+    }
+
+    @Test
+    public void testListChanges() {
+        TestBase a = newGraph();
+        TestBase b = newGraph();
+        b.strings.removeAll(Arrays.asList("b", "e"));
+        b.strings.add(1, "x");
+        b.strings.add("y");
+        b.list.remove(2);
+        b.list.add(5, new TestChild("new", 100));
+
+        GraphPatch patch = GraphDiff.compute(a, b);
+        assertEquals(2, patch.getOperations().size());
+        ListOperation strings = (ListOperation) patch.getOperations().get(1);
+        assertEquals("strings", strings.getPath());
+        // "b" is replaced by "x": plain values are never paired, so it is removed and "x" is inserted
+        assertEquals(Arrays.asList(1, 4), strings.getRemovedIndices());
+        assertEquals(2, strings.getInsertions().size());
+        ListOperation list = (ListOperation) patch.getOperations().get(0);
+        assertEquals(Arrays.asList(2), list.getRemovedIndices());
+        assertEquals(1, list.getInsertions().size());
+
+        patch.apply(a);
+        assertEquals(Arrays.asList("a", "x", "c", "d", "f", "y"), a.strings);
+        assertTrue(GraphDiff.equal(a, b));
+        assertNotSame(b.list.get(5), a.list.get(5));
+    }
+
+    @Test
+    public void testLongestCommonSubsequence() {
+        Random random = new Random(7);
+        for (int run = 0; run < 200; run++) {
+            TestBase a = new TestBase();
+            TestBase b = new TestBase();
+            a.strings.addAll(randomStrings(random, random.nextInt(30)));
+            b.strings.addAll(randomStrings(random, random.nextInt(30)));
+
+            GraphPatch patch = GraphDiff.compute(a, b);
+            int removed = 0;
+            for (PatchOperation operation : patch.getOperations()) {
+                removed += ((ListOperation) operation).getRemovedIndices().size();
+            }
+            assertEquals(a.strings.size() - lcsLength(a.strings, b.strings), removed);
+
+            patch.apply(a);
+            assertEquals(new ArrayList<>(b.strings), new ArrayList<>(a.strings));
+        }
+    }
+
+    @Test
+    public void testUnrelatedLists() {
+        TestBase a = new TestBase();
+        TestBase b = new TestBase();
+        for (int i = 0; i < 2000; i++) {
+            a.strings.add("a" + i);
+            b.strings.add("b" + i);
+        }
+        a.strings.add(1000, "common");
+        b.strings.add(500, "common");
+
+        GraphPatch patch = GraphDiff.compute(a, b);
+        assertEquals(2000, ((ListOperation) patch.getOperations().get(0)).getRemovedIndices().size());
+        patch.apply(a);
+        assertEquals(new ArrayList<>(b.strings), new ArrayList<>(a.strings));
+    }
+
+    private static List<String> randomStrings(Random random, int size) {
+        List<String> ret = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            ret.add(String.valueOf((char) ('a' + random.nextInt(4))));
+        }
+        return ret;
+    }
+
+    private static int lcsLength(List<String> a, List<String> b) {
+        int[][] lengths = new int[a.size() + 1][b.size() + 1];
+        for (int i = 1; i <= a.size(); i++) {
+            for (int j = 1; j <= b.size(); j++) {
+                lengths[i][j] = a.get(i - 1).equals(b.get(j - 1))
+                        ? lengths[i - 1][j - 1] + 1
+                        : Math.max(lengths[i - 1][j], lengths[i][j - 1]);
+            }
+        }
+        return lengths[a.size()][b.size()];
+    }
+
+    @Test
+    public void testPairedElements() {
+        TestBase a = newGraph();
+        TestBase b = newGraph();
+        b.list.set(3, new TestChild("replaced", 3));
+
+        GraphPatch patch = GraphDiff.compute(a, b);
+        assertEquals(1, patch.getOperations().size());
+        assertEquals("list.3.s", patch.getOperations().get(0).getPath());
+
+        TestChild element = a.list.get(3);
+        patch.apply(a);
+        assertSame(element, a.list.get(3));
+        assertTrue(GraphDiff.equal(a, b));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCoalescedEvents() {
+        TestBase a = newGraph();
+        TestBase b = newGraph();
+        b.strings.clear();
+        b.strings.addAll(Arrays.asList("1", "2", "3"));
+
+        EventRecipient recipient = mock(EventRecipient.class);
+        a.strings.addParentPath(recipient, "strings");
+        GraphDiff.compute(a, b).apply(a);
+
+        // One removal and one insertion
+        verify(recipient, times(2)).handleEvent(any(Event.class), any(PSet.class));
+        assertEquals(Arrays.asList("1", "2", "3"), a.strings);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDifferentRoots() {
+        GraphDiff.compute(new TestBase(), new TestChild());
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core.triggers;
+
+import com.objectgraph.core.ConcurrentGraph;
+import com.objectgraph.core.Node;
+import com.objectgraph.core.ObjectNode;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AsyncDependencyTest {
+
+    private static class TestNode extends ObjectNode {
+        @Property int value;
+        @Property String text;
+
+        public TestNode() {
+            initialiseNode();
+        }
+    }
+
+    private static class QueueExecutor implements Executor {
+        private final Deque<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.poll().run();
+            }
+        }
+    }
+
+    private static final Dependency.Function1<Integer, String> toText = new Dependency.Function1<Integer, String>() {
+        @Override
+        public String apply(Integer value) {
+            return "value " + value;
+        }
+    };
+
+    @Test
+    public void testResultIsSetWhenComputed() {
+        TestNode node = new TestNode();
+        QueueExecutor executor = new QueueExecutor();
+        AsyncDependency trigger = new AsyncDependency("text", executor, toText, "value");
+        trigger.setResultExecutor(executor);
+        node.addTrigger(trigger);
+
+        node.set("value", 1);
+        assertNull(node.text);
+
+        executor.runAll();
+        assertEquals("value 1", node.text);
+        assertTrue(executor.tasks.isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testResultTargetRequired() {
+        TestNode node = new TestNode();
+        node.addTrigger(new AsyncDependency("text", new QueueExecutor(), toText, "value"));
+        node.set("value", 1);
+    }
+
+    @Test
+    public void testOnlyLatestResultLands() {
+        TestNode node = new TestNode();
+        QueueExecutor executor = new QueueExecutor();
+        QueueExecutor results = new QueueExecutor();
+        AsyncDependency trigger = new AsyncDependency("text", executor, toText, "value");
+        trigger.setResultExecutor(results);
+        node.addTrigger(trigger);
+
+        node.set("value", 1);
+        executor.runAll();
+        node.set("value", 2);
+        node.set("value", 3);
+        executor.runAll();
+        // Only the computations of 1 and 3 ran; the result of 1 is outdated
+        assertEquals(2, results.tasks.size());
+        results.runAll();
+        assertEquals("value 3", node.text);
+
+        node.set("value", 4);
+        trigger.cancel();
+        executor.runAll();
+        results.runAll();
+        assertEquals("value 3", node.text);
+    }
+
+    @Test
+    public void testResultGraph() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        TestNode node = new TestNode();
+        final ConcurrentGraph graph = new ConcurrentGraph(node, ConcurrentGraph.Mode.SINGLE_WRITER);
+        try {
+            AsyncDependency trigger = new AsyncDependency("text", executor, toText, "value");
+            trigger.setResultGraph(graph);
+            node.addTrigger(trigger);
+            graph.set("value", 7);
+
+            // The result is submitted to the graph before the computation ends
+            final CountDownLatch done = new CountDownLatch(1);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    graph.submit(new ConcurrentGraph.Action<Void>() {
+                        @Override
+                        public Void run(Node root) {
+                            done.countDown();
+                            return null;
+                        }
+                    });
+                }
+            });
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals("value 7", graph.get("text"));
+        } finally {
+            executor.shutdown();
+            graph.shutdown();
+        }
+    }
+
+}
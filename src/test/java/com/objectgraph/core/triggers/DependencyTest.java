@@ -109,4 +109,31 @@ public class DependencyTest {
         assertEquals(Arrays.asList("child"), node.getFreeProperties());
         assertEquals(Arrays.asList("number", "string"), node.getControlledProperties());
     }
+
+    @Test
+    public void testTypedFunction() throws Exception {
+        TestNode node = new TestNode();
+
+        node.addTrigger(new Dependency("string", new Dependency.Function2<String, Integer, String>() {
+            @Override
+            public String apply(String text, Integer value) {
+                return text + " = " + value;
+            }
+        }, "child.text", "child.value"));
+        node.addTrigger(new Dependency("number", new Dependency.Function1<String, Integer>() {
+            @Override
+            public Integer apply(String text) {
+                return text == null ? -1 : text.length();
+            }
+        }, "child.text"));
+
+        node.set("child.text", "Hello");
+        assertEquals("Hello = 0", node.string);
+        assertEquals(5, node.number);
+
+        node.set("child.value", 3);
+        assertEquals("Hello = 3", node.string);
+
+        assertEquals(Arrays.asList("number", "string"), node.getControlledProperties());
+    }
 }
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2013 Emanuele Tamponi
+ *
+ * This file is part of object-graph.
+ *
+ * object-graph is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * object-graph is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with object-graph.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.objectgraph.core.triggers;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.objectgraph.core.Event;
+import com.objectgraph.core.EventRecipient;
+import com.objectgraph.core.Invalidation;
+import com.objectgraph.core.Node;
+import com.objectgraph.core.ObjectNode;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.pcollections.PSet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class LazyDependencyTest {
+
+    private static class TestChild extends ObjectNode {
+        @Property String text;
+    }
+
+    private static class TestNode extends ObjectNode {
+        @Property TestChild child = new TestChild();
+        @Property int value;
+        @Property int derived;
+
+        public TestNode() {
+            initialiseNode();
+        }
+    }
+
+    private static class CountingFunction implements Dependency.Function2<String, Integer, String> {
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public String apply(String text, Integer value) {
+            calls.incrementAndGet();
+            return text + value;
+        }
+    }
+
+    @Test
+    public void testComputeOnRead() {
+        TestNode node = new TestNode();
+        CountingFunction function = new CountingFunction();
+        node.addTrigger(new LazyDependency("child.text", function, "child.text", "value"));
+
+        node.set("value", 1);
+        node.set("value", 2);
+        node.set("value", 3);
+        assertEquals(0, function.calls.get());
+        assertTrue(node.child.isStale("text"));
+
+        assertEquals("null3", node.get("child.text"));
+        assertEquals(1, function.calls.get());
+        assertFalse(node.child.isStale("text"));
+
+        assertEquals("null3", node.get("child.text"));
+        assertEquals(1, function.calls.get());
+    }
+
+    @Test
+    public void testEagerDependencyReadsLazyValue() {
+        TestNode node = new TestNode();
+        CountingFunction function = new CountingFunction();
+        node.addTrigger(new LazyDependency("child.text", function, "child.text", "value"));
+        node.addTrigger(new Dependency("derived", new Dependency.Function1<String, Integer>() {
+            @Override
+            public Integer apply(String text) {
+                return text == null ? 0 : text.length();
+            }
+        }, "child.text"));
+        node.set("value", 100);
+
+        // The invalidation runs the eager Dependency, which reads the lazy value
+        assertEquals(7, node.derived);
+        assertEquals(1, function.calls.get());
+        assertFalse(node.child.isStale("text"));
+        assertEquals("null100", node.get("child.text"));
+        assertEquals(1, function.calls.get());
+    }
+
+    private static class TimesTenNode extends ObjectNode {
+        @Property int value;
+        @Property int derived;
+
+        static {
+            addClassTrigger(TimesTenNode.class, new LazyDependency("derived", new Dependency.Function1<Integer, Integer>() {
+                @Override
+                public Integer apply(Integer value) {
+                    return 10 * value;
+                }
+            }, "value"));
+        }
+
+        public TimesTenNode() {
+            initialiseNode();
+        }
+    }
+
+    @Test
+    public void testCopyRefreshesStaleProperties() {
+        TimesTenNode node = new TimesTenNode();
+        Kryo kryo = Node.getKryo();
+
+        node.set("value", 5);
+        TimesTenNode copy = kryo.copy(node);
+        assertFalse(copy.isStale("derived"));
+        assertEquals(50, (int) copy.get("derived"));
+        assertEquals(50, (int) node.get("derived"));
+
+        node.set("value", 6);
+        copy = kryo.copy(node);
+        assertEquals(60, (int) copy.get("derived"));
+
+        copy.set("value", 7);
+        assertTrue(copy.isStale("derived"));
+        assertEquals(70, (int) copy.get("derived"));
+        assertEquals(60, (int) node.get("derived"));
+    }
+
+    @Test
+    public void testReadRefreshedStaleProperties() {
+        TimesTenNode node = new TimesTenNode();
+        Kryo kryo = Node.getKryo();
+        node.set("value", 5);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Output output = new Output(bytes);
+        kryo.writeObject(output, node);
+        output.close();
+        TimesTenNode read = kryo.readObject(new Input(bytes.toByteArray()), TimesTenNode.class);
+
+        assertFalse(read.isStale("derived"));
+        assertEquals(50, (int) read.get("derived"));
+        read.set("value", 8);
+        assertEquals(80, (int) read.get("derived"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testInvalidationEvent() {
+        TestNode node = new TestNode();
+        CountingFunction function = new CountingFunction();
+        LazyDependency trigger = new LazyDependency("child.text", function, "child.text", "value");
+        trigger.setNotifying(true);
+        node.addTrigger(trigger);
+
+        EventRecipient recipient = mock(EventRecipient.class);
+        node.addParentPath(recipient, "node");
+        node.set("value", 5);
+
+        ArgumentCaptor<Event> events = ArgumentCaptor.forClass(Event.class);
+        verify(recipient, times(2)).handleEvent(events.capture(), any(PSet.class));
+        // Triggers run before the Event reaches the parents, so the invalidation arrives first
+        Event invalidation = events.getAllValues().get(0);
+        assertTrue(invalidation.getType() instanceof Invalidation);
+        assertEquals("node.child.text", invalidation.getPath());
+        assertEquals(0, function.calls.get());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSilentInvalidation() {
+        TestNode node = new TestNode();
+        node.addTrigger(new LazyDependency("child.text", new CountingFunction(), "child.text", "value"));
+
+        EventRecipient recipient = mock(EventRecipient.class);
+        node.addParentPath(recipient, "node");
+        node.set("value", 5);
+
+        ArgumentCaptor<Event> events = ArgumentCaptor.forClass(Event.class);
+        verify(recipient, times(1)).handleEvent(events.capture(), any(PSet.class));
+        assertFalse(events.getValue().getType() instanceof Invalidation);
+    }
+
+}